@@ -0,0 +1,155 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The `BloomFilter` class builds and queries the changed-path Bloom filters stored in
+ * the {@link CommitGraph}. The filter of a commit holds every path that differs between
+ * the commit's tree and its first parent's, including the directories leading to it,
+ * so a path-limited `log` can skip a commit without reading any tree when its filter
+ * says the path did not change.
+ *
+ * The parameters follow git: {@value #BITS_PER_ENTRY} bits per path and
+ * {@value #NUM_HASHES} bit positions per path, derived by double hashing two 32-bit
+ * murmur3 hashes of the UTF-8 path, in a filter rounded up to whole 64-bit words.
+ * This gives at most about 1% false positives. A commit that
+ * changes more than {@value #MAX_CHANGED_PATHS} paths gets a one-byte filter with all
+ * bits set, which matches every path, and one that changes nothing a one-byte filter
+ * with no bits set.
+ */
+public class BloomFilter {
+
+    /** Bits reserved per changed path. */
+    static final int BITS_PER_ENTRY = 10;
+
+    /** Bit positions set per changed path. */
+    static final int NUM_HASHES = 7;
+
+    /** Commits changing more paths than this get a filter that matches everything. */
+    static final int MAX_CHANGED_PATHS = 512;
+
+    private static final int SEED_1 = 0x293ae76f;
+    private static final int SEED_2 = 0x7e646e2c;
+
+    /**
+     * The bit positions of one path, computed once and tested against many filters.
+     */
+    public static class Key {
+        private final int[] hashes = new int[NUM_HASHES];
+
+        /**
+         * @param path A path relative to the repository root, with `/` separators.
+         */
+        public Key(String path) {
+            byte[] data = path.getBytes(StandardCharsets.UTF_8);
+            int hash1 = murmur3(SEED_1, data);
+            int hash2 = murmur3(SEED_2, data);
+            for (int i = 0; i < NUM_HASHES; i++) {
+                hashes[i] = hash1 + i * hash2;
+            }
+        }
+    }
+
+    private BloomFilter() {
+    }
+
+    /**
+     * Builds the filter of a set of changed paths.
+     *
+     * @param paths The changed paths and their leading directories, or null if there were too many.
+     * @return The filter bytes.
+     */
+    public static byte[] create(Collection<String> paths) {
+        if (paths == null || paths.size() > MAX_CHANGED_PATHS) {
+            return new byte[] {(byte) 0xff};
+        }
+        if (paths.isEmpty()) {
+            return new byte[1];
+        }
+        // Whole 64-bit words, as in git: tiny filters would make the seven positions collide
+        byte[] filter = new byte[(paths.size() * BITS_PER_ENTRY + 63) / 64 * 8];
+        long bitCount = filter.length * 8L;
+        for (String path : paths) {
+            for (int hash : new Key(path).hashes) {
+                int bit = (int) (Integer.toUnsignedLong(hash) % bitCount);
+                filter[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Tests a filter stored in a buffer.
+     *
+     * @param buffer The buffer holding the filter.
+     * @param offset The offset of the filter.
+     * @param length The length of the filter in bytes.
+     * @param key    The path to look for.
+     * @return {@code false} if the path certainly did not change, {@code true} if it may have.
+     */
+    public static boolean mightContain(ByteBuffer buffer, int offset, int length, Key key) {
+        if (length <= 0) {
+            return true;
+        }
+        long bitCount = length * 8L;
+        for (int hash : key.hashes) {
+            int bit = (int) (Integer.toUnsignedLong(hash) % bitCount);
+            if ((buffer.get(offset + (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a changed path and its leading directories to a set.
+     *
+     * @param path  A changed path.
+     * @param paths The set to add to.
+     */
+    static void addWithDirectories(String path, Set<String> paths) {
+        for (int slash = path.indexOf('/'); slash > 0; slash = path.indexOf('/', slash + 1)) {
+            paths.add(path.substring(0, slash));
+        }
+        paths.add(path);
+    }
+
+    // 32-bit murmur3, as used by git for changed-path filters
+    private static int murmur3(int seed, byte[] data) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int hash = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i++) {
+            int k = (data[4 * i] & 0xff) | (data[4 * i + 1] & 0xff) << 8
+                    | (data[4 * i + 2] & 0xff) << 16 | (data[4 * i + 3] & 0xff) << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            hash ^= k;
+            hash = Integer.rotateLeft(hash, 13);
+            hash = hash * 5 + 0xe6546b64;
+        }
+
+        int remaining = data.length & 3;
+        if (remaining > 0) {
+            int tail = blocks * 4;
+            int k = 0;
+            for (int i = remaining - 1; i >= 0; i--) {
+                k = (k << 8) | (data[tail + i] & 0xff);
+            }
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            hash ^= k;
+        }
+
+        hash ^= data.length;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -24,10 +24,10 @@ public class Branch {
 
         try{
             //Get the current commit hash from HEAD
-            String currentCommit = getCurrentCommitHash();
+            ObjectId currentCommit = getCurrentCommitHash();
 
             if(currentCommit == null){
-                System.out.println("Error: No commits found. Please make  a commit first.");
+                Output.error("Error: No commits found. Please make  a commit first.");
                 return;
 
             }
@@ -35,13 +35,13 @@ public class Branch {
             //create the branch file in .mygit/refs/heads
             Path branchPath = Paths.get(REFS_DIR, branchName);
             Files.createDirectories(branchPath.getParent());
-            Files.write(branchPath, currentCommit.getBytes());
+            Files.write(branchPath, currentCommit.name().getBytes());
 
-            System.out.println("Branch '" + branchName + "' created successfully.");
+            Output.println("Branch '" + branchName + "' created successfully.");
 
         }catch(IOException e){
 
-            System.out.println("Error creating branch: " + e.getMessage());
+            Output.error("Error creating branch: " + e.getMessage());
 
         }
 
@@ -58,19 +58,24 @@ public class Branch {
 
         if(!Files.exists(branchPath)){
 
-            System.out.println("Error: Branch '" + branchName + "' does not exist.");
+            Output.error("Error: Branch '" + branchName + "' does not exist.");
             return;
 
         }
 
-        try{
+        try (Index index = Index.lock()) {
+            // The staging area starts from the branch's tree, so nothing staged on the old branch leaks into it
+            ObjectId commit = GitUtils.readRef(branchPath);
+            index.reset(commit != null ? ObjectDatabase.readCommitTree(commit) : null);
+
             //Update HEAD to point to the branch
             String refContent = "ref: refs/heads/" + branchName;
             Files.write(Paths.get(HEAD_FILE), refContent.getBytes());
+            index.write();
 
-            System.out.println("Switched to branch '" + branchName + "'.");
+            Output.println("Switched to branch '" + branchName + "'.");
         }catch(IOException e){
-            System.out.println("Error switching branch: " + e.getMessage());
+            Output.error("Error switching branch: " + e.getMessage());
 
         }
 
@@ -87,7 +92,7 @@ public static void listBranches() {
             // Check if the refs directory exists
 
         if (!Files.exists(refsDir)) {
-            System.out.println("No branches found.");
+            Output.println("No branches found.");
             return;
         }
 
@@ -100,34 +105,21 @@ public static void listBranches() {
 
         Files.list(refsDir).forEach(branchPath -> {
             String branchName = branchPath.getFileName().toString();
-            if (branchName.equals(currentBranch)) {
-                System.out.println("* " + branchName); // Indicate current branch with an asterisk
-            } else {
-                System.out.println("  " + branchName);
-            }
+            boolean current = branchName.equals(currentBranch);
+            // Indicate current branch with an asterisk
+            Output.record("branch", (current ? "* " : "  ") + branchName, "name", branchName, "current", current);
         });
 
     } catch (IOException e) {
-        System.out.println("Error listing branches: " + e.getMessage());
+        Output.error("Error listing branches: " + e.getMessage());
     }
 }
 
 
    // Get the current commit hash from HEAD.
     
-    private static String getCurrentCommitHash() throws IOException {
-        Path headPath = Paths.get(HEAD_FILE);
-        if (!Files.exists(headPath)) {
-            return null;
-        }
-
-        String headContent = new String(Files.readAllBytes(headPath)).trim();
-        if (headContent.startsWith("ref:")) {
-            Path branchPath = Paths.get(".mygit", headContent.substring(5));
-            return new String(Files.readAllBytes(branchPath)).trim();
-        } else {
-            return headContent;
-        }
+    private static ObjectId getCurrentCommitHash() throws IOException {
+        return GitUtils.getCurrentCommitHash();
     }
 
 
@@ -141,7 +133,6 @@ private static String getCurrentBranchName() throws IOException {
     }
 
     String headContent = new String(Files.readAllBytes(headPath)).trim();
-    System.out.println("HEAD content: " + headContent); // Debugging statement
 
     if (headContent.startsWith("ref: refs/heads/")) {
         return headContent.substring(16); // Extract branch name
@@ -160,12 +151,12 @@ public static void showCurrentBranch() {
     try {
         String currentBranch = getCurrentBranchName();
         if (currentBranch != null) {
-            System.out.println("Current branch: " + currentBranch);
+            Output.record("branch", "Current branch: " + currentBranch, "name", currentBranch, "current", true);
         } else {
-            System.out.println("Error: Could not determine the current branch.");
+            Output.error("Error: Could not determine the current branch.");
         }
     } catch (IOException e) {
-        System.out.println("Error displaying current branch: " + e.getMessage());
+        Output.error("Error displaying current branch: " + e.getMessage());
     }
 }
 
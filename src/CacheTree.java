@@ -0,0 +1,193 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The `CacheTree` class remembers, for each directory of the index, the id of the tree
+ * object last written for it and how many index entries it covers. It is stored in the
+ * index as the {@link #INDEX_EXTENSION} extension.
+ *
+ * Staging or removing a file invalidates only the directories on that file's path, so
+ * the next commit reuses the cached id of every other directory without looking at its
+ * entries, and only rebuilds the trees of directories that changed.
+ *
+ * The extension has git's layout: the directories in depth-first order, each as
+ * <pre>
+ *   name (UTF-8) | NUL | entry count (ASCII decimal, -1 if invalid) | ' ' | subdirectory count | '\n'
+ *   20-byte tree id, only if the entry count is not -1
+ * </pre>
+ * followed by its subdirectories. The root directory has an empty name.
+ */
+public class CacheTree {
+
+    /** Index extension holding the cache. */
+    public static final String INDEX_EXTENSION = "TREE";
+
+    private final String name;
+    private int entryCount = -1;
+    private ObjectId id;
+    private final SortedMap<String, CacheTree> children = new TreeMap<>(Index::comparePaths);
+
+    /**
+     * Creates an invalid directory.
+     *
+     * @param name The directory name, or an empty string for the root.
+     */
+    public CacheTree(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Decodes the extension.
+     *
+     * @param data The extension's data.
+     * @return The root directory.
+     * @throws IOException If the data is malformed.
+     */
+    public static CacheTree parse(byte[] data) throws IOException {
+        int[] position = {0};
+        CacheTree root = parseNode(data, position);
+        if (position[0] != data.length) {
+            throw new IOException("Corrupt cache tree extension: trailing data");
+        }
+        return root;
+    }
+
+    /**
+     * @return The encoded extension.
+     */
+    public byte[] format() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeNode(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Invalidates every directory on the path of a file whose entry was added, removed
+     * or pointed to a new blob.
+     *
+     * @param path The file's path in the index.
+     */
+    public void invalidate(String path) {
+        CacheTree node = this;
+        int start = 0;
+        while (node != null) {
+            node.entryCount = -1;
+            node.id = null;
+            int slash = path.indexOf('/', start);
+            if (slash < 0) {
+                return;
+            }
+            node = node.children.get(path.substring(start, slash));
+            start = slash + 1;
+        }
+    }
+
+    /**
+     * @return {@code true} if the cached tree id is current.
+     */
+    public boolean isValid() {
+        return entryCount >= 0;
+    }
+
+    /**
+     * @return The number of index entries below this directory, or -1 if invalid.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return The cached tree id, or null if invalid.
+     */
+    public ObjectId getId() {
+        return id;
+    }
+
+    /**
+     * Records a freshly written tree for this directory.
+     *
+     * @param id         The tree id.
+     * @param entryCount The number of index entries below this directory.
+     */
+    public void update(ObjectId id, int entryCount) {
+        this.id = id;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * @param childName A subdirectory name.
+     * @return The subdirectory, created invalid if it was not cached.
+     */
+    public CacheTree getOrCreateChild(String childName) {
+        return children.computeIfAbsent(childName, CacheTree::new);
+    }
+
+    /**
+     * Forgets subdirectories that no longer exist.
+     *
+     * @param names The subdirectories to keep.
+     */
+    public void retainChildren(Set<String> names) {
+        children.keySet().retainAll(names);
+    }
+
+    // Decode one directory and, recursively, its subdirectories
+    private static CacheTree parseNode(byte[] data, int[] position) throws IOException {
+        int nul = indexOf(data, (byte) 0, position[0]);
+        int newline = nul < 0 ? -1 : indexOf(data, (byte) '\n', nul + 1);
+        if (newline < 0) {
+            throw new IOException("Corrupt cache tree extension: truncated entry");
+        }
+        CacheTree node = new CacheTree(new String(data, position[0], nul - position[0], StandardCharsets.UTF_8));
+        String[] counts = new String(data, nul + 1, newline - nul - 1, StandardCharsets.US_ASCII).split(" ");
+        int subtrees;
+        try {
+            node.entryCount = Integer.parseInt(counts[0]);
+            subtrees = Integer.parseInt(counts[1]);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt cache tree extension: bad counts");
+        }
+        position[0] = newline + 1;
+
+        if (node.entryCount >= 0) {
+            if (position[0] + ObjectId.RAW_LENGTH > data.length) {
+                throw new IOException("Corrupt cache tree extension: truncated id");
+            }
+            node.id = ObjectId.fromRaw(data, position[0]);
+            position[0] += ObjectId.RAW_LENGTH;
+        } else {
+            node.entryCount = -1;
+        }
+
+        for (int i = 0; i < subtrees; i++) {
+            CacheTree child = parseNode(data, position);
+            node.children.put(child.name, child);
+        }
+        return node;
+    }
+
+    // Encode this directory, then its subdirectories
+    private void writeNode(ByteArrayOutputStream out) {
+        byte[] header = (name + "\0" + entryCount + " " + children.size() + "\n").getBytes(StandardCharsets.UTF_8);
+        out.write(header, 0, header.length);
+        if (isValid()) {
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            id.copyRawTo(raw, 0);
+            out.write(raw, 0, raw.length);
+        }
+        for (CacheTree child : children.values()) {
+            child.writeNode(out);
+        }
+    }
+
+    // Position of a byte at or after `from`, or -1
+    private static int indexOf(byte[] data, byte value, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
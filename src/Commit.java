@@ -1,7 +1,5 @@
 import java .io.*;
 import java.nio.file.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -16,7 +14,6 @@ public class Commit {
 
     // Constants representing file paths for the objects directory, HEAD, and the index file
 
-    private static final String OBJECTS_DIR = ".mygit/objects";
     private static final String HEAD_FILE = ".mygit/HEAD";
     private static final String INDEX_FILE = ".mygit/index";
 
@@ -29,19 +26,35 @@ public class Commit {
      */
 
 public static void createCommit(String message) {
-    try {
-        // Generate the tree object
-        String treeHash = generateTree();
+    File indexFile = new File(INDEX_FILE);
+    if (!indexFile.exists()) {
+        Output.println("Nothing to commit. The staging area is empty.");
+        return;
+    }
+
+    try (Index index = Index.lock()) {
+        // Generate the tree objects, reusing the cached trees of unchanged directories
+        ObjectId treeHash = generateTree(index);
 
         // Get the parent commit hash from HEAD
-        String parentHash = getCurrentCommitHash();
+        ObjectId parentHash = getCurrentCommitHash();
+
+        // The index now persists across commits, so an unchanged tree means nothing was staged
+        if (parentHash != null) {
+            CommitObject parent = ObjectDatabase.readCommit(parentHash);
+            if (parent != null && treeHash.equals(parent.getTree())) {
+                index.write(); // Keep the trees computed for the cache
+                Output.println("Nothing to commit. No changes have been staged since the last commit.");
+                return;
+            }
+        }
 
         // Prepare commit metadata
         String author = System.getProperty("user.name");
         String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
         String commitContent = "tree " + treeHash + "\n";
 
-        if (parentHash != null && !parentHash.isEmpty()) {
+        if (parentHash != null) {
             commitContent += "parent " + parentHash + "\n";
         }
 
@@ -49,22 +62,19 @@ public static void createCommit(String message) {
         commitContent += "date " + timestamp + "\n\n";
         commitContent += message + "\n";
 
-        // Compute the commit hash
-        String commitHash = computeSHA1(commitContent);
-
-        // Store the commit object in .mygit/objects
-        storeObject(commitHash, commitContent);
+        // Store the commit object in .mygit/objects and get its hash
+        ObjectId commitHash = storeObject(GitObject.COMMIT, commitContent);
 
         // Update HEAD to point to the new commit
         updateHEAD(commitHash);
 
-        // Clear the index after a successful commit
-        clearIndex();
+        // Save the updated cache tree; the entries themselves are copied unchanged
+        index.write();
 
-        System.out.println("Committed successfully with commit hash: " + commitHash);
+        Output.record("commit", "Committed successfully with commit hash: " + commitHash, "id", commitHash.name());
 
-    } catch (IOException | NoSuchAlgorithmException e) {
-        System.out.println("Error creating commit: " + e.getMessage());
+    } catch (IOException e) {
+        Output.error("Error creating commit: " + e.getMessage());
     }
 }
 
@@ -72,72 +82,114 @@ public static void createCommit(String message) {
 
 
 
- /**
-     * Clears the index (staging area) by overwriting it with an empty file.
+      /**
+     * Generates the tree objects for the index, one per directory, and returns the
+     * SHA-1 hash of the root tree. Directories whose cached tree in the index is still
+     * valid are reused without reading their entries; only directories on the path of
+     * a staged change are rebuilt, and the cache is updated with their new trees.
      *
-     * @throws IOException If an I/O error occurs while clearing the index.
-     */    
-    private static void clearIndex() throws IOException {
-        Files.write(Paths.get(INDEX_FILE), new byte[0]); // Overwrite the index with an empty file
-    }
+     * @param index The locked index.
+     * @return The SHA-1 hash of the root tree object.
+     * @throws IOException If an I/O error occurs while reading the index.
+     */
 
+   private static ObjectId generateTree(Index index) throws IOException {
+        renameLegacyEntries(index);
 
-      /**
-     * Generates a tree object from the index and returns its SHA-1 hash.
+        CacheTree root = index.getCacheTree();
+        writeTree(index, root, 0, "");
+        return root.getId();
+    }
+
+    /**
+     * Stores the tree of one directory, after the trees of its subdirectories, unless
+     * its cached tree is valid. Sorted entries under one directory are contiguous, and
+     * a valid cached tree records how many there are, so they can be skipped at once.
      *
-     * @return The SHA-1 hash of the generated tree object.
-     * @throws IOException              If an I/O error occurs while reading the index.
-     * @throws NoSuchAlgorithmException If the SHA-1 algorithm is not available.
+     * @param index  The index.
+     * @param cache  The cached tree of the directory, updated with the written tree.
+     * @param start  The position of the directory's first entry.
+     * @param prefix The directory's path including the trailing `/`, or "" for the root.
+     * @return The position after the directory's last entry.
+     * @throws IOException If the index cannot be read or a tree cannot be stored.
      */
-
-   private static String generateTree() throws IOException, NoSuchAlgorithmException {
-        File indexFile = new File(INDEX_FILE);
-        if (!indexFile.exists()) {
-            System.out.println("Nothing to commit. The staging area is empty.");
-            System.exit(1);
+    private static int writeTree(Index index, CacheTree cache, int start, String prefix) throws IOException {
+        if (cache.isValid()) {
+            return start + cache.getEntryCount();
         }
 
-        List<String> lines = Files.readAllLines(indexFile.toPath());
-        StringBuilder treeContent = new StringBuilder();
+        List<TreeObject.Entry> treeEntries = new ArrayList<>();
+        Set<String> subdirectories = new HashSet<>();
+        int i = start;
+        while (i < index.size()) {
+            IndexEntry entry = index.getEntry(i);
+            if (!entry.getName().startsWith(prefix)) {
+                break;
+            }
+            String rest = entry.getName().substring(prefix.length());
+            int slash = rest.indexOf('/');
+            if (slash < 0) {
+                int mode = entry.getStat() != null ? entry.getStat().getMode() : FileStat.MODE_FILE;
+                treeEntries.add(new TreeObject.Entry(rest, mode, entry.getId()));
+                i++;
+                continue;
+            }
 
-        for (String line : lines) {
-            treeContent.append(line).append("\n");
+            String name = rest.substring(0, slash);
+            CacheTree subtree = cache.getOrCreateChild(name);
+            i = writeTree(index, subtree, i, prefix + name + "/");
+            treeEntries.add(new TreeObject.Entry(name, TreeObject.MODE_TREE, subtree.getId()));
+            subdirectories.add(name);
         }
 
-        // Compute the tree hash
-        String treeHash = computeSHA1(treeContent.toString());
+        cache.retainChildren(subdirectories);
+        cache.update(ObjectStore.writeObject(GitObject.TREE, TreeObject.format(treeEntries)), i - start);
+        return i;
+    }
 
-        // Store the tree object
-        storeObject(treeHash, treeContent.toString());
+    /**
+     * Renames entries staged by earlier versions of `add .`, which start with `./`,
+     * to their path without it. Such entries sort together, so they are found by a
+     * binary search rather than by reading the whole index.
+     *
+     * @param index The locked index.
+     * @throws IOException If the index cannot be read.
+     */
+    private static void renameLegacyEntries(Index index) throws IOException {
+        int low = 0;
+        int high = index.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Index.comparePaths(index.getEntry(mid).getName(), "./") < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
 
-        return treeHash;
+        List<IndexEntry> legacy = new ArrayList<>();
+        for (int i = low; i < index.size() && index.getEntry(i).getName().startsWith("./"); i++) {
+            legacy.add(index.getEntry(i));
+        }
+        for (IndexEntry entry : legacy) {
+            String name = entry.getName().substring(2);
+            index.remove(entry.getName());
+            if (index.get(name) == null) {
+                index.put(new IndexEntry(name, entry.getId(), entry.getStat()));
+            }
+        }
     }
 
  /**
      * Retrieves the current commit hash from the HEAD file.
      *
-     * @return The current commit hash, or null if it cannot be determined.
+     * @return The current commit hash, or null if the current branch has no commits yet.
      * @throws IOException If an I/O error occurs while reading the HEAD file.
      */
 
- private static String getCurrentCommitHash() throws IOException {
-    Path headPath = Paths.get(HEAD_FILE);
-    if (!Files.exists(headPath)) {
-        return null;
-    }
-
-    String headContent = new String(Files.readAllBytes(headPath)).trim();
-    if (headContent.startsWith("ref:")) {
-        // HEAD points to a branch reference
-        Path branchPath = Paths.get(".mygit", headContent.substring(5));
-        if (Files.exists(branchPath)) {
-            return new String(Files.readAllBytes(branchPath)).trim();
-        }
-    } else {
-        // HEAD contains a direct commit hash (detached HEAD state)
-        return headContent;
-    }
-    return null;
+ private static ObjectId getCurrentCommitHash() throws IOException {
+    // HEAD either points to a branch reference or holds a commit hash (detached HEAD state)
+    return GitUtils.getCurrentCommitHash();
 }
 
 
@@ -148,17 +200,17 @@ public static void createCommit(String message) {
      * @param commitHash The new commit hash to update HEAD with.
      * @throws IOException If an I/O error occurs while updating HEAD.
      */
-private static void updateHEAD(String commitHash) throws IOException {
+private static void updateHEAD(ObjectId commitHash) throws IOException {
     Path headPath = Paths.get(HEAD_FILE);
     String headContent = new String(Files.readAllBytes(headPath)).trim();
 
     if (headContent.startsWith("ref:")) {
         // Extract the branch reference and update the branch file with the new commit hash
         Path branchPath = Paths.get(".mygit", headContent.substring(5));
-        Files.write(branchPath, commitHash.getBytes());
+        Files.write(branchPath, commitHash.name().getBytes());
     } else {
         // If HEAD contains a direct commit hash (detached HEAD state), update HEAD directly
-        Files.write(headPath, commitHash.getBytes());
+        Files.write(headPath, commitHash.name().getBytes());
     }
 }
 
@@ -167,68 +219,35 @@ private static void updateHEAD(String commitHash) throws IOException {
     /**
      * Stores an object (commit/tree) in the objects directory.
      *
-     * @param hash    The SHA-1 hash of the object.
+     * @param type    The object type (`commit` or `tree`).
      * @param content The content of the object to store.
+     * @return The SHA-1 hash of the stored object.
      * @throws IOException If an I/O error occurs while writing the object.
      */
 
-  private static void storeObject(String hash, String content) throws IOException {
-        File objectFile = new File(OBJECTS_DIR, hash);
-        Files.write(objectFile.toPath(), content.getBytes());
+  private static ObjectId storeObject(String type, String content) throws IOException {
+        return ObjectStore.writeObject(type, content.getBytes());
     }
 
-
-
  /**
-     * Computes the SHA-1 hash of the given content.
-     *
-     * @param content The content to compute the hash for.
-     * @return The SHA-1 hash as a hexadecimal string.
-     * @throws NoSuchAlgorithmException If the SHA-1 algorithm is not available.
+     * Displays the commit history by traversing through the commits starting from the current commit.
      */
     
-        private static String computeSHA1(String content) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-1");
-        byte[] hashBytes = digest.digest(content.getBytes());
-        StringBuilder sb = new StringBuilder();
-        for (byte b : hashBytes) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
-    }
+    public static void showCommitHistory() {
+    showCommitHistory(null);
+}
 
  /**
-     * Displays the commit history by traversing through the commits starting from the current commit.
+     * Displays the commits that changed a file or directory, following the first parent
+     * from the current commit.
+     *
+     * @param path The file or directory, or null to show every commit.
      */
-    
-    public static void showCommitHistory() {
-    try {
-        String commitHash = getCurrentCommitHash();
-        while (commitHash != null && !commitHash.isEmpty()) {
-            Path commitPath = Paths.get(OBJECTS_DIR, commitHash);
-            
-            if (!Files.exists(commitPath)) {
-                System.out.println("Error: Commit object not found for hash: " + commitHash);
-                break;
-            }
 
-            String commitContent = new String(Files.readAllBytes(commitPath));
-            System.out.println("Commit: " + commitHash);
-            System.out.println(commitContent);
-            System.out.println("------------------------");
-
-            // Get the parent commit hash
-            commitHash = null;
-            for (String line : commitContent.split("\n")) {
-                if (line.startsWith("parent ")) {
-                    commitHash = line.substring(7).trim();
-                    break;
-                }
-            }
-        }
-    } catch (IOException e) {
-        System.out.println("Error displaying commit history: " + e.getMessage());
-    }
+    public static void showCommitHistory(String path) {
+    Log.Options options = new Log.Options();
+    options.path = path;
+    Log.showLog(options);
 }
 
 }
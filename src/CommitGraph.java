@@ -0,0 +1,525 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * The `CommitGraph` class reads and writes `.mygit/objects/info/commit-graph`, which
+ * records the shape of the history so that walks do not have to open and parse commits.
+ *
+ * Layout (all integers big-endian):
+ * <pre>
+ *   magic "MGCG" | version (2) | commit count N | extra edge count E
+ *   fan-out table: 256 x int, entry i = number of ids whose first byte is &lt;= i
+ *   N x 20-byte commit ids, sorted
+ *   N x row: 20-byte root tree id (all zero if none) | first parent | second parent
+ *            | generation (int) | commit time in seconds (long)
+ *   E x int extra edges
+ *   hash count | bits per path | length L of the filter data      (version 2 only)
+ *   N x int end offset of each commit's changed-path filter        (version 2 only)
+ *   L bytes of filter data                                        (version 2 only)
+ *   20-byte SHA-1 of everything above
+ * </pre>
+ * Parents are positions in the sorted id list, or {@link #NO_PARENT}. A commit with more
+ * than two parents stores `0x80000000 | i` as its second parent, where i is the start of
+ * its remaining parents in the extra edge list; the last of them has the high bit set.
+ *
+ * The generation of a root commit is 1 and that of any other commit is one more than
+ * the largest generation of its parents, so a commit can never be an ancestor of a
+ * commit with a smaller or equal generation.
+ *
+ * Each commit's changed-path filter (see {@link BloomFilter}) lists what changed since
+ * its first parent; the filter of commit i runs from the end offset of commit i - 1
+ * (or 0) to its own. Version 1 files, which have no filters, are still read.
+ *
+ * The file is memory-mapped. It only contains commits reachable when it was written;
+ * commits made since are simply not found and are read from the object store.
+ */
+public class CommitGraph {
+
+    private static final byte[] SIGNATURE = {'M', 'G', 'C', 'G'};
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_FILTERS = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int FAN_OUT_OFFSET = HEADER_SIZE;
+    private static final int IDS_OFFSET = FAN_OUT_OFFSET + 256 * 4;
+    private static final int ROW_SIZE = ObjectId.RAW_LENGTH + 4 + 4 + 4 + 8;
+    private static final int TRAILER_SIZE = ObjectId.RAW_LENGTH;
+
+    /** Parent value meaning "no parent". */
+    public static final int NO_PARENT = 0x70000000;
+
+    private static final int EXTRA_EDGES = 0x80000000;
+    private static final int LAST_EDGE = 0x80000000;
+
+    // The opened graph, reopened when the file changes
+    private static CommitGraph current;
+    private static FileTime currentModified;
+
+    private final ByteBuffer buffer;
+    private final int commitCount;
+    private final int rowsOffset;
+    private final int edgesOffset;
+    private final int filterEndsOffset;
+    private final int filterDataOffset;
+
+    private CommitGraph(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (buffer.capacity() < HEADER_SIZE || buffer.get(i) != SIGNATURE[i]) {
+                throw new IOException("Not a commit-graph file");
+            }
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION && version != VERSION_WITHOUT_FILTERS) {
+            throw new IOException("Unsupported commit-graph version");
+        }
+        this.commitCount = buffer.getInt(8);
+        int edgeCount = buffer.getInt(12);
+        this.rowsOffset = IDS_OFFSET + commitCount * ObjectId.RAW_LENGTH;
+        this.edgesOffset = rowsOffset + commitCount * ROW_SIZE;
+        long end = (long) edgesOffset + 4L * edgeCount;
+        if (commitCount < 0 || edgeCount < 0 || end + TRAILER_SIZE > buffer.capacity()
+                || buffer.getInt(FAN_OUT_OFFSET + 255 * 4) != commitCount) {
+            throw new IOException("Commit-graph file is truncated");
+        }
+
+        if (version == VERSION) {
+            if (end + 12 + 4L * commitCount + TRAILER_SIZE > buffer.capacity()) {
+                throw new IOException("Commit-graph file is truncated");
+            }
+            int hashCount = buffer.getInt((int) end);
+            int bitsPerPath = buffer.getInt((int) end + 4);
+            int filterLength = buffer.getInt((int) end + 8);
+            int endsOffset = (int) end + 12;
+            end += 12 + 4L * commitCount + filterLength;
+            // Filters built with other parameters cannot be queried, so they are ignored
+            boolean usable = hashCount == BloomFilter.NUM_HASHES && bitsPerPath == BloomFilter.BITS_PER_ENTRY;
+            this.filterEndsOffset = usable ? endsOffset : -1;
+            this.filterDataOffset = usable ? endsOffset + 4 * commitCount : -1;
+        } else {
+            this.filterEndsOffset = -1;
+            this.filterDataOffset = -1;
+        }
+        if (end + TRAILER_SIZE != buffer.capacity()) {
+            throw new IOException("Commit-graph file is truncated");
+        }
+    }
+
+    /**
+     * Returns the commit graph of the repository, mapping it on first use.
+     *
+     * @return The graph, or null if there is none or it cannot be read.
+     */
+    public static synchronized CommitGraph get() {
+        Path graphPath = Paths.get(Constants.COMMIT_GRAPH_FILE);
+        try {
+            FileTime modified = Files.exists(graphPath) ? Files.getLastModifiedTime(graphPath) : null;
+            if (Objects.equals(modified, currentModified)) {
+                return current;
+            }
+            currentModified = modified;
+            current = null;
+            if (modified != null) {
+                try (FileChannel channel = FileChannel.open(graphPath, StandardOpenOption.READ)) {
+                    current = new CommitGraph(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+            }
+        } catch (IOException e) {
+            // The graph is only an accelerator; everything it holds can be read from the commits
+            Output.error("Warning: ignoring " + Constants.COMMIT_GRAPH_FILE + ": " + e.getMessage());
+            current = null;
+        }
+        return current;
+    }
+
+    /**
+     * @return The number of commits in the graph.
+     */
+    public int getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * Looks up a commit.
+     *
+     * @param id The commit id.
+     * @return Its position in the graph, or -1 if the graph does not contain it.
+     */
+    public int findPosition(ObjectId id) {
+        int first = id.getFirstByte();
+        int low = first == 0 ? 0 : buffer.getInt(FAN_OUT_OFFSET + (first - 1) * 4);
+        int high = buffer.getInt(FAN_OUT_OFFSET + first * 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = -id.compareTo(buffer, IDS_OFFSET + mid * ObjectId.RAW_LENGTH);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param position A position in the graph.
+     * @return The commit id at that position.
+     */
+    public ObjectId getId(int position) {
+        return ObjectId.fromRaw(buffer, IDS_OFFSET + position * ObjectId.RAW_LENGTH);
+    }
+
+    /**
+     * @param position A position in the graph.
+     * @return The commit's root tree, or null for legacy commits without one.
+     */
+    public ObjectId getTree(int position) {
+        int offset = rowsOffset + position * ROW_SIZE;
+        for (int i = 0; i < ObjectId.RAW_LENGTH; i++) {
+            if (buffer.get(offset + i) != 0) {
+                return ObjectId.fromRaw(buffer, offset);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param position A position in the graph.
+     * @return The positions of the commit's parents, in order.
+     */
+    public int[] getParentPositions(int position) {
+        int offset = rowsOffset + position * ROW_SIZE + ObjectId.RAW_LENGTH;
+        int first = buffer.getInt(offset);
+        int second = buffer.getInt(offset + 4);
+        if (first == NO_PARENT) {
+            return new int[0];
+        }
+        if (second == NO_PARENT) {
+            return new int[] {first};
+        }
+        if ((second & EXTRA_EDGES) == 0) {
+            return new int[] {first, second};
+        }
+
+        List<Integer> parents = new ArrayList<>();
+        parents.add(first);
+        int edge = edgesOffset + (second & ~EXTRA_EDGES) * 4;
+        while (true) {
+            int value = buffer.getInt(edge);
+            parents.add(value & ~LAST_EDGE);
+            if ((value & LAST_EDGE) != 0) {
+                break;
+            }
+            edge += 4;
+        }
+        return parents.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param position A position in the graph.
+     * @return The commit's parents, in order.
+     */
+    public List<ObjectId> getParents(int position) {
+        int[] positions = getParentPositions(position);
+        List<ObjectId> parents = new ArrayList<>(positions.length);
+        for (int parent : positions) {
+            parents.add(getId(parent));
+        }
+        return parents;
+    }
+
+    /**
+     * @param position A position in the graph.
+     * @return The commit's generation number, at least 1.
+     */
+    public int getGeneration(int position) {
+        return buffer.getInt(rowsOffset + position * ROW_SIZE + ObjectId.RAW_LENGTH + 8);
+    }
+
+    /**
+     * @param position A position in the graph.
+     * @return The commit time in seconds since the epoch, or 0 if unknown.
+     */
+    public long getCommitTime(int position) {
+        return buffer.getLong(rowsOffset + position * ROW_SIZE + ObjectId.RAW_LENGTH + 12);
+    }
+
+    /**
+     * @return {@code true} if the graph has changed-path filters.
+     */
+    public boolean hasFilters() {
+        return filterEndsOffset >= 0;
+    }
+
+    /**
+     * Asks a commit's changed-path filter whether a path may differ from its first parent.
+     *
+     * @param position A position in the graph.
+     * @param key      The path.
+     * @return {@code false} if the path certainly did not change; {@code true} if it may
+     *         have or the graph has no filters.
+     */
+    public boolean mayHaveChanged(int position, BloomFilter.Key key) {
+        if (!hasFilters()) {
+            return true;
+        }
+        int start = filterStart(position);
+        int length = buffer.getInt(filterEndsOffset + position * 4) - start;
+        return BloomFilter.mightContain(buffer, filterDataOffset + start, length, key);
+    }
+
+    // Copy of a commit's filter, or null if the graph has none, so a rewrite can reuse it
+    private byte[] getFilter(int position) {
+        if (!hasFilters()) {
+            return null;
+        }
+        int start = filterStart(position);
+        byte[] filter = new byte[buffer.getInt(filterEndsOffset + position * 4) - start];
+        buffer.get(filterDataOffset + start, filter);
+        return filter;
+    }
+
+    private int filterStart(int position) {
+        return position == 0 ? 0 : buffer.getInt(filterEndsOffset + (position - 1) * 4);
+    }
+
+    /**
+     * Writes the graph of every commit reachable from the branches and HEAD.
+     */
+    public static void writeGraph() {
+        if (!Files.isDirectory(Paths.get(Constants.OBJECTS_DIR))) {
+            Output.error("Error: Not a MyGit repository.");
+            return;
+        }
+        try {
+            int count = write(GitUtils.listTips());
+            Output.println("Wrote commit-graph with " + count + " commit(s).");
+        } catch (IOException e) {
+            Output.error("Error writing commit-graph: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the graph of every commit reachable from some tips, replacing the old one.
+     * A commit whose ancestry cannot be read completely is left out, together with its
+     * descendants, since parents are recorded as positions in the graph. Changed-path
+     * filters are copied from the old graph where it has them and computed otherwise.
+     *
+     * @param tips The commits to start from.
+     * @return The number of commits written.
+     * @throws IOException If a commit cannot be read or the file cannot be written.
+     */
+    public static int write(Collection<ObjectId> tips) throws IOException {
+        // Post-order walk: parents are finished before their children
+        Map<ObjectId, CommitObject> commits = new HashMap<>();
+        Map<ObjectId, Integer> generations = new HashMap<>();
+        Set<ObjectId> missing = new HashSet<>();
+        Deque<ObjectId> stack = new ArrayDeque<>(tips);
+        while (!stack.isEmpty()) {
+            ObjectId id = stack.peek();
+            if (generations.containsKey(id) || missing.contains(id)) {
+                stack.pop();
+                continue;
+            }
+            CommitObject commit = commits.get(id);
+            if (commit == null) {
+                commit = ObjectDatabase.readCommit(id);
+                if (commit == null) {
+                    missing.add(id);
+                    stack.pop();
+                    continue;
+                }
+                commits.put(id, commit);
+            }
+
+            boolean ready = true;
+            for (ObjectId parent : commit.getParents()) {
+                if (!generations.containsKey(parent) && !missing.contains(parent)) {
+                    stack.push(parent);
+                    ready = false;
+                }
+            }
+            if (!ready) {
+                continue;
+            }
+            stack.pop();
+
+            int generation = 1;
+            for (ObjectId parent : commit.getParents()) {
+                if (missing.contains(parent)) {
+                    generation = -1;
+                    break;
+                }
+                generation = Math.max(generation, generations.get(parent) + 1);
+            }
+            if (generation < 0) {
+                missing.add(id);
+            } else {
+                generations.put(id, generation);
+            }
+        }
+
+        List<ObjectId> sorted = new ArrayList<>(generations.keySet());
+        Collections.sort(sorted);
+        Map<ObjectId, Integer> positions = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            positions.put(sorted.get(i), i);
+        }
+
+        CommitGraph previous = get();
+        List<byte[]> filters = new ArrayList<>(sorted.size());
+        for (ObjectId id : sorted) {
+            int previousPosition = previous != null ? previous.findPosition(id) : -1;
+            byte[] filter = previousPosition >= 0 ? previous.getFilter(previousPosition) : null;
+            if (filter == null) {
+                CommitObject commit = commits.get(id);
+                List<ObjectId> parents = commit.getParents();
+                ObjectId parentTree = parents.isEmpty() ? null : commits.get(parents.get(0)).getTree();
+                Set<String> changed = new HashSet<>();
+                filter = BloomFilter.create(diffTrees(parentTree, commit.getTree(), "", changed) ? changed : null);
+            }
+            filters.add(filter);
+        }
+
+        Path graphPath = Paths.get(Constants.COMMIT_GRAPH_FILE);
+        Files.createDirectories(graphPath.getParent());
+        Path tempPath = GitUtils.createTempFile(graphPath.getParent(), "tmp_graph_", "");
+        try {
+            MessageDigest digest = ObjectId.newDigest();
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+                DataOutputStream out = new DataOutputStream(new DigestOutputStream(file, digest));
+                List<Integer> edges = new ArrayList<>();
+                for (ObjectId id : sorted) {
+                    List<ObjectId> parents = commits.get(id).getParents();
+                    if (parents.size() > 2) {
+                        for (int i = 1; i < parents.size(); i++) {
+                            int parent = positions.get(parents.get(i));
+                            edges.add(i == parents.size() - 1 ? parent | LAST_EDGE : parent);
+                        }
+                    }
+                }
+
+                out.write(SIGNATURE);
+                out.writeInt(VERSION);
+                out.writeInt(sorted.size());
+                out.writeInt(edges.size());
+
+                int[] fanOut = new int[256];
+                for (ObjectId id : sorted) {
+                    fanOut[id.getFirstByte()]++;
+                }
+                int total = 0;
+                for (int i = 0; i < 256; i++) {
+                    total += fanOut[i];
+                    out.writeInt(total);
+                }
+
+                byte[] raw = new byte[ObjectId.RAW_LENGTH];
+                for (ObjectId id : sorted) {
+                    id.copyRawTo(raw, 0);
+                    out.write(raw);
+                }
+
+                int nextEdge = 0;
+                for (ObjectId id : sorted) {
+                    CommitObject commit = commits.get(id);
+                    Arrays.fill(raw, (byte) 0);
+                    if (commit.getTree() != null) {
+                        commit.getTree().copyRawTo(raw, 0);
+                    }
+                    out.write(raw);
+
+                    List<ObjectId> parents = commit.getParents();
+                    out.writeInt(parents.isEmpty() ? NO_PARENT : positions.get(parents.get(0)));
+                    if (parents.size() > 2) {
+                        out.writeInt(EXTRA_EDGES | nextEdge);
+                        nextEdge += parents.size() - 1;
+                    } else {
+                        out.writeInt(parents.size() == 2 ? positions.get(parents.get(1)) : NO_PARENT);
+                    }
+                    out.writeInt(generations.get(id));
+                    out.writeLong(commit.getTime());
+                }
+                for (int edge : edges) {
+                    out.writeInt(edge);
+                }
+
+                int filterLength = 0;
+                for (byte[] filter : filters) {
+                    filterLength += filter.length;
+                }
+                out.writeInt(BloomFilter.NUM_HASHES);
+                out.writeInt(BloomFilter.BITS_PER_ENTRY);
+                out.writeInt(filterLength);
+                int filterEnd = 0;
+                for (byte[] filter : filters) {
+                    filterEnd += filter.length;
+                    out.writeInt(filterEnd);
+                }
+                for (byte[] filter : filters) {
+                    out.write(filter);
+                }
+                out.flush();
+                file.write(digest.digest());
+            }
+            Files.move(tempPath, graphPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        return sorted.size();
+    }
+
+    /**
+     * Collects the paths that differ between two trees, with their leading directories.
+     * Subtrees with the same id are skipped without being read.
+     *
+     * @param oldTree The tree before, or null for none.
+     * @param newTree The tree after, or null for none.
+     * @param prefix  The path of the trees, with a trailing `/`, or "" for the root.
+     * @param paths   Receives the changed paths.
+     * @return {@code false} as soon as more than {@link BloomFilter#MAX_CHANGED_PATHS} paths changed.
+     * @throws IOException If a tree cannot be read.
+     */
+    private static boolean diffTrees(ObjectId oldTree, ObjectId newTree, String prefix, Set<String> paths)
+            throws IOException {
+        if (Objects.equals(oldTree, newTree)) {
+            return true;
+        }
+        TreeObject before = oldTree != null ? ObjectDatabase.readTree(oldTree) : null;
+        TreeObject after = newTree != null ? ObjectDatabase.readTree(newTree) : null;
+        Set<String> names = new LinkedHashSet<>();
+        if (before != null) {
+            names.addAll(before.getEntries().keySet());
+        }
+        if (after != null) {
+            names.addAll(after.getEntries().keySet());
+        }
+
+        for (String name : names) {
+            TreeObject.Entry oldEntry = before != null ? before.getEntry(name) : null;
+            TreeObject.Entry newEntry = after != null ? after.getEntry(name) : null;
+            if (oldEntry != null && newEntry != null && oldEntry.getId().equals(newEntry.getId())
+                    && oldEntry.getMode() == newEntry.getMode()) {
+                continue;
+            }
+            BloomFilter.addWithDirectories(prefix + name, paths);
+            if (paths.size() > BloomFilter.MAX_CHANGED_PATHS) {
+                return false;
+            }
+            ObjectId oldSubtree = oldEntry != null && oldEntry.isTree() ? oldEntry.getId() : null;
+            ObjectId newSubtree = newEntry != null && newEntry.isTree() ? newEntry.getId() : null;
+            if ((oldSubtree != null || newSubtree != null)
+                    && !diffTrees(oldSubtree, newSubtree, prefix + name + "/", paths)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,144 @@
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * The `CommitObject` class is a parsed commit: its tree, parents, author, date and message.
+ * Instances are immutable, so they can be shared through the {@link ObjectDatabase} cache.
+ */
+public class CommitObject {
+
+    // Format of the `date` header written by `commit`, in the committer's local time zone
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final ObjectId id;
+    private final ObjectId tree;
+    private final List<ObjectId> parents;
+    private final String author;
+    private final String date;
+    private final String message;
+    private final String text;
+
+    private CommitObject(ObjectId id, ObjectId tree, List<ObjectId> parents,
+                         String author, String date, String message, String text) {
+        this.id = id;
+        this.tree = tree;
+        this.parents = parents;
+        this.author = author;
+        this.date = date;
+        this.message = message;
+        this.text = text;
+    }
+
+    /**
+     * Parses the content of a commit object.
+     * The header lines (`tree`, `parent`, `author`, `date`) end at the first blank line;
+     * the rest is the message. Merge commits written by older versions have no tree
+     * and carry the message in a `message` header line instead.
+     *
+     * @param id   The id of the commit.
+     * @param data The uncompressed commit content.
+     * @return The parsed commit.
+     * @throws IllegalArgumentException If a tree or parent line does not hold a valid id.
+     */
+    public static CommitObject parse(ObjectId id, byte[] data) {
+        String text = new String(data, StandardCharsets.UTF_8);
+        ObjectId tree = null;
+        List<ObjectId> parents = new ArrayList<>(1);
+        String author = "";
+        String date = "";
+        String message = null;
+
+        int pos = 0;
+        while (pos < text.length()) {
+            int end = text.indexOf('\n', pos);
+            if (end < 0) {
+                end = text.length();
+            }
+            String line = text.substring(pos, end);
+            pos = end + 1;
+            if (line.isEmpty()) {
+                break; // End of the header
+            }
+
+            if (line.startsWith("tree ")) {
+                tree = ObjectId.fromString(line.substring(5).trim());
+            } else if (line.startsWith("parent ")) {
+                parents.add(ObjectId.fromString(line.substring(7).trim()));
+            } else if (line.startsWith("author ")) {
+                author = line.substring(7);
+            } else if (line.startsWith("date ")) {
+                date = line.substring(5);
+            } else if (line.startsWith("message ")) {
+                message = line.substring(8);
+            }
+        }
+        if (message == null) {
+            message = pos < text.length() ? text.substring(pos).trim() : "";
+        }
+        return new CommitObject(id, tree, Collections.unmodifiableList(parents), author, date, message, text);
+    }
+
+    /**
+     * @return The id of the commit.
+     */
+    public ObjectId getId() {
+        return id;
+    }
+
+    /**
+     * @return The id of the commit's tree, or null for legacy merge commits that have none.
+     */
+    public ObjectId getTree() {
+        return tree;
+    }
+
+    /**
+     * @return The parent commit ids, in the order they were recorded.
+     */
+    public List<ObjectId> getParents() {
+        return parents;
+    }
+
+    /**
+     * @return The author name.
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * @return The commit date, as written by `commit`.
+     */
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * @return The commit date in seconds since the epoch, or 0 if it is missing or unreadable.
+     */
+    public long getTime() {
+        try {
+            return LocalDateTime.parse(date, DATE_FORMAT).atZone(ZoneId.systemDefault()).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return The commit message.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The full commit content as text.
+     */
+    public String getText() {
+        return text;
+    }
+}
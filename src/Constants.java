@@ -6,4 +6,5 @@ public class Constants {
     public static final String HEAD_FILE = GIT_DIR + "/HEAD";
     public static final String INDEX_FILE = GIT_DIR + "/index";
     public static final String IGNORE_FILE = ".mygitignore";
+    public static final String COMMIT_GRAPH_FILE = OBJECTS_DIR + "/info/commit-graph";
 }
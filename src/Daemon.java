@@ -0,0 +1,245 @@
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The `Daemon` class is an optional background process that runs commands for the
+ * repository it was started in, so that they do not pay for starting a JVM, loading
+ * classes and warming caches every time. What a command loads stays in memory for the
+ * next one: parsed objects in the {@link ObjectDatabase} cache, the open packs and their
+ * indexes and bitmaps, the commit graph and the mapped index. Each of these caches
+ * already notices when its file changes on disk, so commands run outside the daemon
+ * are seen by the next command it runs.
+ *
+ * The daemon listens on the Unix domain socket `.mygit/daemon.sock`. A request is the
+ * command line, each argument in UTF-8 followed by a NUL byte, after which the client
+ * shuts down its side of the connection; the reply is the command's output, streamed
+ * until the daemon closes the connection. {@link MyGitClient} is the client, but
+ * anything that can talk to a Unix socket will do. A connection with an empty request
+ * is only a check that the daemon is alive.
+ *
+ * Commands are run one at a time, in the order their connections are accepted, as the
+ * command classes keep their state in static fields and resolve paths against the
+ * working directory of the process. Commands that run until they are stopped
+ * (`fsmonitor run`, `daemon run`) would hold up every later client, so the daemon
+ * refuses them and {@link MyGitClient} runs them in its own process.
+ */
+public class Daemon {
+
+    /** Socket the daemon listens on, relative to the repository root. */
+    public static final String SOCKET_FILE = Constants.GIT_DIR + "/daemon.sock";
+
+    private static final String OUTPUT_FILE = Constants.GIT_DIR + "/daemon.out";
+
+    // Requests larger than this are refused; a command line is never anywhere near it
+    private static final int MAX_REQUEST_SIZE = 1 << 20;
+
+    // The request that makes the daemon exit
+    private static final List<String> STOP_REQUEST = Arrays.asList("daemon", "stop");
+
+    // Commands that only return when stopped
+    private static final List<List<String>> LONG_RUNNING = Arrays.asList(
+            Arrays.asList("fsmonitor", "run"), Arrays.asList("daemon", "run"));
+
+    private Daemon() {
+    }
+
+    /**
+     * @return {@code true} if a daemon accepts connections on this repository's socket.
+     */
+    public static boolean isRunning() {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET_FILE))) {
+            channel.shutdownOutput(); // An empty request
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts a daemon for the repository in the current directory as a background process.
+     */
+    public static void start() {
+        if (!Files.isDirectory(Paths.get(Constants.GIT_DIR))) {
+            Output.error("Error: Not a MyGit repository.");
+            return;
+        }
+        if (isRunning()) {
+            Output.println("The daemon is already running.");
+            return;
+        }
+
+        try {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "MyGit", "daemon", "run")
+                    .redirectErrorStream(true)
+                    .redirectOutput(new File(OUTPUT_FILE))
+                    .start();
+
+            // Wait until the daemon accepts connections
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (System.nanoTime() < deadline) {
+                if (isRunning()) {
+                    Output.println("Daemon started.");
+                    return;
+                }
+                Thread.sleep(50);
+            }
+            Output.error("Error: The daemon did not start; see " + OUTPUT_FILE);
+        } catch (IOException e) {
+            Output.error("Error starting the daemon: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Asks a running daemon to exit.
+     */
+    public static void stop() {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET_FILE))) {
+            sendRequest(channel, STOP_REQUEST);
+            Output.println(new String(Channels.newInputStream(channel).readAllBytes(), StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            Output.println("The daemon is not running.");
+        }
+    }
+
+    /**
+     * Reports whether a daemon is running.
+     */
+    public static void showStatus() {
+        if (isRunning()) {
+            Output.println("Daemon is running on " + SOCKET_FILE + ".");
+        } else {
+            Output.println("Daemon is not running.");
+        }
+    }
+
+    /**
+     * Serves commands in the current process until a stop is requested.
+     */
+    public static void run() {
+        if (isRunning()) {
+            Output.error("Error: Another daemon is already running.");
+            return;
+        }
+
+        Path socketPath = Paths.get(SOCKET_FILE);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            // A socket file without a daemon behind it is left over from one that was killed
+            Files.deleteIfExists(socketPath);
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            Output.println("Serving " + Paths.get("").toAbsolutePath() + " on " + SOCKET_FILE + ".");
+            Output.flush(); // This process runs until stopped, so do not hold the line back
+
+            boolean stopping = false;
+            while (!stopping) {
+                try (SocketChannel client = server.accept()) {
+                    stopping = serve(client);
+                } catch (IOException e) {
+                    // A client that went away does not stop the daemon
+                    Output.println("Warning: dropped a request: " + e.getMessage());
+                    Output.flush();
+                }
+            }
+        } catch (IOException e) {
+            Output.error("Error: The daemon failed: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(socketPath);
+            } catch (IOException e) {
+                Output.println("Warning: could not remove " + SOCKET_FILE + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks whether a command line runs a command that only returns when stopped,
+     * ignoring the output options before the command.
+     *
+     * @param args The command line.
+     * @return {@code true} if the daemon would be busy with it until it is stopped.
+     */
+    static boolean isLongRunning(List<String> args) {
+        int command = 0;
+        while (command < args.size() && args.get(command).startsWith("-")) {
+            command++;
+        }
+        return LONG_RUNNING.contains(args.subList(command, args.size()));
+    }
+
+    /**
+     * Sends a command line to a daemon and shuts down the sending side of the connection.
+     *
+     * @param channel The connection.
+     * @param args    The command line.
+     * @throws IOException If the request cannot be sent.
+     */
+    static void sendRequest(SocketChannel channel, List<String> args) throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        for (String arg : args) {
+            request.write(arg.getBytes(StandardCharsets.UTF_8));
+            request.write(0);
+        }
+        OutputStream out = Channels.newOutputStream(channel);
+        request.writeTo(out);
+        out.flush();
+        channel.shutdownOutput();
+    }
+
+    // Run the command of one connection with the output sent back to the client;
+    // returns true if the client asked the daemon to stop
+    private static boolean serve(SocketChannel client) throws IOException {
+        List<String> args = readRequest(client);
+        if (args.isEmpty()) {
+            return false; // Only checking that the daemon is alive
+        }
+
+        Output.setStream(Channels.newOutputStream(client));
+        try {
+            if (args.equals(STOP_REQUEST)) {
+                Output.configure(false, false);
+                Output.println("Daemon stopped.");
+                return true;
+            }
+            if (isLongRunning(args)) {
+                Output.error("Error: '" + String.join(" ", args) + "' runs until stopped and would block the daemon;"
+                        + " run it with java MyGit.");
+                return false;
+            }
+            MyGit.execute(args.toArray(new String[0]));
+        } catch (RuntimeException e) {
+            // A failing command must not take the daemon and its caches down with it
+            Output.error("Error: " + e);
+        } finally {
+            Output.resetStream();
+        }
+        return false;
+    }
+
+    // Read the NUL-terminated arguments sent before the client shut down its side
+    private static List<String> readRequest(SocketChannel client) throws IOException {
+        byte[] request = Channels.newInputStream(client).readNBytes(MAX_REQUEST_SIZE + 1);
+        if (request.length > MAX_REQUEST_SIZE) {
+            throw new IOException("Request too large");
+        }
+
+        List<String> args = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < request.length; i++) {
+            if (request[i] == 0) {
+                args.add(new String(request, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return args;
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * The `Delta` class creates and applies binary deltas between two versions of an object.
+ *
+ * A delta starts with the base size and the result size (little-endian base-128 varints),
+ * followed by instructions:
+ * <ul>
+ *   <li>copy ({@code 1xxxxxxx}): the low four bits say which offset bytes follow and the
+ *       next three bits which size bytes follow; copies {@code size} bytes from the base
+ *       at {@code offset} (a size of 0 means 0x10000).</li>
+ *   <li>insert ({@code 0nnnnnnn}, n &gt; 0): the next n bytes are copied from the delta.</li>
+ * </ul>
+ */
+public class Delta {
+
+    // Length of the blocks of the base that are indexed for matching
+    private static final int BLOCK = 16;
+
+    // Largest size a single copy instruction can express
+    private static final int MAX_COPY = 0x10000;
+
+    // Largest number of literal bytes in one insert instruction
+    private static final int MAX_INSERT = 0x7f;
+
+    // Limit on candidates examined per hash bucket, keeps pathological inputs linear
+    private static final int MAX_CANDIDATES = 64;
+
+    // Multiplier for the rolling block hash, and that multiplier to the power BLOCK - 1
+    private static final int PRIME = 31;
+    private static final int PRIME_POW;
+
+    static {
+        int pow = 1;
+        for (int i = 1; i < BLOCK; i++) {
+            pow *= PRIME;
+        }
+        PRIME_POW = pow;
+    }
+
+    /**
+     * Creates a delta that turns {@code base} into {@code target}.
+     *
+     * @param base    The base object content.
+     * @param target  The content the delta must reproduce.
+     * @param maxSize Give up as soon as the delta would exceed this many bytes.
+     * @return The encoded delta, or null if it would be larger than {@code maxSize}.
+     */
+    public static byte[] create(byte[] base, byte[] target, int maxSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxSize, target.length) + 16);
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        // Index every non-overlapping block of the base by its hash
+        int blocks = base.length / BLOCK;
+        int tableSize = Integer.highestOneBit(Math.max(blocks, 1) * 2);
+        int[] heads = new int[tableSize];
+        int[] next = new int[blocks + 1];
+        for (int block = blocks - 1; block >= 0; block--) {
+            int bucket = hash(base, block * BLOCK) & (tableSize - 1);
+            next[block + 1] = heads[bucket];
+            heads[bucket] = block + 1; // 0 marks an empty bucket
+        }
+
+        int literalStart = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int bestOffset = -1;
+            int bestLength = 0;
+            int candidates = 0;
+            for (int entry = heads[h & (tableSize - 1)]; entry != 0 && candidates < MAX_CANDIDATES; entry = next[entry]) {
+                int offset = (entry - 1) * BLOCK;
+                int length = matchLength(base, offset, target, i);
+                if (length > bestLength) {
+                    bestOffset = offset;
+                    bestLength = length;
+                }
+                candidates++;
+            }
+
+            if (bestLength >= BLOCK) {
+                // Grow the match backwards over bytes that would otherwise be inserted
+                while (bestOffset > 0 && i > literalStart && base[bestOffset - 1] == target[i - 1]) {
+                    bestOffset--;
+                    i--;
+                    bestLength++;
+                }
+                writeInsert(out, target, literalStart, i);
+                writeCopy(out, bestOffset, bestLength);
+                i += bestLength;
+                literalStart = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - target[i] * PRIME_POW) * PRIME + target[i + BLOCK];
+                }
+                i++;
+            }
+
+            if (out.size() > maxSize) {
+                return null;
+            }
+        }
+        writeInsert(out, target, literalStart, target.length);
+        return out.size() > maxSize ? null : out.toByteArray();
+    }
+
+    /**
+     * Applies a delta to its base.
+     *
+     * @param base  The base object content.
+     * @param delta The encoded delta.
+     * @return The reconstructed content.
+     * @throws IOException If the delta is malformed or does not match the base.
+     */
+    public static byte[] apply(byte[] base, byte[] delta) throws IOException {
+        int[] pos = {0};
+        long baseSize = readVarint(delta, pos);
+        long resultSize = readVarint(delta, pos);
+        if (baseSize != base.length) {
+            throw new IOException("Delta base size mismatch: expected " + baseSize + ", got " + base.length);
+        }
+
+        byte[] result = new byte[(int) resultSize];
+        try {
+            applyInstructions(base, delta, pos[0], result);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated delta instruction");
+        }
+        return result;
+    }
+
+    // Execute the copy/insert instructions starting at p, filling result exactly
+    private static void applyInstructions(byte[] base, byte[] delta, int p, byte[] result) throws IOException {
+        int out = 0;
+        while (p < delta.length) {
+            int cmd = delta[p++] & 0xff;
+            if ((cmd & 0x80) != 0) {
+                long offset = 0;
+                int size = 0;
+                for (int k = 0; k < 4; k++) {
+                    if ((cmd & (1 << k)) != 0) {
+                        offset |= (long) (delta[p++] & 0xff) << (8 * k);
+                    }
+                }
+                for (int k = 0; k < 3; k++) {
+                    if ((cmd & (0x10 << k)) != 0) {
+                        size |= (delta[p++] & 0xff) << (8 * k);
+                    }
+                }
+                if (size == 0) {
+                    size = MAX_COPY;
+                }
+                if (offset + size > base.length || out + size > result.length) {
+                    throw new IOException("Delta copy out of range");
+                }
+                System.arraycopy(base, (int) offset, result, out, size);
+                out += size;
+            } else if (cmd != 0) {
+                if (p + cmd > delta.length || out + cmd > result.length) {
+                    throw new IOException("Delta insert out of range");
+                }
+                System.arraycopy(delta, p, result, out, cmd);
+                p += cmd;
+                out += cmd;
+            } else {
+                throw new IOException("Invalid delta instruction");
+            }
+        }
+
+        if (out != result.length) {
+            throw new IOException("Delta produced " + out + " bytes, expected " + result.length);
+        }
+    }
+
+    // Hash the BLOCK bytes starting at the given offset
+    private static int hash(byte[] data, int offset) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k++) {
+            h = h * PRIME + data[offset + k];
+        }
+        return h;
+    }
+
+    // Count how many bytes match from the given positions onwards
+    private static int matchLength(byte[] base, int baseOffset, byte[] target, int targetOffset) {
+        int max = Math.min(base.length - baseOffset, target.length - targetOffset);
+        int length = 0;
+        while (length < max && base[baseOffset + length] == target[targetOffset + length]) {
+            length++;
+        }
+        return length;
+    }
+
+    // Emit insert instructions for target[from, to)
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    // Emit copy instructions for base[offset, offset + length)
+    private static void writeCopy(ByteArrayOutputStream out, int offset, int length) {
+        while (length > 0) {
+            int size = Math.min(MAX_COPY, length);
+            int cmd = 0x80;
+            byte[] args = new byte[7];
+            int n = 0;
+            for (int k = 0; k < 4; k++) {
+                int b = (offset >>> (8 * k)) & 0xff;
+                if (b != 0) {
+                    cmd |= 1 << k;
+                    args[n++] = (byte) b;
+                }
+            }
+            int encodedSize = size == MAX_COPY ? 0 : size;
+            for (int k = 0; k < 3; k++) {
+                int b = (encodedSize >>> (8 * k)) & 0xff;
+                if (b != 0) {
+                    cmd |= 0x10 << k;
+                    args[n++] = (byte) b;
+                }
+            }
+            out.write(cmd);
+            out.write(args, 0, n);
+            offset += size;
+            length -= size;
+        }
+    }
+
+    // Write a little-endian base-128 varint
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    // Read a little-endian base-128 varint, advancing pos[0]
+    private static long readVarint(byte[] data, int[] pos) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (pos[0] >= data.length) {
+                throw new IOException("Truncated delta header");
+            }
+            b = data[pos[0]++] & 0xff;
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
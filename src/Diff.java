@@ -12,12 +12,10 @@ import java.util.*;
 public class Diff {
     
 
-        // Constants representing file paths for refs, objects, HEAD, and the index file
+        // Constants representing file paths for refs and HEAD
 
     private static final String REFS_DIR = ".mygit/refs/heads";
-    private static final String OBJECTS_DIR = ".mygit/objects";
     private static final String HEAD_FILE = ".mygit/HEAD";
-    private static final String INDEX_FILE = ".mygit/index";
 
 
 
@@ -31,59 +29,47 @@ public class Diff {
             Path filePath = Paths.get(filename);
 
             if (!Files.exists(filePath)) {
-                System.out.println("File not found in working directory: " + filename);
+                Output.println("File not found in working directory: " + filename);
                 return;
             }
 
-            // Read current file content
-            List<String> currentContent = Files.readAllLines(filePath);
+            // Look up the staged version of the file in the index
+            Index index = Index.read();
+            IndexEntry entry = index.get(filename);
+            if (entry == null) {
+                Output.println("File not staged: " + filename);
+                return;
+            }
+            ObjectId stagedHash = entry.getId();
 
-            // Read staged file content from the index
-            String stagedHash = getStagedHash(filename);
-            if (stagedHash == null) {
-                System.out.println("File not staged: " + filename);
+            // A file whose stat data still matches the index has no differences to show
+            if (index.isUnchanged(entry, FileStat.read(filePath))) {
+                Output.println("Diff for " + filename + ":");
                 return;
             }
 
-            Path objectPath = Paths.get(OBJECTS_DIR, stagedHash);
-            if (!Files.exists(objectPath)) {
-                System.out.println("Staged object not found: " + stagedHash);
+            // Read current file content
+            List<String> currentContent = Files.readAllLines(filePath);
+
+            GitObject stagedObject = ObjectDatabase.readObject(stagedHash);
+            if (stagedObject == null) {
+                Output.println("Staged object not found: " + stagedHash);
                 return;
             }
 
-            List<String> stagedContent = Files.readAllLines(objectPath);
+            List<String> stagedContent = stagedObject.getLines();
 
             // Compare the two contents
-            System.out.println("Diff for " + filename + ":");
+            Output.println("Diff for " + filename + ":");
             displayDiff(stagedContent, currentContent);
 
         } catch (IOException e) {
-            System.out.println("Error showing diff: " + e.getMessage());
-        }
-    }
-
-
-  /**
-     * Retrieves the hash of a staged file from the index.
-     *
-     * @param filename The name of the file to look up in the index.
-     * @return The hash of the staged file, or null if the file is not staged.
-     * @throws IOException If an I/O error occurs while reading the index.
-     */
-
-    private static String getStagedHash(String filename) throws IOException {
-        List<String> lines = Files.readAllLines(Paths.get(INDEX_FILE));
-        for (String line : lines) {
-            String[] parts = line.split(" ", 2);
-            if (parts.length == 2 && parts[1].equals(filename)) {
-                return parts[0];
-            }
+            Output.error("Error showing diff: " + e.getMessage());
         }
-        return null;
     }
 
 
-    /**
+     /**
      * Shows differences between two branches.
      *
      * @param branch1 The name of the first branch.
@@ -93,32 +79,32 @@ public class Diff {
     public static void showBranchDiff(String branch1, String branch2) {
         try {
             // Get the commit hashes for both branches
-            String commitHash1 = getBranchCommitHash(branch1);
-            String commitHash2 = getBranchCommitHash(branch2);
+            ObjectId commitHash1 = getBranchCommitHash(branch1);
+            ObjectId commitHash2 = getBranchCommitHash(branch2);
 
             if (commitHash1 == null || commitHash2 == null) {
-                System.out.println("Error: One or both branches do not exist.");
+                Output.error("Error: One or both branches do not exist.");
                 return;
             }
 
             // Get the tree hashes for both commits
-            String treeHash1 = getTreeHashFromCommit(commitHash1);
-            String treeHash2 = getTreeHashFromCommit(commitHash2);
+            ObjectId treeHash1 = getTreeHashFromCommit(commitHash1);
+            ObjectId treeHash2 = getTreeHashFromCommit(commitHash2);
 
             if (treeHash1 == null || treeHash2 == null) {
-                System.out.println("Error: One or both commits do not have a tree object.");
+                Output.error("Error: One or both commits do not have a tree object.");
                 return;
             }
 
             // Get the file listings for both trees
-            Map<String, String> filesInBranch1 = getFilesFromTree(treeHash1);
-            Map<String, String> filesInBranch2 = getFilesFromTree(treeHash2);
+            Map<String, ObjectId> filesInBranch1 = getFilesFromTree(treeHash1);
+            Map<String, ObjectId> filesInBranch2 = getFilesFromTree(treeHash2);
 
             // Compare the file listings
             compareBranches(filesInBranch1, filesInBranch2);
 
         } catch (IOException e) {
-            System.out.println("Error showing branch diff: " + e.getMessage());
+            Output.error("Error showing branch diff: " + e.getMessage());
         }
     }
 
@@ -130,10 +116,10 @@ public class Diff {
      * @throws IOException If an I/O error occurs while reading the branch file.
      */
 
-    private static String getBranchCommitHash(String branchName) throws IOException {
+    private static ObjectId getBranchCommitHash(String branchName) throws IOException {
         Path branchPath = Paths.get(REFS_DIR, branchName);
         if (Files.exists(branchPath)) {
-            return new String(Files.readAllBytes(branchPath)).trim();
+            return GitUtils.readRef(branchPath); // A branch without commits has an empty ref
         }
         return null;
     }
@@ -146,19 +132,9 @@ public class Diff {
      * @return The tree hash associated with the commit, or null if not found.
      * @throws IOException If an I/O error occurs while reading the commit file.
      */
-    private static String getTreeHashFromCommit(String commitHash) throws IOException {
-        Path commitPath = Paths.get(OBJECTS_DIR, commitHash);
-        if (!Files.exists(commitPath)) {
-            return null;
-        }
-
-        List<String> lines = Files.readAllLines(commitPath);
-        for (String line : lines) {
-            if (line.startsWith("tree ")) {
-                return line.substring(5).trim();
-            }
-        }
-        return null;
+    private static ObjectId getTreeHashFromCommit(ObjectId commitHash) throws IOException {
+        CommitObject commitObject = ObjectDatabase.readCommit(commitHash);
+        return commitObject != null ? commitObject.getTree() : null;
     }
 
 
@@ -166,26 +142,12 @@ public class Diff {
      * Retrieves the files and their hashes from a tree object.
      *
      * @param treeHash The tree hash.
-     * @return A map containing filenames as keys and their hashes as values.
-     * @throws IOException If an I/O error occurs while reading the tree object.
+     * @return A map containing file paths as keys and their hashes as values, including
+     *         the files of subdirectories.
+     * @throws IOException If an I/O error occurs while reading the tree objects.
      */
-    private static Map<String, String> getFilesFromTree(String treeHash) throws IOException {
-        Path treePath = Paths.get(OBJECTS_DIR, treeHash);
-        Map<String, String> files = new HashMap<>();
-
-        if (!Files.exists(treePath)) {
-            return files;
-        }
-
-        List<String> lines = Files.readAllLines(treePath);
-        for (String line : lines) {
-            String[] parts = line.split(" ", 2);
-            if (parts.length == 2) {
-                files.put(parts[1], parts[0]);
-            }
-        }
-
-        return files;
+    private static Map<String, ObjectId> getFilesFromTree(ObjectId treeHash) throws IOException {
+        return GitUtils.listTreeFiles(treeHash);
     }
 
 
@@ -197,21 +159,21 @@ public class Diff {
      * @throws IOException If an I/O error occurs while reading file contents.
      */
 
-    private static void compareBranches(Map<String, String> files1, Map<String, String> files2) throws IOException {
+    private static void compareBranches(Map<String, ObjectId> files1, Map<String, ObjectId> files2) throws IOException {
         Set<String> allFiles = new HashSet<>();
         allFiles.addAll(files1.keySet());
         allFiles.addAll(files2.keySet());
 
         for (String file : allFiles) {
-            String hash1 = files1.get(file);
-            String hash2 = files2.get(file);
+            ObjectId hash1 = files1.get(file);
+            ObjectId hash2 = files2.get(file);
 
             if (hash1 == null) {
-                System.out.println("File added in second branch: " + file);
+                Output.record("change", "File added in second branch: " + file, "status", "added", "path", file);
             } else if (hash2 == null) {
-                System.out.println("File deleted in second branch: " + file);
+                Output.record("change", "File deleted in second branch: " + file, "status", "deleted", "path", file);
             } else if (!hash1.equals(hash2)) {
-                System.out.println("File modified: " + file);
+                Output.record("change", "File modified: " + file, "status", "modified", "path", file);
                 showFileDiff(hash1, hash2, file);
             }
         }
@@ -227,15 +189,15 @@ public class Diff {
      * @param filename The name of the file being compared.
      * @throws IOException If an I/O error occurs while reading the files.
      */
-    private static void showFileDiff(String hash1, String hash2, String filename) throws IOException {
-        Path filePath1 = Paths.get(OBJECTS_DIR, hash1);
-        Path filePath2 = Paths.get(OBJECTS_DIR, hash2);
+    private static void showFileDiff(ObjectId hash1, ObjectId hash2, String filename) throws IOException {
+        GitObject object1 = ObjectDatabase.readObject(hash1);
+        GitObject object2 = ObjectDatabase.readObject(hash2);
 
-        List<String> content1 = Files.exists(filePath1) ? Files.readAllLines(filePath1) : Collections.emptyList();
-        List<String> content2 = Files.exists(filePath2) ? Files.readAllLines(filePath2) : Collections.emptyList();
+        List<String> content1 = object1 != null ? object1.getLines() : Collections.emptyList();
+        List<String> content2 = object2 != null ? object2.getLines() : Collections.emptyList();
 
-        System.out.println("--- " + filename + " (branch1)");
-        System.out.println("+++ " + filename + " (branch2)");
+        Output.println("--- " + filename + " (branch1)");
+        Output.println("+++ " + filename + " (branch2)");
         displayDiff(content1, content2);
     }
 
@@ -247,8 +209,8 @@ public class Diff {
             String newLine = i < newContent.size() ? newContent.get(i) : "";
 
             if (!oldLine.equals(newLine)) {
-                System.out.println("- " + oldLine);
-                System.out.println("+ " + newLine);
+                Output.println("- " + oldLine);
+                Output.println("+ " + newLine);
             }
         }
     }
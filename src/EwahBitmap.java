@@ -0,0 +1,425 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * The `EwahBitmap` class is an immutable bitmap compressed with EWAH (Enhanced
+ * Word-Aligned Hybrid), the encoding git uses for reachability bitmaps.
+ *
+ * The bits are grouped in 64-bit words. Runs of words that are all zeros or all ones
+ * ("clean" words) are stored as a count, other words ("literal" words) verbatim. The
+ * stored words are a sequence of marker words, each followed by its literal words:
+ * <pre>
+ *   bit 0       : the bit value of the clean run
+ *   bits 1-32   : the number of clean words in the run
+ *   bits 33-63  : the number of literal words that follow the marker
+ * </pre>
+ * Boolean operations combine two bitmaps run by run, so long clean runs cost one step
+ * rather than one step per word.
+ *
+ * The serialized form is git's: bit count (int), word count (int), the words (longs)
+ * and the position of the last marker word (int), all big-endian.
+ */
+public class EwahBitmap {
+
+    private static final int RUN_LENGTH_BITS = 32;
+    private static final int LITERAL_BITS = 31;
+    private static final long MAX_RUN_LENGTH = (1L << RUN_LENGTH_BITS) - 1;
+    private static final long MAX_LITERALS = (1L << LITERAL_BITS) - 1;
+
+    /** The empty bitmap. */
+    public static final EwahBitmap EMPTY = new Builder().build();
+
+    private final long[] words;
+    private final int wordCount;
+    private final int sizeInBits;
+
+    private EwahBitmap(long[] words, int wordCount, int sizeInBits) {
+        this.words = words;
+        this.wordCount = wordCount;
+        this.sizeInBits = sizeInBits;
+    }
+
+    /**
+     * Compresses an uncompressed bitmap.
+     *
+     * @param bits The bits to set.
+     * @return The compressed bitmap.
+     */
+    public static EwahBitmap fromBitSet(BitSet bits) {
+        Builder builder = new Builder();
+        for (long word : bits.toLongArray()) {
+            builder.addWord(word);
+        }
+        return builder.build(bits.length());
+    }
+
+    /**
+     * @return The bitmap uncompressed.
+     */
+    public BitSet toBitSet() {
+        BitSet bits = new BitSet(sizeInBits);
+        forEachSetBit(bits::set);
+        return bits;
+    }
+
+    /**
+     * Reads a serialized bitmap.
+     *
+     * @param buffer The buffer to read from, at its current position, which is advanced.
+     * @return The bitmap.
+     * @throws IOException If the data is truncated or inconsistent.
+     */
+    public static EwahBitmap read(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 8) {
+            throw new IOException("Truncated bitmap");
+        }
+        int sizeInBits = buffer.getInt();
+        int wordCount = buffer.getInt();
+        if (wordCount < 0 || sizeInBits < 0 || buffer.remaining() < 8L * wordCount + 4) {
+            throw new IOException("Truncated bitmap");
+        }
+        long[] words = new long[wordCount];
+        for (int i = 0; i < wordCount; i++) {
+            words[i] = buffer.getLong();
+        }
+        buffer.getInt(); // Position of the last marker word, only needed to append in place
+        return new EwahBitmap(words, wordCount, sizeInBits);
+    }
+
+    /**
+     * Serializes the bitmap.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(sizeInBits);
+        out.writeInt(wordCount);
+        int lastMarker = 0;
+        for (int i = 0; i < wordCount; i += 1 + literalCount(words[i])) {
+            lastMarker = i;
+        }
+        for (int i = 0; i < wordCount; i++) {
+            out.writeLong(words[i]);
+        }
+        out.writeInt(lastMarker);
+    }
+
+    /**
+     * @param bit A bit position.
+     * @return {@code true} if the bit is set.
+     */
+    public boolean get(int bit) {
+        int wordIndex = bit >>> 6;
+        int word = 0;
+        for (int i = 0; i < wordCount; ) {
+            long marker = words[i];
+            long run = runLength(marker);
+            if (wordIndex < word + run) {
+                return runBit(marker);
+            }
+            word += run;
+            int literals = literalCount(marker);
+            if (wordIndex < word + literals) {
+                return (words[i + 1 + wordIndex - word] & (1L << bit)) != 0;
+            }
+            word += literals;
+            i += 1 + literals;
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of set bits.
+     */
+    public int cardinality() {
+        long count = 0;
+        for (int i = 0; i < wordCount; ) {
+            long marker = words[i];
+            if (runBit(marker)) {
+                count += runLength(marker) * 64;
+            }
+            int literals = literalCount(marker);
+            for (int j = 1; j <= literals; j++) {
+                count += Long.bitCount(words[i + j]);
+            }
+            i += 1 + literals;
+        }
+        return (int) Math.min(count, sizeInBits);
+    }
+
+    /**
+     * Calls an action for every set bit, in increasing order.
+     *
+     * @param action The action, given the bit position.
+     */
+    public void forEachSetBit(IntConsumer action) {
+        int base = 0;
+        for (int i = 0; i < wordCount; ) {
+            long marker = words[i];
+            long run = runLength(marker);
+            if (runBit(marker)) {
+                for (long bit = base, end = Math.min(base + run * 64, sizeInBits); bit < end; bit++) {
+                    action.accept((int) bit);
+                }
+            }
+            base += run * 64;
+            int literals = literalCount(marker);
+            for (int j = 1; j <= literals; j++) {
+                long word = words[i + j];
+                while (word != 0) {
+                    action.accept(base + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+                base += 64;
+            }
+            i += 1 + literals;
+        }
+    }
+
+    /**
+     * @param other Another bitmap.
+     * @return The bits set in either bitmap.
+     */
+    public EwahBitmap or(EwahBitmap other) {
+        return combine(other, Operation.OR);
+    }
+
+    /**
+     * @param other Another bitmap.
+     * @return The bits set in both bitmaps.
+     */
+    public EwahBitmap and(EwahBitmap other) {
+        return combine(other, Operation.AND);
+    }
+
+    /**
+     * @param other Another bitmap.
+     * @return The bits set in this bitmap but not in the other.
+     */
+    public EwahBitmap andNot(EwahBitmap other) {
+        return combine(other, Operation.AND_NOT);
+    }
+
+    /**
+     * @param other Another bitmap.
+     * @return The bits set in exactly one of the bitmaps.
+     */
+    public EwahBitmap xor(EwahBitmap other) {
+        return combine(other, Operation.XOR);
+    }
+
+    /**
+     * @return The number of words in the compressed form, a measure of its size.
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    // Combine two bitmaps; where both are in a clean run the whole overlap is handled in one step
+    private EwahBitmap combine(EwahBitmap other, Operation operation) {
+        Cursor a = new Cursor(this);
+        Cursor b = new Cursor(other);
+        Builder result = new Builder();
+        while (!a.isDone() || !b.isDone()) {
+            if (a.isClean() && b.isClean()) {
+                long run = Math.min(a.remainingRun(), b.remainingRun());
+                long word = operation.apply(a.cleanWord(), b.cleanWord());
+                result.addClean(word != 0, run);
+                a.skip(run);
+                b.skip(run);
+            } else {
+                result.addWord(operation.apply(a.nextWord(), b.nextWord()));
+            }
+        }
+        return result.build(Math.max(sizeInBits, other.sizeInBits));
+    }
+
+    private static boolean runBit(long marker) {
+        return (marker & 1) != 0;
+    }
+
+    private static long runLength(long marker) {
+        return (marker >>> 1) & MAX_RUN_LENGTH;
+    }
+
+    private static int literalCount(long marker) {
+        return (int) (marker >>> (1 + RUN_LENGTH_BITS));
+    }
+
+    private static long marker(boolean bit, long runLength, long literals) {
+        return (bit ? 1 : 0) | (runLength << 1) | (literals << (1 + RUN_LENGTH_BITS));
+    }
+
+    /**
+     * A word-wise boolean operation.
+     */
+    private enum Operation {
+        OR, AND, AND_NOT, XOR;
+
+        long apply(long a, long b) {
+            switch (this) {
+                case OR:
+                    return a | b;
+                case AND:
+                    return a & b;
+                case XOR:
+                    return a ^ b;
+                default:
+                    return a & ~b;
+            }
+        }
+    }
+
+    /**
+     * Reads the uncompressed words of a bitmap in order, followed by zero words forever.
+     */
+    private static class Cursor {
+        private final EwahBitmap bitmap;
+        private int marker = 0;        // Index of the current marker word
+        private long runLeft;          // Clean words left in the current run
+        private int literalsLeft;      // Literal words left after the run
+
+        Cursor(EwahBitmap bitmap) {
+            this.bitmap = bitmap;
+            load();
+        }
+
+        boolean isDone() {
+            return marker >= bitmap.wordCount;
+        }
+
+        // True if the next word is part of a clean run (the zeros past the end count as one)
+        boolean isClean() {
+            return runLeft > 0 || isDone();
+        }
+
+        long remainingRun() {
+            return isDone() ? Long.MAX_VALUE : runLeft;
+        }
+
+        long cleanWord() {
+            return !isDone() && runBit(bitmap.words[marker]) ? -1L : 0L;
+        }
+
+        void skip(long count) {
+            if (isDone()) {
+                return;
+            }
+            runLeft -= count;
+            advanceIfExhausted();
+        }
+
+        long nextWord() {
+            if (isDone()) {
+                return 0;
+            }
+            long word;
+            if (runLeft > 0) {
+                word = cleanWord();
+                runLeft--;
+            } else {
+                int literal = literalCount(bitmap.words[marker]) - literalsLeft;
+                word = bitmap.words[marker + 1 + literal];
+                literalsLeft--;
+            }
+            advanceIfExhausted();
+            return word;
+        }
+
+        private void load() {
+            while (!isDone()) {
+                long word = bitmap.words[marker];
+                runLeft = runLength(word);
+                literalsLeft = literalCount(word);
+                if (runLeft > 0 || literalsLeft > 0) {
+                    return;
+                }
+                marker++;
+            }
+        }
+
+        private void advanceIfExhausted() {
+            if (runLeft == 0 && literalsLeft == 0) {
+                marker += 1 + literalCount(bitmap.words[marker]);
+                load();
+            }
+        }
+    }
+
+    /**
+     * Builds a bitmap from its uncompressed words, in order.
+     */
+    static class Builder {
+        private long[] words = new long[4];
+        private int wordCount = 1;     // Word 0 is the first marker
+        private int lastMarker = 0;
+        private long uncompressedWords = 0;
+
+        // Append one uncompressed word
+        void addWord(long word) {
+            if (word == 0 || word == -1L) {
+                addClean(word != 0, 1);
+                return;
+            }
+            long current = words[lastMarker];
+            if (literalCount(current) == MAX_LITERALS) {
+                startMarker(false, 0);
+                current = words[lastMarker];
+            }
+            words[lastMarker] = marker(runBit(current), runLength(current), literalCount(current) + 1);
+            append(word);
+            uncompressedWords++;
+        }
+
+        // Append a run of clean words
+        void addClean(boolean bit, long count) {
+            uncompressedWords += count;
+            while (count > 0) {
+                long current = words[lastMarker];
+                boolean extendable = literalCount(current) == 0
+                        && (runLength(current) == 0 || runBit(current) == bit)
+                        && runLength(current) < MAX_RUN_LENGTH;
+                if (!extendable) {
+                    startMarker(bit, 0);
+                    current = words[lastMarker];
+                }
+                long added = Math.min(count, MAX_RUN_LENGTH - runLength(current));
+                words[lastMarker] = marker(bit, runLength(current) + added, 0);
+                count -= added;
+            }
+        }
+
+        EwahBitmap build() {
+            return build((int) Math.min(uncompressedWords * 64, Integer.MAX_VALUE));
+        }
+
+        EwahBitmap build(int sizeInBits) {
+            // Trailing clean zero words carry no information
+            if (literalCount(words[lastMarker]) == 0 && !runBit(words[lastMarker])) {
+                words[lastMarker] = 0;
+                if (lastMarker > 0) {
+                    wordCount = lastMarker;
+                }
+            }
+            if (wordCount == 1 && words[0] == 0) {
+                wordCount = 0;
+            }
+            return new EwahBitmap(Arrays.copyOf(words, wordCount), wordCount, sizeInBits);
+        }
+
+        private void startMarker(boolean bit, long runLength) {
+            lastMarker = wordCount;
+            append(marker(bit, runLength, 0));
+        }
+
+        private void append(long word) {
+            if (wordCount == words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            words[wordCount++] = word;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * The `FileStat` class is the subset of a file's metadata recorded in the index:
+ * size, modification and change times in nanoseconds, inode number and mode.
+ * If none of these have changed since a file was staged, its content is assumed
+ * unchanged and is not read again.
+ */
+public final class FileStat {
+
+    /** Mode of a regular file. */
+    public static final int MODE_FILE = 0100644;
+
+    /** Mode of an executable file. */
+    public static final int MODE_EXECUTABLE = 0100755;
+
+    private final long size;
+    private final long mtimeNanos;
+    private final long ctimeNanos;
+    private final long inode;
+    private final int mode;
+
+    public FileStat(long size, long mtimeNanos, long ctimeNanos, long inode, int mode) {
+        this.size = size;
+        this.mtimeNanos = mtimeNanos;
+        this.ctimeNanos = ctimeNanos;
+        this.inode = inode;
+        this.mode = mode;
+    }
+
+    /**
+     * Reads the metadata of a file. On platforms without the `unix` attribute view,
+     * the change time and inode are recorded as 0 and only compared as such.
+     *
+     * @param path The file.
+     * @return Its current metadata.
+     * @throws IOException If the file cannot be examined.
+     */
+    public static FileStat read(Path path) throws IOException {
+        try {
+            Map<String, Object> attrs = Files.readAttributes(path, "unix:size,lastModifiedTime,ctime,ino,mode",
+                    LinkOption.NOFOLLOW_LINKS);
+            int unixMode = (Integer) attrs.get("mode");
+            return new FileStat(
+                    (Long) attrs.get("size"),
+                    toNanos((FileTime) attrs.get("lastModifiedTime")),
+                    toNanos((FileTime) attrs.get("ctime")),
+                    (Long) attrs.get("ino"),
+                    (unixMode & 0100) != 0 ? MODE_EXECUTABLE : MODE_FILE);
+        } catch (UnsupportedOperationException e) {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return new FileStat(attrs.size(), toNanos(attrs.lastModifiedTime()), 0, 0,
+                    Files.isExecutable(path) ? MODE_EXECUTABLE : MODE_FILE);
+        }
+    }
+
+    /**
+     * @return The file size in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return The last modification time, in nanoseconds since the epoch.
+     */
+    public long getMtimeNanos() {
+        return mtimeNanos;
+    }
+
+    /**
+     * @return The last status change time, in nanoseconds since the epoch, or 0 if unknown.
+     */
+    public long getCtimeNanos() {
+        return ctimeNanos;
+    }
+
+    /**
+     * @return The inode number, or 0 if unknown.
+     */
+    public long getInode() {
+        return inode;
+    }
+
+    /**
+     * @return {@link #MODE_FILE} or {@link #MODE_EXECUTABLE}.
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FileStat)) {
+            return false;
+        }
+        FileStat other = (FileStat) obj;
+        return size == other.size && mtimeNanos == other.mtimeNanos && ctimeNanos == other.ctimeNanos
+                && inode == other.inode && mode == other.mode;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(mtimeNanos) * 31 + Long.hashCode(size);
+    }
+
+    // Convert a file time to nanoseconds since the epoch
+    private static long toNanos(FileTime time) {
+        Instant instant = time.toInstant();
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+}
@@ -0,0 +1,385 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * The `FileSystemMonitor` class is an optional background process that watches the
+ * working tree with a {@link WatchService} and records every changed path, so that
+ * `add .` and `status` only need to look at paths that changed instead of the whole tree.
+ *
+ * The monitor appends to `.mygit/fsmonitor.log`: a `session <uuid>` line, then one
+ * `<sequence>\t<path>` line per change (a path of `*` means events were lost). A token
+ * `<uuid>:<sequence>` names a point in that log. Commands remember the token they last
+ * synchronised at in the {@link #INDEX_EXTENSION} index extension and ask for the paths
+ * changed since. The answer is "rescan everything" whenever that cannot be answered
+ * exactly: no monitor running, a new session, a lost-events marker, or a missing log.
+ *
+ * The monitor holds an exclusive lock on `.mygit/fsmonitor.lock` for as long as it runs,
+ * which is how commands tell a live monitor from a stale log.
+ */
+public class FileSystemMonitor {
+
+    /** Index extension holding the token the index was last synchronised at. */
+    public static final String INDEX_EXTENSION = "FSMN";
+
+    private static final String LOG_FILE = Constants.GIT_DIR + "/fsmonitor.log";
+    private static final String LOCK_FILE = Constants.GIT_DIR + "/fsmonitor.lock";
+    private static final String STOP_FILE = Constants.GIT_DIR + "/fsmonitor.stop";
+    private static final String OUTPUT_FILE = Constants.GIT_DIR + "/fsmonitor.out";
+
+    // Marker for "events were lost, rescan everything"
+    private static final String EVENTS_LOST = "*";
+
+    // Start a new session once the log grows beyond this, invalidating older tokens
+    private static final long MAX_LOG_SIZE = 16L * 1024 * 1024;
+
+    // How often the monitor checks for a stop request
+    private static final long POLL_MILLIS = 500;
+
+    private final Path root = Paths.get(".").toAbsolutePath().normalize();
+    private final Path gitDir = root.resolve(Constants.GIT_DIR);
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private WatchService watcher;
+    private Writer log;
+    private long logSize;
+    private long sequence;
+
+    /**
+     * The answer to "what changed since this token?".
+     */
+    public static class Changes {
+        private final String token;
+        private final Set<String> paths;
+
+        Changes(String token, Set<String> paths) {
+            this.token = token;
+            this.paths = paths;
+        }
+
+        /**
+         * @return The current token, to store once the changes have been processed,
+         *         or null if no monitor is running.
+         */
+        public String getToken() {
+            return token;
+        }
+
+        /**
+         * @return The changed paths relative to the working tree root, or null if every
+         *         path must be examined.
+         */
+        public Set<String> getPaths() {
+            return paths;
+        }
+
+        /**
+         * @param name A file name as staged, with or without a leading `./`.
+         * @return {@code false} only if the file, and every directory above it, is known
+         *         not to have changed.
+         */
+        public boolean mayHaveChanged(String name) {
+            if (paths == null) {
+                return true;
+            }
+            String relative = name.startsWith("./") ? name.substring(2) : name;
+            for (int slash = relative.indexOf('/'); slash >= 0; slash = relative.indexOf('/', slash + 1)) {
+                if (paths.contains(relative.substring(0, slash))) {
+                    return true;
+                }
+            }
+            return paths.contains(relative);
+        }
+    }
+
+    /**
+     * Reads the paths changed since a token from the monitor's log.
+     *
+     * @param sinceToken The token the caller last synchronised at, or null.
+     * @return The current token and the changed paths; the paths are null when the
+     *         caller has to fall back to a full scan.
+     */
+    public static Changes query(String sinceToken) {
+        try {
+            if (!isRunning()) {
+                return new Changes(null, null);
+            }
+            Path logPath = Paths.get(LOG_FILE);
+            if (!Files.exists(logPath)) {
+                return new Changes(null, null);
+            }
+
+            byte[] content = Files.readAllBytes(logPath);
+            int complete = content.length;
+            while (complete > 0 && content[complete - 1] != '\n') {
+                complete--; // Ignore a line the monitor is still writing
+            }
+            String[] lines = new String(content, 0, complete, StandardCharsets.UTF_8).split("\n");
+            if (lines.length == 0 || !lines[0].startsWith("session ")) {
+                return new Changes(null, null);
+            }
+            String session = lines[0].substring("session ".length());
+
+            long sinceSequence = -1;
+            if (sinceToken != null && sinceToken.startsWith(session + ":")) {
+                sinceSequence = Long.parseLong(sinceToken.substring(session.length() + 1));
+            }
+
+            Set<String> paths = new LinkedHashSet<>();
+            long lastSequence = 0;
+            for (int i = 1; i < lines.length; i++) {
+                int tab = lines[i].indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                long lineSequence = Long.parseLong(lines[i].substring(0, tab));
+                String path = lines[i].substring(tab + 1);
+                lastSequence = lineSequence;
+                if (lineSequence > sinceSequence) {
+                    if (path.equals(EVENTS_LOST)) {
+                        sinceSequence = -1; // Events were lost after the token
+                    }
+                    paths.add(path);
+                }
+            }
+            String token = session + ":" + lastSequence;
+            if (sinceSequence < 0 || sinceSequence > lastSequence) {
+                return new Changes(token, null); // Unknown, stale or future token
+            }
+            return new Changes(token, paths);
+        } catch (IOException | NumberFormatException e) {
+            return new Changes(null, null);
+        }
+    }
+
+    /**
+     * @return {@code true} if a monitor process currently holds the lock for this repository.
+     */
+    public static boolean isRunning() {
+        Path lockPath = Paths.get(LOCK_FILE);
+        if (!Files.exists(lockPath)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true; // Held by this very process
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts a monitor for the repository in the current directory as a background process.
+     */
+    public static void start() {
+        if (!Files.isDirectory(Paths.get(Constants.GIT_DIR))) {
+            Output.error("Error: Not a MyGit repository.");
+            return;
+        }
+        if (isRunning()) {
+            Output.println("The filesystem monitor is already running.");
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(Paths.get(STOP_FILE));
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "MyGit", "fsmonitor", "run")
+                    .redirectErrorStream(true)
+                    .redirectOutput(new File(OUTPUT_FILE))
+                    .start();
+
+            // Wait until the monitor has registered its watches and opened a session
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (System.nanoTime() < deadline) {
+                if (isRunning() && query(null).getToken() != null) {
+                    Output.println("Filesystem monitor started.");
+                    return;
+                }
+                Thread.sleep(50);
+            }
+            Output.error("Error: The filesystem monitor did not start; see " + OUTPUT_FILE);
+        } catch (IOException e) {
+            Output.error("Error starting the filesystem monitor: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Asks a running monitor to exit.
+     */
+    public static void stop() {
+        if (!isRunning()) {
+            Output.println("The filesystem monitor is not running.");
+            return;
+        }
+        try {
+            Files.write(Paths.get(STOP_FILE), new byte[0]);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (isRunning() && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            if (isRunning()) {
+                Output.error("Error: The filesystem monitor did not stop.");
+            } else {
+                Output.println("Filesystem monitor stopped.");
+            }
+        } catch (IOException e) {
+            Output.error("Error stopping the filesystem monitor: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reports whether a monitor is running.
+     */
+    public static void showStatus() {
+        Changes changes = query(null);
+        if (changes.getToken() != null) {
+            Output.println("Filesystem monitor is running (token " + changes.getToken() + ").");
+        } else {
+            Output.println("Filesystem monitor is not running.");
+        }
+    }
+
+    /**
+     * Runs the monitor in the current process until a stop is requested.
+     */
+    public static void run() {
+        new FileSystemMonitor().serve();
+    }
+
+    // Hold the lock, watch the tree and log changes until asked to stop
+    private void serve() {
+        Path lockPath = gitDir.resolve("fsmonitor.lock");
+        try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) {
+                Output.error("Error: Another filesystem monitor is already running.");
+                return;
+            }
+
+            try (WatchService service = root.getFileSystem().newWatchService()) {
+                watcher = service;
+                registerTree(root, false);
+                startSession();
+                Output.println("Watching " + watchedDirs.size() + " directories.");
+                Output.flush(); // This process runs until stopped, so do not hold the line back
+
+                Path stopPath = gitDir.resolve("fsmonitor.stop");
+                while (!Files.exists(stopPath)) {
+                    WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        handleEvents(key);
+                    }
+                }
+                Files.deleteIfExists(stopPath);
+            } finally {
+                if (log != null) {
+                    log.close();
+                }
+                Files.deleteIfExists(gitDir.resolve("fsmonitor.log"));
+            }
+        } catch (IOException e) {
+            Output.println("Filesystem monitor failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Log the events of one watch key
+    private void handleEvents(WatchKey key) throws IOException {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || dir == null) {
+                record(EVENTS_LOST);
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (child.startsWith(gitDir)) {
+                continue;
+            }
+            record(relativize(child));
+
+            // A new directory has to be watched, and whatever it already holds is changed
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                registerTree(child, true);
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+        log.flush();
+    }
+
+    // Watch a directory and all directories below it, except the repository directory
+    private void registerTree(Path start, boolean recordFiles) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(gitDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watchedDirs.put(dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (recordFiles) {
+                    record(relativize(file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE; // Removed while being walked
+            }
+        });
+    }
+
+    // Truncate the log and begin a new session, invalidating every earlier token
+    private void startSession() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+        Path logPath = gitDir.resolve("fsmonitor.log");
+        log = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(logPath), StandardCharsets.UTF_8));
+        String header = "session " + UUID.randomUUID() + "\n";
+        log.write(header);
+        log.flush();
+        logSize = header.length();
+        sequence = 0;
+    }
+
+    // Append one changed path to the log
+    private void record(String path) throws IOException {
+        if (logSize > MAX_LOG_SIZE) {
+            startSession();
+        }
+        String line = ++sequence + "\t" + path + "\n";
+        log.write(line);
+        logSize += line.length();
+    }
+
+    // Path relative to the working tree root, with `/` separators
+    private String relativize(Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+}
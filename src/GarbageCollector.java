@@ -0,0 +1,488 @@
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The `GarbageCollector` class implements the `gc` and `repack` commands.
+ * `gc` walks everything reachable from the branches, HEAD and the staging area,
+ * writes those objects into one new pack, and deletes objects that are no longer
+ * reachable once they are older than a grace period. Unreachable objects of the old
+ * packs that are still within the grace period are written out as loose objects
+ * carrying the pack's modification time, so a later run prunes them when it expires.
+ * A commit or tree missing from the walk aborts the run, since pruning from an
+ * incomplete walk would delete reachable objects.
+ * `repack` consolidates every stored object into one pack without deleting anything.
+ *
+ * Both write reachability bitmaps next to the new pack (see {@link PackBitmap}), so
+ * the next run finds the reachable objects with bitmap operations and only walks the
+ * commits made since.
+ */
+public class GarbageCollector {
+
+    /** Unreachable objects younger than this many days are kept, in case a command is still using them. */
+    private static final int DEFAULT_PRUNE_DAYS = 14;
+
+    /**
+     * Runs garbage collection.
+     *
+     * @param pruneDays Grace period in days for unreachable objects; 0 prunes them all.
+     */
+    public static void gc(int pruneDays) {
+        run(true, pruneDays);
+    }
+
+    /**
+     * Runs garbage collection with the default grace period.
+     */
+    public static void gc() {
+        gc(DEFAULT_PRUNE_DAYS);
+    }
+
+    /**
+     * Packs every stored object, reachable or not, into a single pack.
+     */
+    public static void repack() {
+        run(false, 0);
+    }
+
+    /**
+     * Parses the argument of `gc --prune=<days>`, where `now` means zero days.
+     *
+     * @param option The option, e.g. `--prune=7`.
+     * @return The grace period in days, or -1 if the option is not valid.
+     */
+    public static int parsePruneOption(String option) {
+        if (!option.startsWith("--prune=")) {
+            return -1;
+        }
+        String value = option.substring("--prune=".length());
+        if (value.equals("now")) {
+            return 0;
+        }
+        try {
+            int days = Integer.parseInt(value);
+            return days >= 0 ? days : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Shared implementation of gc (prune = true) and repack (prune = false)
+    private static void run(boolean prune, int pruneDays) {
+        if (!Files.isDirectory(Paths.get(Constants.OBJECTS_DIR))) {
+            Output.error("Error: Not a MyGit repository.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            long sizeBefore = objectStoreSize();
+
+            Map<ObjectId, ReachableObject> reachable = collectReachable();
+            List<ObjectId> loose = listLooseObjects();
+            List<Path> oldPacks = listPacks();
+            // Sizes taken now, since a new pack with the same content replaces the old files in place
+            Map<Path, Long> oldPackSizes = new HashMap<>();
+            for (Path oldPack : oldPacks) {
+                oldPackSizes.put(oldPack, fileSize(oldPack) + fileSize(PackFile.indexPathFor(oldPack))
+                        + fileSize(PackBitmap.pathFor(oldPack)));
+            }
+
+            PackWriter writer = new PackWriter();
+            for (ReachableObject object : reachable.values()) {
+                writer.addObject(object.hash, object.type, object.nameHash);
+            }
+            long graceCutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(pruneDays);
+            long written = 0;
+            int prunedPacked = 0;
+            int loosened = 0;
+            if (prune) {
+                // Unreachable objects of the old packs disappear with them once the pack is older than
+                // the grace period; younger ones are written out loose, keeping the pack's age
+                for (PackFile pack : ObjectStore.getPacks()) {
+                    FileTime packModified = Files.getLastModifiedTime(pack.getPackPath());
+                    boolean expired = packModified.toMillis() < graceCutoff;
+                    PackIndex index = pack.getIndex();
+                    for (int i = 0; i < index.getObjectCount(); i++) {
+                        ObjectId id = index.getId(i);
+                        if (reachable.containsKey(id)) {
+                            continue;
+                        }
+                        if (expired) {
+                            prunedPacked++;
+                            continue;
+                        }
+                        GitObject object;
+                        try (ObjectStream stream = pack.openObject(id)) {
+                            object = stream.load();
+                        }
+                        written += ObjectStore.writeLooseObject(id, object.getType(), object.getData(), packModified);
+                        loosened++;
+                    }
+                }
+            } else {
+                // repack keeps everything, so unreachable objects go into the pack too
+                for (ObjectId hash : loose) {
+                    writer.addObject(hash, GitObject.BLOB);
+                }
+                for (PackFile pack : ObjectStore.getPacks()) {
+                    PackIndex index = pack.getIndex();
+                    for (int i = 0; i < index.getObjectCount(); i++) {
+                        writer.addObject(index.getId(i), GitObject.BLOB);
+                    }
+                }
+            }
+
+            Path newPack = null;
+            if (writer.getObjectCount() > 0) {
+                newPack = writer.write();
+                Output.println("Packed " + writer.getObjectCount() + " object(s) into " + newPack.getFileName());
+                PackFile pack = PackFile.open(newPack);
+                try {
+                    int bitmaps = PackBitmap.write(pack, GitUtils.listTips(), writer);
+                    Output.println("Wrote " + bitmaps + " reachability bitmap(s).");
+                } finally {
+                    pack.close();
+                }
+                written += fileSize(newPack) + fileSize(PackFile.indexPathFor(newPack))
+                        + fileSize(PackBitmap.pathFor(newPack));
+            }
+
+            // Loose copies of packed objects are now redundant
+            long freed = 0;
+            int prunedLoose = 0;
+            for (ObjectId hash : loose) {
+                Path objectPath = ObjectStore.objectPath(hash);
+                boolean packed = newPack != null && (!prune || reachable.containsKey(hash));
+                if (packed) {
+                    freed += delete(objectPath);
+                } else if (prune && !reachable.containsKey(hash) && isOlderThan(objectPath, graceCutoff)) {
+                    freed += delete(objectPath);
+                    prunedLoose++;
+                }
+            }
+
+            for (Path oldPack : oldPacks) {
+                if (oldPack.equals(newPack)) {
+                    freed += oldPackSizes.get(oldPack);
+                } else {
+                    freed += delete(PackBitmap.pathFor(oldPack));
+                    freed += delete(PackFile.indexPathFor(oldPack));
+                    freed += delete(oldPack);
+                }
+            }
+            freed += removeStaleTemporaryFiles(graceCutoff);
+            removeEmptyFanOutDirectories();
+
+            // Rewrite the commit graph so it also covers the commits made since the last one
+            Path graphPath = Paths.get(Constants.COMMIT_GRAPH_FILE);
+            freed += fileSize(graphPath);
+            int graphCommits = CommitGraph.write(GitUtils.listTips());
+            written += fileSize(graphPath);
+            Output.println("Wrote commit-graph with " + graphCommits + " commit(s).");
+
+            if (prune) {
+                Output.println("Pruned " + prunedLoose + " unreachable loose object(s) and "
+                        + prunedPacked + " unreachable packed object(s).");
+                if (loosened > 0) {
+                    Output.println("Kept " + loosened + " unreachable packed object(s) younger than "
+                            + pruneDays + " day(s) as loose objects.");
+                }
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Output.println("Freed " + freed + " bytes and wrote " + written + " bytes (object store "
+                    + sizeBefore + " -> " + objectStoreSize() + " bytes) in " + elapsedMillis + " ms.");
+        } catch (IOException e) {
+            Output.error("Error during " + (prune ? "gc" : "repack") + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * An object found while walking the history, with the type it was reached as
+     * and the hash of the path it was reached through (used to group delta candidates).
+     */
+    static class ReachableObject {
+        final ObjectId hash;
+        final String type;
+        final int nameHash;
+
+        ReachableObject(ObjectId hash, String type, String path) {
+            this(hash, type, PackWriter.nameHash(path));
+        }
+
+        ReachableObject(ObjectId hash, String type, int nameHash) {
+            this.hash = hash;
+            this.type = type;
+            this.nameHash = nameHash;
+        }
+    }
+
+    /**
+     * Finds all commits, trees and blobs reachable from the branches, a detached HEAD
+     * and the staging area.
+     *
+     * @return The reachable objects keyed by hash, in discovery order.
+     * @throws IOException If an I/O error occurs while reading refs or objects.
+     */
+    static Map<ObjectId, ReachableObject> collectReachable() throws IOException {
+        Map<ObjectId, ReachableObject> reachable = collectReachable(GitUtils.listTips());
+
+        // Blobs that are staged but not yet committed must survive too
+        for (IndexEntry entry : Index.read().getEntries()) {
+            reachable.putIfAbsent(entry.getId(), new ReachableObject(entry.getId(), GitObject.BLOB, entry.getName()));
+        }
+        return reachable;
+    }
+
+    /**
+     * Finds all commits, trees and blobs reachable from some commits, using the
+     * bitmaps of a pack when there are any and walking the history otherwise.
+     *
+     * @param tips The commits to start from.
+     * @return The reachable objects keyed by hash.
+     * @throws IOException If an I/O error occurs while reading objects.
+     */
+    static Map<ObjectId, ReachableObject> collectReachable(Collection<ObjectId> tips) throws IOException {
+        PackBitmap bitmap = findBitmap();
+        if (bitmap == null) {
+            return walkReachable(tips);
+        }
+
+        Map<ObjectId, ReachableObject> outside = new LinkedHashMap<>();
+        EwahBitmap packed = bitmap.findReachable(tips, outside);
+        Map<ObjectId, ReachableObject> reachable = new LinkedHashMap<>();
+        for (String type : new String[] {GitObject.COMMIT, GitObject.TREE, GitObject.BLOB}) {
+            packed.and(bitmap.getTypeBitmap(type)).forEachSetBit(position -> {
+                ObjectId id = bitmap.getIndex().getId(position);
+                reachable.put(id, new ReachableObject(id, type, bitmap.getNameHash(position)));
+            });
+        }
+        outside.forEach(reachable::putIfAbsent);
+        return reachable;
+    }
+
+    /**
+     * Prints how many objects are reachable from some commits but not from others,
+     * for the `count-objects` command. With bitmaps this is an OR of the bitmaps of
+     * each side followed by an AND-NOT.
+     *
+     * @param revisions Branch names or commit ids; those starting with `^` are excluded.
+     *                  With no revision, the branches and HEAD are counted.
+     */
+    public static void countObjects(List<String> revisions) {
+        try {
+            List<ObjectId> include = new ArrayList<>();
+            List<ObjectId> exclude = new ArrayList<>();
+            for (String revision : revisions) {
+                boolean excluded = revision.startsWith("^");
+                String name = excluded ? revision.substring(1) : revision;
+                ObjectId commit = GitUtils.resolveCommit(name);
+                if (commit == null) {
+                    Output.error("Error: Not a valid commit: " + name);
+                    return;
+                }
+                (excluded ? exclude : include).add(commit);
+            }
+            if (include.isEmpty()) {
+                include = GitUtils.listTips();
+            }
+
+            long start = System.nanoTime();
+            Map<String, Integer> counts = new HashMap<>();
+            PackBitmap bitmap = findBitmap();
+            if (bitmap != null) {
+                Map<ObjectId, ReachableObject> includedOutside = new HashMap<>();
+                Map<ObjectId, ReachableObject> excludedOutside = new HashMap<>();
+                EwahBitmap packed = bitmap.findReachable(include, includedOutside)
+                        .andNot(bitmap.findReachable(exclude, excludedOutside));
+                for (String type : new String[] {GitObject.COMMIT, GitObject.TREE, GitObject.BLOB}) {
+                    counts.put(type, packed.and(bitmap.getTypeBitmap(type)).cardinality());
+                }
+                includedOutside.keySet().removeAll(excludedOutside.keySet());
+                includedOutside.values().forEach(object -> counts.merge(object.type, 1, Integer::sum));
+            } else {
+                Map<ObjectId, ReachableObject> included = walkReachable(include);
+                included.keySet().removeAll(walkReachable(exclude).keySet());
+                included.values().forEach(object -> counts.merge(object.type, 1, Integer::sum));
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            int commits = counts.getOrDefault(GitObject.COMMIT, 0);
+            int trees = counts.getOrDefault(GitObject.TREE, 0);
+            int blobs = counts.getOrDefault(GitObject.BLOB, 0);
+            String method = bitmap != null ? "bitmaps" : "walk";
+            Output.record("objects", (commits + trees + blobs) + " reachable object(s): " + commits + " commit(s), "
+                    + trees + " tree(s), " + blobs + " blob(s) (" + method + ", " + elapsedMillis + " ms)",
+                    "count", commits + trees + blobs, "commits", commits, "trees", trees, "blobs", blobs,
+                    "method", method, "millis", elapsedMillis);
+        } catch (IOException e) {
+            Output.error("Error counting objects: " + e.getMessage());
+        }
+    }
+
+    // The bitmaps of the first pack that has any
+    private static PackBitmap findBitmap() throws IOException {
+        for (PackFile pack : ObjectStore.getPacks()) {
+            PackBitmap bitmap = pack.getBitmap();
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    // Walk every commit, tree and blob reachable from some commits
+    private static Map<ObjectId, ReachableObject> walkReachable(Collection<ObjectId> tips) throws IOException {
+        Map<ObjectId, ReachableObject> reachable = new LinkedHashMap<>();
+        Deque<ObjectId> commits = new ArrayDeque<>(tips);
+
+        while (!commits.isEmpty()) {
+            ObjectId commitHash = commits.poll();
+            if (reachable.containsKey(commitHash)) {
+                continue;
+            }
+            // Parents and root trees come from the commit graph when it covers the commit
+            ObjectId tree = ObjectDatabase.readCommitTree(commitHash);
+            if (tree == null && !ObjectStore.exists(commitHash)) {
+                // Pruning from an incomplete walk could delete reachable objects
+                throw new IOException("Missing commit " + commitHash + "; refusing to continue");
+            }
+            reachable.put(commitHash, new ReachableObject(commitHash, GitObject.COMMIT, ""));
+
+            // Merge commits written without a tree line still have parents to follow
+            if (tree != null) {
+                markTree(tree, "", reachable);
+            }
+            commits.addAll(ObjectDatabase.readParents(commitHash));
+        }
+        return reachable;
+    }
+
+    // Mark a tree, its subtrees and every blob they list as reachable; a tree already marked is not read again
+    private static void markTree(ObjectId treeHash, String prefix, Map<ObjectId, ReachableObject> reachable)
+            throws IOException {
+        if (reachable.containsKey(treeHash)) {
+            return;
+        }
+        TreeObject tree = ObjectDatabase.readTree(treeHash);
+        if (tree == null) {
+            throw new IOException("Missing tree " + treeHash + "; refusing to continue");
+        }
+        reachable.put(treeHash, new ReachableObject(treeHash, GitObject.TREE, prefix));
+
+        for (TreeObject.Entry entry : tree.getEntryList()) {
+            if (entry.isTree()) {
+                markTree(entry.getId(), prefix + entry.getName() + "/", reachable);
+            } else {
+                reachable.putIfAbsent(entry.getId(),
+                        new ReachableObject(entry.getId(), GitObject.BLOB, prefix + entry.getName()));
+            }
+        }
+    }
+
+    // List the hashes of all loose objects in the fan-out directories
+    static List<ObjectId> listLooseObjects() throws IOException {
+        List<ObjectId> hashes = new ArrayList<>();
+        try (DirectoryStream<Path> fanOutDirs = Files.newDirectoryStream(Paths.get(Constants.OBJECTS_DIR))) {
+            for (Path fanOutDir : fanOutDirs) {
+                String prefix = fanOutDir.getFileName().toString();
+                if (prefix.length() != 2 || !Files.isDirectory(fanOutDir)) {
+                    continue; // Skip the pack directory and anything else that is not a fan-out directory
+                }
+                try (DirectoryStream<Path> objects = Files.newDirectoryStream(fanOutDir)) {
+                    for (Path object : objects) {
+                        String name = prefix + object.getFileName().toString();
+                        if (ObjectId.isId(name)) { // Skips temporary files and legacy non-hash names
+                            hashes.add(ObjectId.fromString(name));
+                        }
+                    }
+                }
+            }
+        }
+        return hashes;
+    }
+
+    // List the existing pack files
+    private static List<Path> listPacks() throws IOException {
+        List<Path> packs = new ArrayList<>();
+        Path packDir = Paths.get(PackWriter.PACK_DIR);
+        if (Files.isDirectory(packDir)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(packDir, "pack-*.pack")) {
+                entries.forEach(packs::add);
+            }
+        }
+        return packs;
+    }
+
+    // Remove leftovers of interrupted writes that are older than the grace period
+    private static long removeStaleTemporaryFiles(long cutoffMillis) throws IOException {
+        long freed = 0;
+        Path objectsDir = Paths.get(Constants.OBJECTS_DIR);
+        List<Path> dirs = new ArrayList<>();
+        dirs.add(objectsDir);
+        try (DirectoryStream<Path> subdirs = Files.newDirectoryStream(objectsDir, Files::isDirectory)) {
+            subdirs.forEach(dirs::add);
+        }
+
+        for (Path dir : dirs) {
+            try (DirectoryStream<Path> temps = Files.newDirectoryStream(dir, "tmp_*")) {
+                for (Path temp : temps) {
+                    if (Files.isRegularFile(temp) && isOlderThan(temp, cutoffMillis)) {
+                        freed += delete(temp);
+                    }
+                }
+            }
+        }
+        return freed;
+    }
+
+    // Delete a file if it exists; returns the number of bytes freed
+    private static long delete(Path path) throws IOException {
+        long size = fileSize(path);
+        return Files.deleteIfExists(path) ? size : 0;
+    }
+
+    // The size of a file, or 0 if it does not exist
+    private static long fileSize(Path path) throws IOException {
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    // Remove fan-out directories that no longer hold any objects
+    private static void removeEmptyFanOutDirectories() throws IOException {
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(Paths.get(Constants.OBJECTS_DIR))) {
+            for (Path dir : dirs) {
+                if (dir.getFileName().toString().length() != 2 || !Files.isDirectory(dir)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                    if (entries.iterator().hasNext()) {
+                        continue;
+                    }
+                }
+                Files.deleteIfExists(dir);
+            }
+        }
+    }
+
+    // Check whether a file was last modified before the cutoff
+    private static boolean isOlderThan(Path path, long cutoffMillis) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(path);
+        return modified.toMillis() <= cutoffMillis;
+    }
+
+    // Total size in bytes of everything under .mygit/objects
+    private static long objectStoreSize() throws IOException {
+        long[] total = {0};
+        Files.walkFileTree(Paths.get(Constants.OBJECTS_DIR), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                total[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return total[0];
+    }
+}
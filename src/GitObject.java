@@ -0,0 +1,79 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The `GitObject` class holds a fully loaded object from the object store:
+ * its type (`blob`, `tree` or `commit`) and its uncompressed content.
+ */
+public class GitObject {
+
+    // Object type names, as written in the object header
+    public static final String BLOB = "blob";
+    public static final String TREE = "tree";
+    public static final String COMMIT = "commit";
+
+    private final String type;
+    private final byte[] data;
+
+    /**
+     * Creates a loaded object.
+     *
+     * @param type The object type, or null for objects written before typed storage existed.
+     * @param data The uncompressed object content.
+     */
+    public GitObject(String type, byte[] data) {
+        this.type = type;
+        this.data = data;
+    }
+
+    /**
+     * @return The object type, or null for untyped legacy objects.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return The uncompressed object content.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return The object content decoded as UTF-8 text.
+     */
+    public String getText() {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Splits the object content into lines, the same way {@code Files.readAllLines} does.
+     *
+     * @return The lines of the object content.
+     */
+    public List<String> getLines() {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(getText()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen when reading from a String
+        }
+        return lines;
+    }
+
+    /**
+     * Builds the `<type> <size>\0` header that precedes the content of every stored object.
+     *
+     * @param type The object type.
+     * @param size The content size in bytes.
+     * @return The encoded header.
+     */
+    public static byte[] header(String type, long size) {
+        return (type + " " + size + "\0").getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,13 +1,13 @@
 import java.io.*;
 import java.nio.file.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.*;
 
 public class GitUtils {
 
-    // Get the current commit hash from HEAD
-    public static String getCurrentCommitHash() throws IOException {
+    // Get the current commit id from HEAD, or null if the current branch has no commits yet
+    public static ObjectId getCurrentCommitHash() throws IOException {
         Path headPath = Paths.get(Constants.HEAD_FILE);
         if (!Files.exists(headPath)) {
             return null;
@@ -15,16 +15,121 @@ public class GitUtils {
 
         String headContent = new String(Files.readAllBytes(headPath)).trim();
         if (headContent.startsWith("ref:")) {
-            Path branchPath = Paths.get(Constants.GIT_DIR, headContent.substring(5));
-            if (Files.exists(branchPath)) {
-                return new String(Files.readAllBytes(branchPath)).trim();
+            return readRef(Paths.get(Constants.GIT_DIR, headContent.substring(5)));
+        }
+        return parseId(headContent, headPath);
+    }
+
+    // Read the commit id a ref file points to, or null if the ref is missing or empty
+    public static ObjectId readRef(Path refPath) throws IOException {
+        if (!Files.exists(refPath)) {
+            return null;
+        }
+        return parseId(new String(Files.readAllBytes(refPath)).trim(), refPath);
+    }
+
+    // Parse the content of a ref, treating an empty ref as "no commit"
+    private static ObjectId parseId(String content, Path source) throws IOException {
+        if (content.isEmpty()) {
+            return null;
+        }
+        if (!ObjectId.isId(content)) {
+            throw new IOException("Invalid object id in " + source + ": " + content);
+        }
+        return ObjectId.fromString(content);
+    }
+
+    // Resolve a branch name, HEAD or a full commit id to a commit, or null if it names none
+    public static ObjectId resolveCommit(String name) throws IOException {
+        if (name.equals("HEAD")) {
+            return getCurrentCommitHash();
+        }
+        Path branchPath = Paths.get(Constants.REFS_DIR, name);
+        if (Files.isRegularFile(branchPath)) {
+            return readRef(branchPath);
+        }
+        if (ObjectId.isId(name)) {
+            ObjectId id = ObjectId.fromString(name);
+            return ObjectDatabase.readCommit(id) != null ? id : null;
+        }
+        return null;
+    }
+
+    // Get the commits the branches and a detached HEAD point to, without duplicates
+    public static List<ObjectId> listTips() throws IOException {
+        Set<ObjectId> tips = new LinkedHashSet<>();
+        Path refsDir = Paths.get(Constants.REFS_DIR);
+        if (Files.isDirectory(refsDir)) {
+            try (DirectoryStream<Path> refs = Files.newDirectoryStream(refsDir)) {
+                for (Path ref : refs) {
+                    ObjectId tip = Files.isRegularFile(ref) ? readRef(ref) : null;
+                    if (tip != null) {
+                        tips.add(tip);
+                    }
+                }
             }
-        } else {
-            return headContent;
+        }
+        ObjectId head = getCurrentCommitHash();
+        if (head != null) {
+            tips.add(head);
+        }
+        return new ArrayList<>(tips);
+    }
+
+    // Get the root tree of the commit HEAD points to, or null if there is no commit or it has no tree
+    public static ObjectId getHeadTreeId() throws IOException {
+        ObjectId commitId = getCurrentCommitHash();
+        return commitId != null ? ObjectDatabase.readCommitTree(commitId) : null;
+    }
+
+    // Get the files of the commit HEAD points to, or an empty map if there is no commit or it has no tree
+    public static Map<String, ObjectId> readHeadTree() throws IOException {
+        ObjectId treeHash = getHeadTreeId();
+        return treeHash != null ? listTreeFiles(treeHash) : Collections.emptyMap();
+    }
+
+    // Get every file below a tree by its path from the tree's root, descending into subtrees
+    public static Map<String, ObjectId> listTreeFiles(ObjectId treeHash) throws IOException {
+        Map<String, ObjectId> files = new LinkedHashMap<>();
+        addTreeFiles(treeHash, "", files);
+        return files;
+    }
+
+    // Get the object a path points to below a tree, or null if the tree does not contain it
+    public static ObjectId lookupPath(ObjectId treeHash, String path) throws IOException {
+        int start = 0;
+        while (treeHash != null) {
+            TreeObject tree = ObjectDatabase.readTree(treeHash);
+            if (tree == null) {
+                throw new IOException("Tree object not found: " + treeHash);
+            }
+            // Legacy flat trees name files by their whole path
+            ObjectId whole = tree.get(path.substring(start));
+            int slash = path.indexOf('/', start);
+            if (whole != null || slash < 0) {
+                return whole;
+            }
+            TreeObject.Entry directory = tree.getEntry(path.substring(start, slash));
+            treeHash = directory != null && directory.isTree() ? directory.getId() : null;
+            start = slash + 1;
         }
         return null;
     }
 
+    private static void addTreeFiles(ObjectId treeHash, String prefix, Map<String, ObjectId> files) throws IOException {
+        TreeObject tree = ObjectDatabase.readTree(treeHash);
+        if (tree == null) {
+            throw new IOException("Tree object not found: " + treeHash);
+        }
+        for (TreeObject.Entry entry : tree.getEntryList()) {
+            if (entry.isTree()) {
+                addTreeFiles(entry.getId(), prefix + entry.getName() + "/", files);
+            } else {
+                files.put(prefix + entry.getName(), entry.getId());
+            }
+        }
+    }
+
     // Get the current branch name from HEAD
     public static String getCurrentBranchName() throws IOException {
         Path headPath = Paths.get(Constants.HEAD_FILE);
@@ -40,17 +145,6 @@ public class GitUtils {
         }
     }
 
-    // Compute the SHA-1 hash of the given content
-    public static String computeSHA1(String content) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-1");
-        byte[] hashBytes = digest.digest(content.getBytes());
-        StringBuilder sb = new StringBuilder();
-        for (byte b : hashBytes) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
-    }
-
     // Read the content of a file as a String
     public static String readFileContent(Path path) throws IOException {
         return new String(Files.readAllBytes(path)).trim();
@@ -68,14 +162,24 @@ public class GitUtils {
         }
     }
 
+    // Create a temporary file to be renamed into the repository. Files.createTempFile makes it
+    // readable by its owner only, so it gets the rw-r--r-- of the files written directly
+    public static Path createTempFile(Path directory, String prefix, String suffix) throws IOException {
+        Path tempPath = Files.createTempFile(directory, prefix, suffix);
+        if (Files.getFileAttributeView(tempPath, PosixFileAttributeView.class) != null) {
+            Files.setPosixFilePermissions(tempPath, PosixFilePermissions.fromString("rw-r--r--"));
+        }
+        return tempPath;
+    }
+
     // Copy a file to the target destination
     public static void copyFile(Path source, Path target) throws IOException {
         Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
     }
 
     // Get the content of a commit
-    public static String getCommitContent(String commitHash) throws IOException {
-        Path commitPath = Paths.get(Constants.OBJECTS_DIR, commitHash);
-        return Files.exists(commitPath) ? readFileContent(commitPath).trim() : "";
+    public static String getCommitContent(ObjectId commitHash) throws IOException {
+        CommitObject commitObject = ObjectDatabase.readCommit(commitHash);
+        return commitObject != null ? commitObject.getText().trim() : "";
     }
 }
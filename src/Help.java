@@ -2,23 +2,43 @@ public class Help {
 
     // Method to display the help menu with available commands and their descriptions
     public static void showHelp() {
-        System.out.println("\nAvailable commands:");
-        System.out.println("-------------------------------------------------");
-        System.out.println("init             : Initialize a new repository.");
-        System.out.println("add <filename>   : Stage a specific file.");
-        System.out.println("add .            : Stage all files in the directory.");
-        System.out.println("status           : Show the files currently staged.");
-        System.out.println("unstage <file>   : Unstage a specific file.");
-        System.out.println("unstage --all    : Unstage all files.");
-        System.out.println("commit <message> : Commit the staged changes with a message.");
-        System.out.println("log              : Show the commit history.");
-        System.out.println("branch           : List all branches.");
-        System.out.println("branch <name>    : Create a new branch.");
-        System.out.println("checkout <name>  : Switch to a specific branch.");
-        System.out.println("merge <name>     : Merge a branch into the current branch.");
-        System.out.println("current-branch   : Display the current branch.");
-        System.out.println("clone <src> <dst>: Clone a repository from source to destination.");
-        System.out.println("help             : Display this help message.");
-        System.out.println("-------------------------------------------------\n");
+        Output.println("\nAvailable commands:");
+        Output.println("-------------------------------------------------");
+        Output.println("init             : Initialize a new repository.");
+        Output.println("add <filename>   : Stage a specific file, or its deletion if it is gone.");
+        Output.println("add .            : Stage all files in the directory, including deletions.");
+        Output.println("status           : Show staged, unstaged and untracked changes.");
+        Output.println("status --porcelain [-z] [-uno]: One 'XY path' record per file; -z ends records with NUL, -uno skips untracked files.");
+        Output.println("unstage <file>   : Unstage a specific file.");
+        Output.println("unstage --all    : Unstage all files.");
+        Output.println("rm <file>        : Remove a file from the staging area and the working tree.");
+        Output.println("rm --cached <file> : Remove a file from the staging area only.");
+        Output.println("commit <message> : Commit the staged changes with a message.");
+        Output.println("log              : Show the commit history.");
+        Output.println("log -- <path>    : Show the commits that changed a file or directory.");
+        Output.println("log -n <count> [--since=<date>] [--until=<date>] [--author=<regex>]: Show at most <count> matching commits.");
+        Output.println("log --oneline | --format=<fmt>: One line per commit, or placeholders like %h %an %ad %s.");
+        Output.println("branch           : List all branches.");
+        Output.println("branch <name>    : Create a new branch.");
+        Output.println("checkout <name>  : Switch to a specific branch.");
+        Output.println("merge <name>     : Merge a branch into the current branch.");
+        Output.println("merge-base [--all] <a> <b>: Show the best common ancestor(s) of two branches or commits.");
+        Output.println("current-branch   : Display the current branch.");
+        Output.println("clone <src> <dst>: Clone a repository from source to destination.");
+        Output.println("gc               : Pack reachable objects and prune unreachable ones older than 14 days.");
+        Output.println("gc --prune=<d>   : Same, with a grace period of <d> days ('now' prunes immediately).");
+        Output.println("count-objects [<c>...] [^<c>...]: Count objects reachable from commits but not from the ^ ones.");
+        Output.println("repack           : Pack all objects into a single pack without pruning.");
+        Output.println("migrate-objects  : Move objects from the old flat layout into fan-out directories and compress raw ones.");
+        Output.println("commit-graph write: Record the history in a file that speeds up log, merge and gc.");
+        Output.println("fsmonitor start  : Watch the working tree so add . and status only examine changed files.");
+        Output.println("fsmonitor stop   : Stop watching the working tree.");
+        Output.println("fsmonitor status : Show whether the working tree is being watched.");
+        Output.println("daemon start     : Serve commands from a background process; run them with 'java MyGitClient <command>'.");
+        Output.println("daemon stop      : Stop the daemon.");
+        Output.println("daemon status    : Show whether the daemon is running.");
+        Output.println("help             : Display this help message.");
+        Output.println("--porcelain [-z] <command>: Print the output of any command as JSON lines; -z ends them with NUL.");
+        Output.println("-------------------------------------------------\n");
     }
 }
\ No newline at end of file
@@ -0,0 +1,285 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * The `IgnoreMatcher` class decides which paths of the working tree are ignored,
+ * following the `.gitignore` rules:
+ * <ul>
+ *   <li>every directory may hold a `.mygitignore`; its patterns are relative to that
+ *       directory and take precedence over those of its parents, and within one file
+ *       the last matching pattern wins;</li>
+ *   <li>a leading `!` re-includes a path, unless one of its parent directories is ignored;</li>
+ *   <li>a trailing `/` only matches directories;</li>
+ *   <li>a pattern containing a `/` other than a trailing one is matched against the
+ *       path relative to its `.mygitignore`, otherwise against the last path component;</li>
+ *   <li>`*`, `?` and `[...]` match within one path component, `**` across components.</li>
+ * </ul>
+ * Each pattern is compiled once when its file is first needed. Plain names (`build`)
+ * and extensions (`*.class`) are matched with string comparisons; only the remaining
+ * patterns use a precompiled regular expression.
+ */
+public class IgnoreMatcher {
+
+    private final Path root;
+
+    // Rules of each directory's ignore file, keyed by the directory relative to the root ("" for the root)
+    private final Map<String, List<Rule>> rulesByDirectory = new HashMap<>();
+
+    /**
+     * Creates a matcher for a working tree.
+     *
+     * @param root The root of the working tree.
+     */
+    public IgnoreMatcher(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Checks a path whose parent directories are already known not to be ignored,
+     * as during a walk that skips ignored directories.
+     *
+     * @param relativePath The path relative to the root, with `/` separators.
+     * @param directory    Whether the path is a directory.
+     * @return {@code true} if the path is ignored.
+     * @throws IOException If an ignore file cannot be read.
+     */
+    public boolean isIgnored(String relativePath, boolean directory) throws IOException {
+        int slash = relativePath.lastIndexOf('/');
+        String name = relativePath.substring(slash + 1);
+
+        // Deepest ignore file first; the first one with a matching rule decides
+        String dir = slash < 0 ? "" : relativePath.substring(0, slash);
+        while (true) {
+            List<Rule> rules = rulesFor(dir);
+            String pathInDir = dir.isEmpty() ? relativePath : relativePath.substring(dir.length() + 1);
+            for (int i = rules.size() - 1; i >= 0; i--) {
+                Rule rule = rules.get(i);
+                if (rule.matches(pathInDir, name, directory)) {
+                    return !rule.negated;
+                }
+            }
+            if (dir.isEmpty()) {
+                return false;
+            }
+            int parent = dir.lastIndexOf('/');
+            dir = parent < 0 ? "" : dir.substring(0, parent);
+        }
+    }
+
+    /**
+     * Checks a path, including whether any of its parent directories is ignored.
+     *
+     * @param relativePath The path relative to the root, with `/` separators.
+     * @param directory    Whether the path is a directory.
+     * @return {@code true} if the path or one of its parent directories is ignored.
+     * @throws IOException If an ignore file cannot be read.
+     */
+    public boolean isPathIgnored(String relativePath, boolean directory) throws IOException {
+        for (int slash = relativePath.indexOf('/'); slash >= 0; slash = relativePath.indexOf('/', slash + 1)) {
+            if (isIgnored(relativePath.substring(0, slash), true)) {
+                return true;
+            }
+        }
+        return isIgnored(relativePath, directory);
+    }
+
+    /**
+     * Converts a path under the root to the form the matcher expects.
+     *
+     * @param path A path under the root.
+     * @return The path relative to the root, with `/` separators and no leading `./`.
+     */
+    public String relativize(Path path) {
+        String relative = root.toAbsolutePath().normalize().relativize(path.toAbsolutePath().normalize()).toString();
+        return relative.replace(File.separatorChar, '/');
+    }
+
+    // Load and compile the rules of one directory's ignore file, once
+    private List<Rule> rulesFor(String dir) throws IOException {
+        List<Rule> rules = rulesByDirectory.get(dir);
+        if (rules == null) {
+            rules = new ArrayList<>();
+            Path ignoreFile = (dir.isEmpty() ? root : root.resolve(dir)).resolve(Constants.IGNORE_FILE);
+            if (Files.isRegularFile(ignoreFile)) {
+                for (String line : Files.readAllLines(ignoreFile)) {
+                    Rule rule = Rule.parse(line);
+                    if (rule != null) {
+                        rules.add(rule);
+                    }
+                }
+            }
+            rulesByDirectory.put(dir, rules);
+        }
+        return rules;
+    }
+
+    /**
+     * One compiled pattern line.
+     */
+    private static class Rule {
+        final boolean negated;
+        final boolean directoryOnly;
+        final boolean anchored;
+        final String literal;   // Exact name, or null
+        final String suffix;    // Required ending for `*<suffix>` patterns, or null
+        final Pattern regex;    // Used when neither fast path applies
+
+        private Rule(boolean negated, boolean directoryOnly, boolean anchored,
+                     String literal, String suffix, Pattern regex) {
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.anchored = anchored;
+            this.literal = literal;
+            this.suffix = suffix;
+            this.regex = regex;
+        }
+
+        /**
+         * Compiles one line of an ignore file.
+         *
+         * @param line The line.
+         * @return The rule, or null for blank lines and comments.
+         */
+        static Rule parse(String line) {
+            // Trailing spaces are dropped unless escaped with a backslash
+            int end = line.length();
+            while (end > 0 && line.charAt(end - 1) == ' ' && !(end > 1 && line.charAt(end - 2) == '\\')) {
+                end--;
+            }
+            String pattern = line.substring(0, end);
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                return null;
+            }
+
+            boolean negated = false;
+            if (pattern.startsWith("!")) {
+                negated = true;
+                pattern = pattern.substring(1);
+            } else if (pattern.startsWith("\\!") || pattern.startsWith("\\#")) {
+                pattern = pattern.substring(1);
+            }
+
+            boolean directoryOnly = false;
+            if (pattern.endsWith("/")) {
+                directoryOnly = true;
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean anchored = pattern.contains("/");
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.isEmpty()) {
+                return null;
+            }
+
+            if (!anchored && !hasWildcards(pattern)) {
+                return new Rule(negated, directoryOnly, false, unescape(pattern), null, null);
+            }
+            if (!anchored && pattern.startsWith("*") && !hasWildcards(pattern.substring(1))) {
+                return new Rule(negated, directoryOnly, false, null, unescape(pattern.substring(1)), null);
+            }
+            return new Rule(negated, directoryOnly, anchored, null, null, Pattern.compile(toRegex(pattern)));
+        }
+
+        /**
+         * @param pathInDir The path relative to the directory of the ignore file.
+         * @param name      The last component of the path.
+         * @param directory Whether the path is a directory.
+         * @return {@code true} if the pattern matches the path.
+         */
+        boolean matches(String pathInDir, String name, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            if (literal != null) {
+                return name.equals(literal);
+            }
+            if (suffix != null) {
+                return name.endsWith(suffix);
+            }
+            return regex.matcher(anchored ? pathInDir : name).matches();
+        }
+
+        // Check for unescaped glob characters
+        private static boolean hasWildcards(String pattern) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '*' || c == '?' || c == '[') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Remove backslash escapes from a pattern without wildcards
+        private static String unescape(String pattern) {
+            StringBuilder out = new StringBuilder(pattern.length());
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\\' && i + 1 < pattern.length()) {
+                    c = pattern.charAt(++i);
+                }
+                out.append(c);
+            }
+            return out.toString();
+        }
+
+        // Translate a glob into an equivalent regular expression
+        private static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            int i = 0;
+            while (i < glob.length()) {
+                char c = glob.charAt(i);
+                boolean atComponentStart = i == 0 || glob.charAt(i - 1) == '/';
+                if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*' && atComponentStart
+                        && (i + 2 == glob.length() || glob.charAt(i + 2) == '/')) {
+                    if (i + 2 == glob.length()) {
+                        regex.append(".*"); // Trailing `**` matches everything below
+                        i += 2;
+                    } else {
+                        regex.append("(?:.*/)?"); // `**/` matches zero or more directories
+                        i += 3;
+                    }
+                    continue;
+                }
+
+                switch (c) {
+                    case '*':
+                        regex.append("[^/]*");
+                        break;
+                    case '?':
+                        regex.append("[^/]");
+                        break;
+                    case '[': {
+                        int close = glob.indexOf(']', i + 2);
+                        if (close < 0) {
+                            regex.append("\\[");
+                            break;
+                        }
+                        String set = glob.substring(i + 1, close);
+                        if (set.startsWith("!")) {
+                            set = "^" + set.substring(1);
+                        }
+                        regex.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                        i = close;
+                        break;
+                    }
+                    case '\\':
+                        if (i + 1 < glob.length()) {
+                            i++;
+                        }
+                        regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+                        break;
+                    default:
+                        regex.append(Pattern.quote(String.valueOf(c)));
+                }
+                i++;
+            }
+            return regex.toString();
+        }
+    }
+}
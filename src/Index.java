@@ -0,0 +1,732 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * The `Index` class reads and writes the staging area (`.mygit/index`).
+ *
+ * Each entry records the blob a file was staged as together with the file's
+ * {@link FileStat}. The file is binary, with all integers big-endian:
+ * <pre>
+ *   magic "MGIX" | version (1) | entry count N
+ *   N x int: offset of each entry from the start of the file
+ *   N x entry, sorted by the UTF-8 bytes of the name:
+ *       mtime ns (long) | ctime ns (long) | inode (long) | size (long) | mode (int)
+ *       20-byte blob id | name length (unsigned short) | name (UTF-8)
+ *   extensions: 4-byte signature | int length | data, repeated
+ *   20-byte SHA-1 of everything above
+ * </pre>
+ * The file is memory-mapped when read. Looking up one path is a binary search over
+ * the offsets table and does not parse any other entry; the entries are only decoded,
+ * and the checksum verified, when the whole index is needed (listing, modifying or
+ * rewriting it).
+ *
+ * Text indexes written by earlier versions are still read, and are rewritten in the
+ * binary format the next time the index is written.
+ *
+ * Commands that modify the index load it once with {@link #lock()}, update entries
+ * in place (one entry per path, kept sorted) and {@link #write()} it back. The new
+ * index is written to `.mygit/index.lock`, which is created exclusively and therefore
+ * also keeps two commands from updating the index at the same time, and then
+ * renamed over `.mygit/index`.
+ *
+ * Every change to an entry invalidates the directories on its path in the
+ * {@link CacheTree} extension, so that commit only rebuilds the trees of those
+ * directories. A command that only updates extensions rewrites the index by copying
+ * the encoded entries, without decoding them.
+ *
+ * A file whose stat data matches its entry is considered unchanged without being
+ * read, except when it was modified at or after the moment the index itself was
+ * last written: such "racily clean" entries could have been changed again within
+ * the same timestamp tick, so their content must be checked. As the next index
+ * written would hide that, writing the index "smudges" them as git does: their size
+ * is recorded as 0, which no longer matches the file, and entries of size 0 are
+ * never considered unchanged from their stat data.
+ */
+public class Index implements AutoCloseable {
+
+    private static final byte[] SIGNATURE = {'M', 'G', 'I', 'X'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int TRAILER_SIZE = ObjectId.RAW_LENGTH;
+
+    // Bytes of an entry before its name: four longs, the mode, the id and the name length
+    private static final int ENTRY_FIXED_SIZE = 4 * 8 + 4 + ObjectId.RAW_LENGTH + 2;
+    private static final int MAX_NAME_LENGTH = 0xffff;
+
+    // Header of the text format used before the index became binary
+    private static final String TEXT_HEADER = "# mygit index 2";
+
+    /** Lock file that holds the next version of the index while it is written. */
+    public static final String LOCK_FILE = Constants.INDEX_FILE + ".lock";
+
+    // Mapped index file, or null for an index that was not read from a binary file
+    private ByteBuffer buffer;
+    private int entryCount;
+
+    // End of the encoded entries in the mapped file, where the extensions start
+    private int entriesEnd;
+
+    // Decoded entries keyed by name, in index order; null until the whole index is needed
+    private SortedMap<String, IndexEntry> entries;
+    private final Map<String, byte[]> extensions = new LinkedHashMap<>();
+
+    // Decoded entries in order, for access by position; rebuilt after a modification
+    private List<IndexEntry> entryList;
+
+    // Decoded cache tree extension; null until an entry changes or the cache is asked for
+    private CacheTree cacheTree;
+
+    // Modification time of the index file when it was read; entries not older than this are racy
+    private long timestampNanos = Long.MAX_VALUE;
+
+    // Whether this instance holds the index lock
+    private boolean locked;
+
+    // Mapping of the index file last read and its stat data, reused while the file is unchanged
+    private static MappedByteBuffer lastMapping;
+    private static FileStat lastMappedStat;
+
+    /**
+     * Creates an empty index.
+     */
+    public Index() {
+        this.entries = new TreeMap<>(Index::comparePaths);
+    }
+
+    /**
+     * Takes the index lock and reads the index, for a command that is going to modify it.
+     * The lock is released by {@link #write()}, or by {@link #close()} if the command
+     * gives up, so callers open it in a try-with-resources statement.
+     *
+     * @return The index, holding the lock.
+     * @throws IOException If another command holds the lock, or the index cannot be read.
+     */
+    public static Index lock() throws IOException {
+        acquireLock();
+        try {
+            Index index = read();
+            index.locked = true;
+            return index;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(Paths.get(LOCK_FILE));
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the index lock without writing, if this instance still holds it.
+     */
+    @Override
+    public void close() {
+        if (locked) {
+            locked = false;
+            try {
+                Files.deleteIfExists(Paths.get(LOCK_FILE));
+            } catch (IOException e) {
+                Output.println("Warning: could not remove " + LOCK_FILE + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the index. A missing index is an empty one.
+     *
+     * @return The index.
+     * @throws IOException If the index cannot be read or is malformed.
+     */
+    public static Index read() throws IOException {
+        Index index = new Index();
+        Path indexPath = Paths.get(Constants.INDEX_FILE);
+        if (!Files.exists(indexPath)) {
+            return index;
+        }
+        FileStat stat = FileStat.read(indexPath);
+        index.timestampNanos = stat.getMtimeNanos();
+
+        MappedByteBuffer mapped = map(indexPath, stat);
+        if (isBinary(mapped)) {
+            index.openBinary(mapped);
+        } else {
+            index.readText(indexPath);
+        }
+        return index;
+    }
+
+    /**
+     * Writes the index in the binary format into the lock file and renames it over
+     * the old index, so the index is never seen half-written, then releases the lock.
+     * An index that was not obtained through {@link #lock()} takes the lock first.
+     *
+     * @throws IOException If the lock is held by another command or the index cannot be written.
+     */
+    public void write() throws IOException {
+        if (!locked) {
+            acquireLock();
+            locked = true;
+        }
+        Path indexPath = Paths.get(Constants.INDEX_FILE);
+        Path lockPath = Paths.get(LOCK_FILE);
+        boolean renamed = false;
+        try {
+            // Entries that are racy against the old index or the new one are smudged
+            long racyNanos = Math.min(timestampNanos, stampLockFile(lockPath));
+            if (entries == null && hasRacyEntries(racyNanos)) {
+                entries();
+            }
+
+            // Entries that were never decoded are unchanged and are copied as they are
+            boolean copyEntries = entries == null;
+            Collection<IndexEntry> sorted = copyEntries ? Collections.emptyList() : entries.values();
+            Map<IndexEntry, byte[]> names = new IdentityHashMap<>();
+            for (IndexEntry entry : sorted) {
+                byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+                if (name.length > MAX_NAME_LENGTH) {
+                    throw new IOException("Path too long for the index: " + entry.getName());
+                }
+                names.put(entry, name);
+            }
+            if (copyEntries) {
+                verifyChecksum();
+            }
+            if (cacheTree != null) {
+                extensions.put(CacheTree.INDEX_EXTENSION, cacheTree.format());
+            }
+
+            MessageDigest digest = ObjectId.newDigest();
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(lockPath,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+                DataOutputStream out = new DataOutputStream(new DigestOutputStream(file, digest));
+                if (copyEntries) {
+                    copyMappedEntries(out);
+                } else {
+                    writeEntries(out, sorted, names, racyNanos);
+                }
+
+                for (Map.Entry<String, byte[]> extension : extensions.entrySet()) {
+                    out.write(extension.getKey().getBytes(StandardCharsets.US_ASCII));
+                    out.writeInt(extension.getValue().length);
+                    out.write(extension.getValue());
+                }
+                out.flush();
+
+                // The trailer is the checksum of everything before it, so it bypasses the digest
+                file.write(digest.digest());
+            }
+            Files.move(lockPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            renamed = true;
+        } finally {
+            locked = false;
+            // Once renamed, a lock file at this path belongs to the next command
+            if (!renamed) {
+                Files.deleteIfExists(lockPath);
+            }
+        }
+    }
+
+    // Stamp the lock file with the file system's clock and return that time. The index is
+    // renamed from the lock file after more writes, so its timestamp is never earlier
+    private static long stampLockFile(Path lockPath) throws IOException {
+        Files.write(lockPath, new byte[1]);
+        return FileStat.read(lockPath).getMtimeNanos();
+    }
+
+    // Whether an entry of the mapped index was modified at or after the given time
+    private boolean hasRacyEntries(long racyNanos) throws IOException {
+        for (int i = 0; i < entryCount; i++) {
+            if (buffer.getLong(entryOffset(i)) >= racyNanos) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Write the header, offsets table and entries. Entries modified at or after racyNanos could
+    // change again within the same timestamp tick as the index without their stat data showing
+    // it once a later index is written, so their size is written as 0 and they never look clean
+    private static void writeEntries(DataOutputStream out, Collection<IndexEntry> sorted,
+                                     Map<IndexEntry, byte[]> names, long racyNanos) throws IOException {
+        out.write(SIGNATURE);
+        out.writeInt(VERSION);
+        out.writeInt(sorted.size());
+
+        long offset = HEADER_SIZE + 4L * sorted.size();
+        for (IndexEntry entry : sorted) {
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Index too large");
+            }
+            out.writeInt((int) offset);
+            offset += ENTRY_FIXED_SIZE + names.get(entry).length;
+        }
+
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        for (IndexEntry entry : sorted) {
+            byte[] name = names.get(entry);
+            FileStat stat = entry.getStat() != null ? entry.getStat()
+                    : new FileStat(-1, 0, 0, 0, FileStat.MODE_FILE); // Never matches a real file
+            out.writeLong(stat.getMtimeNanos());
+            out.writeLong(stat.getCtimeNanos());
+            out.writeLong(stat.getInode());
+            out.writeLong(stat.getMtimeNanos() >= racyNanos ? 0 : stat.getSize());
+            out.writeInt(stat.getMode());
+            entry.getId().copyRawTo(raw, 0);
+            out.write(raw);
+            out.writeShort(name.length);
+            out.write(name);
+        }
+    }
+
+    // Copy the header, offsets table and entries of the mapped index unchanged
+    private void copyMappedEntries(DataOutputStream out) throws IOException {
+        byte[] chunk = new byte[1 << 16];
+        for (int position = 0; position < entriesEnd; position += chunk.length) {
+            int length = Math.min(chunk.length, entriesEnd - position);
+            buffer.get(position, chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * @param name A file name.
+     * @return The entry for the file, or null if it is not staged.
+     * @throws IOException If the mapped index is malformed.
+     */
+    public IndexEntry get(String name) throws IOException {
+        if (entries != null) {
+            return entries.get(name);
+        }
+
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = entryOffset(mid);
+            int cmp = compareName(offset, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return decodeEntry(offset);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds an entry, replacing any existing entry for the same file.
+     *
+     * @param entry The entry.
+     * @throws IOException If the existing index cannot be decoded.
+     */
+    public void put(IndexEntry entry) throws IOException {
+        IndexEntry existing = get(entry.getName());
+        if (existing == null || !existing.getId().equals(entry.getId()) || mode(existing) != mode(entry)) {
+            invalidateCacheTree(entry.getName());
+        }
+        entries().put(entry.getName(), entry);
+        entryList = null;
+    }
+
+    /**
+     * @param name A file name.
+     * @return {@code true} if the file was staged and has been removed.
+     * @throws IOException If the existing index cannot be decoded.
+     */
+    public boolean remove(String name) throws IOException {
+        if (entries().remove(name) == null) {
+            return false;
+        }
+        invalidateCacheTree(name);
+        entryList = null;
+        return true;
+    }
+
+    /**
+     * Removes every entry, along with the extensions, which describe the entries.
+     */
+    public void clear() {
+        entries = new TreeMap<>(Index::comparePaths);
+        buffer = null;
+        entryList = null;
+        extensions.clear();
+        cacheTree = null;
+    }
+
+    /**
+     * Replaces every entry with the files of a tree, as checking out a commit does.
+     * The entries have no stat data, so the files are compared by content until they
+     * are staged again, and the cache tree records the tree's own subtrees, so the next
+     * commit only writes the trees of directories that changed after the reset.
+     *
+     * @param treeId The tree, or null for an empty index.
+     * @throws IOException If the tree or one of its subtrees cannot be read.
+     */
+    public void reset(ObjectId treeId) throws IOException {
+        clear();
+        cacheTree = new CacheTree("");
+        if (treeId != null) {
+            addTree(treeId, "", cacheTree);
+        }
+    }
+
+    // Add the files of a tree below a prefix and record the tree in its cache tree node;
+    // returns the number of files added
+    private int addTree(ObjectId treeId, String prefix, CacheTree node) throws IOException {
+        TreeObject tree = ObjectDatabase.readTree(treeId);
+        if (tree == null) {
+            throw new IOException("Missing tree " + treeId);
+        }
+        int count = 0;
+        for (TreeObject.Entry entry : tree.getEntryList()) {
+            String name = prefix + entry.getName();
+            if (entry.isTree()) {
+                count += addTree(entry.getId(), name + "/", node.getOrCreateChild(entry.getName()));
+            } else {
+                // A size that never matches a file, with the mode the file is committed with
+                entries.put(name, new IndexEntry(name, entry.getId(), new FileStat(-1, 0, 0, 0, entry.getMode())));
+                count++;
+            }
+        }
+        node.update(treeId, count);
+        return count;
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    public int size() {
+        return entries != null ? entries.size() : entryCount;
+    }
+
+    /**
+     * Reads one entry by its position in the sorted order, without decoding the others.
+     *
+     * @param position The position, from 0 to {@link #size()} - 1.
+     * @return The entry.
+     * @throws IOException If the mapped index is malformed.
+     */
+    public IndexEntry getEntry(int position) throws IOException {
+        if (entries == null) {
+            return decodeEntry(entryOffset(position));
+        }
+        if (entryList == null) {
+            entryList = new ArrayList<>(entries.values());
+        }
+        return entryList.get(position);
+    }
+
+    /**
+     * Returns the cache of directory tree ids, which callers may update after writing
+     * trees; it is saved by {@link #write()}.
+     *
+     * @return The cache; an empty, invalid one if the index has none or it is unreadable.
+     */
+    public CacheTree getCacheTree() {
+        if (cacheTree == null) {
+            byte[] data = extensions.get(CacheTree.INDEX_EXTENSION);
+            try {
+                cacheTree = data != null ? CacheTree.parse(data) : new CacheTree("");
+            } catch (IOException e) {
+                cacheTree = new CacheTree(""); // Only a cache; rebuilt by the next commit
+            }
+        }
+        return cacheTree;
+    }
+
+    /**
+     * @return The entries, sorted by name.
+     * @throws IOException If the index cannot be decoded or fails its checksum.
+     */
+    public Collection<IndexEntry> getEntries() throws IOException {
+        return Collections.unmodifiableCollection(entries().values());
+    }
+
+    /**
+     * @return {@code true} if nothing is staged.
+     */
+    public boolean isEmpty() {
+        return entries != null ? entries.isEmpty() : entryCount == 0;
+    }
+
+    /**
+     * @param signature A four-character extension signature.
+     * @return The extension's data, or null if the index does not carry it.
+     */
+    public byte[] getExtension(String signature) {
+        return extensions.get(signature);
+    }
+
+    /**
+     * Adds or replaces an extension; it is written after the entries.
+     *
+     * @param signature A four-character extension signature.
+     * @param data      The extension's data.
+     */
+    public void setExtension(String signature, byte[] data) {
+        if (signature.length() != 4) {
+            throw new IllegalArgumentException("Extension signatures have four characters: " + signature);
+        }
+        extensions.put(signature, data);
+    }
+
+    /**
+     * @param signature A four-character extension signature.
+     */
+    public void removeExtension(String signature) {
+        extensions.remove(signature);
+    }
+
+    /**
+     * Decides from metadata alone whether a file still has the content it was staged with.
+     *
+     * @param entry The file's entry.
+     * @param stat  The file's current metadata.
+     * @return {@code true} if the file is certainly unchanged; {@code false} if its
+     *         content has to be hashed to find out.
+     */
+    public boolean isUnchanged(IndexEntry entry, FileStat stat) {
+        // A size of 0 may be a smudged entry, and empty files cost nothing to hash
+        return stat.getSize() != 0 && stat.equals(entry.getStat()) && stat.getMtimeNanos() < timestampNanos;
+    }
+
+    /**
+     * Orders paths the way the index stores them: by the unsigned bytes of their
+     * UTF-8 encoding, which is the same as comparing code points.
+     *
+     * @param a The first path.
+     * @param b The second path.
+     * @return A negative, zero or positive value as {@code a} sorts before, equal to or after {@code b}.
+     */
+    public static int comparePaths(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    // Invalidate the cached trees of the directories on a path, if a cache is present
+    private void invalidateCacheTree(String name) {
+        if (cacheTree != null || extensions.containsKey(CacheTree.INDEX_EXTENSION)) {
+            getCacheTree().invalidate(name);
+        }
+    }
+
+    // Mode an entry is committed with
+    private static int mode(IndexEntry entry) {
+        return entry.getStat() != null ? entry.getStat().getMode() : FileStat.MODE_FILE;
+    }
+
+    // Create the lock file, failing if another command holds it
+    private static void acquireLock() throws IOException {
+        Path lockPath = Paths.get(LOCK_FILE);
+        Files.createDirectories(lockPath.getParent());
+        try {
+            Files.createFile(lockPath);
+        } catch (FileAlreadyExistsException e) {
+            throw new IOException("Unable to create '" + LOCK_FILE + "': File exists. Another MyGit command "
+                    + "seems to be running in this repository; if not, remove the file and try again.");
+        }
+    }
+
+    // Check for the binary signature
+    private static boolean isBinary(ByteBuffer mapped) {
+        if (mapped.capacity() < SIGNATURE.length) {
+            return false;
+        }
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (mapped.get(i) != SIGNATURE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Map the index file, reusing the last mapping while the stat data is the same. A process
+    // that reads the index many times, such as the daemon, maps it once per change; this is
+    // safe because the index is only ever replaced by renaming, never rewritten in place
+    private static synchronized MappedByteBuffer map(Path indexPath, FileStat stat) throws IOException {
+        if (!stat.equals(lastMappedStat)) {
+            try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+                lastMapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            lastMappedStat = stat;
+        }
+        return lastMapping;
+    }
+
+    // Validate the header of a binary index and locate its extensions, leaving the entries encoded
+    private void openBinary(ByteBuffer mapped) throws IOException {
+        if (mapped.capacity() < HEADER_SIZE + TRAILER_SIZE || mapped.getInt(4) != VERSION) {
+            throw new IOException("Unsupported index format");
+        }
+        int count = mapped.getInt(8);
+        int end = mapped.capacity() - TRAILER_SIZE;
+        if (count < 0 || HEADER_SIZE + 4L * count > end) {
+            throw new IOException("Index is truncated");
+        }
+        buffer = mapped;
+        entryCount = count;
+        entries = null;
+
+        // Extensions start right after the last entry
+        int position = HEADER_SIZE + 4 * count;
+        if (count > 0) {
+            int last = entryOffset(count - 1);
+            position = last + ENTRY_FIXED_SIZE + nameLength(last);
+        }
+        entriesEnd = position;
+        while (position < end) {
+            if (position + 8 > end) {
+                throw new IOException("Index extension is truncated");
+            }
+            byte[] signature = new byte[4];
+            mapped.get(position, signature);
+            int length = mapped.getInt(position + 4);
+            if (length < 0 || position + 8L + length > end) {
+                throw new IOException("Index extension is truncated");
+            }
+            byte[] data = new byte[length];
+            mapped.get(position + 8, data);
+            extensions.put(new String(signature, StandardCharsets.US_ASCII), data);
+            position += 8 + length;
+        }
+    }
+
+    // Decode every entry of the mapped index, verifying its checksum first
+    private SortedMap<String, IndexEntry> entries() throws IOException {
+        if (entries != null) {
+            return entries;
+        }
+
+        verifyChecksum();
+        SortedMap<String, IndexEntry> decoded = new TreeMap<>(Index::comparePaths);
+        for (int i = 0; i < entryCount; i++) {
+            IndexEntry entry = decodeEntry(entryOffset(i));
+            decoded.put(entry.getName(), entry);
+        }
+        entries = decoded;
+        buffer = null;
+        return entries;
+    }
+
+    // Check the trailer of the mapped index against its content
+    private void verifyChecksum() throws IOException {
+        int end = buffer.capacity() - TRAILER_SIZE;
+        MessageDigest digest = ObjectId.newDigest();
+        digest.update(buffer.duplicate().position(0).limit(end));
+        byte[] trailer = new byte[TRAILER_SIZE];
+        buffer.get(end, trailer);
+        if (!MessageDigest.isEqual(digest.digest(), trailer)) {
+            throw new IOException("Index checksum mismatch; the index is corrupt");
+        }
+    }
+
+    // Offset of the i-th entry, checked against the file size
+    private int entryOffset(int i) throws IOException {
+        int offset = buffer.getInt(HEADER_SIZE + 4 * i);
+        if (offset < HEADER_SIZE || offset > buffer.capacity() - TRAILER_SIZE - ENTRY_FIXED_SIZE) {
+            throw new IOException("Corrupt index entry offset");
+        }
+        return offset;
+    }
+
+    // Length of the name of the entry at the given offset
+    private int nameLength(int offset) throws IOException {
+        int length = buffer.getShort(offset + ENTRY_FIXED_SIZE - 2) & 0xffff;
+        if (offset + ENTRY_FIXED_SIZE + length > buffer.capacity() - TRAILER_SIZE) {
+            throw new IOException("Corrupt index entry name");
+        }
+        return length;
+    }
+
+    // Compare the name of the entry at the given offset with a key, as unsigned bytes
+    private int compareName(int offset, byte[] key) throws IOException {
+        int length = nameLength(offset);
+        int start = offset + ENTRY_FIXED_SIZE;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(buffer.get(start + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    // Decode the entry at the given offset
+    private IndexEntry decodeEntry(int offset) throws IOException {
+        byte[] name = new byte[nameLength(offset)];
+        buffer.get(offset + ENTRY_FIXED_SIZE, name);
+        FileStat stat = new FileStat(
+                buffer.getLong(offset + 24),
+                buffer.getLong(offset),
+                buffer.getLong(offset + 8),
+                buffer.getLong(offset + 16),
+                buffer.getInt(offset + 32));
+        ObjectId id = ObjectId.fromRaw(buffer, offset + 36);
+        return new IndexEntry(new String(name, StandardCharsets.UTF_8), id, stat);
+    }
+
+    // Read an index written in one of the earlier text formats
+    private void readText(Path indexPath) throws IOException {
+        List<String> lines = Files.readAllLines(indexPath);
+        boolean hasStat = !lines.isEmpty() && lines.get(0).equals(TEXT_HEADER);
+        for (int i = hasStat ? 1 : 0; i < lines.size(); i++) {
+            IndexEntry entry = hasStat ? parseTextEntry(lines.get(i)) : parseLegacyEntry(lines.get(i));
+            if (entry != null) {
+                entries.put(entry.getName(), entry);
+            }
+        }
+    }
+
+    // Parse a `<hash> <mode> <size> <mtime> <ctime> <inode>\t<filename>` line
+    private static IndexEntry parseTextEntry(String line) throws IOException {
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+            return null;
+        }
+        String[] fields = line.substring(0, tab).split(" ");
+        try {
+            if (fields.length != 6) {
+                throw new IllegalArgumentException("expected 6 fields");
+            }
+            FileStat stat = new FileStat(
+                    Long.parseLong(fields[2]),
+                    Long.parseLong(fields[3]),
+                    Long.parseLong(fields[4]),
+                    Long.parseLong(fields[5]),
+                    Integer.parseInt(fields[1], 8));
+            return new IndexEntry(line.substring(tab + 1), ObjectId.fromString(fields[0]), stat);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt index entry: " + line);
+        }
+    }
+
+    // Parse a `<hash> <filename>` line from an index written before stat data existed
+    private static IndexEntry parseLegacyEntry(String line) throws IOException {
+        String[] parts = line.split(" ", 2);
+        if (parts.length != 2) {
+            return null;
+        }
+        if (!ObjectId.isId(parts[0])) {
+            throw new IOException("Corrupt index entry: " + line);
+        }
+        return new IndexEntry(parts[1], ObjectId.fromString(parts[0]), null);
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * The `IndexEntry` class is one staged file: its name, the blob it was staged as,
+ * and the file metadata at the time it was staged.
+ */
+public class IndexEntry {
+
+    private final String name;
+    private final ObjectId id;
+    private final FileStat stat;
+
+    /**
+     * Creates an entry.
+     *
+     * @param name The file name, as given to `add`.
+     * @param id   The blob id.
+     * @param stat The file metadata when the blob was stored, or null if unknown.
+     */
+    public IndexEntry(String name, ObjectId id, FileStat stat) {
+        this.name = name;
+        this.id = id;
+        this.stat = stat;
+    }
+
+    /**
+     * @return The file name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The blob id.
+     */
+    public ObjectId getId() {
+        return id;
+    }
+
+    /**
+     * @return The recorded file metadata, or null for entries staged before it was recorded.
+     */
+    public FileStat getStat() {
+        return stat;
+    }
+}
@@ -0,0 +1,331 @@
+import java.io.*;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * The `Log` class implements the `log` command: it follows the first parent from the
+ * current commit and prints the commits that pass the given filters.
+ *
+ * The walk is lazy. Parents, commit times and changed-path filters come from the
+ * {@link CommitGraph} when it has the commit, so a commit is only parsed when it has
+ * to be matched against `--author` or printed, and the walk stops as soon as `-n`
+ * commits have been printed or a commit older than `--since` is reached. Output goes
+ * through the buffered {@link Output} sink; in its porcelain mode every commit is a
+ * `commit` record and `--oneline` and `--format` are ignored.
+ */
+public class Log {
+
+    // Separator printed after each commit in the default format
+    private static final String SEPARATOR = "------------------------";
+
+    // Length of abbreviated ids in --oneline and %h
+    private static final int ABBREVIATED_LENGTH = 7;
+
+    /**
+     * The options of one `log` invocation.
+     */
+    public static class Options {
+        int maxCount = -1;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        Pattern author;
+        String format;
+        String path;
+
+        /**
+         * Parses the arguments that follow `log`:
+         * `-n <count>`, `-<count>`, `--max-count=<count>`, `--since=<date>`, `--until=<date>`,
+         * `--author=<regex>`, `--oneline`, `--format=<format>` and `-- <path>`.
+         *
+         * @param args The arguments.
+         * @return The options, or null if an argument is not valid.
+         */
+        public static Options parse(List<String> args) {
+            Options options = new Options();
+            try {
+                for (int i = 0; i < args.size(); i++) {
+                    String arg = args.get(i);
+                    if (arg.equals("--") && i == args.size() - 2) {
+                        options.path = args.get(++i);
+                    } else if (arg.equals("-n") && i + 1 < args.size()) {
+                        options.maxCount = parseCount(args.get(++i));
+                    } else if (arg.startsWith("--max-count=")) {
+                        options.maxCount = parseCount(arg.substring("--max-count=".length()));
+                    } else if (arg.matches("-\\d+")) {
+                        options.maxCount = parseCount(arg.substring(1));
+                    } else if (arg.startsWith("--since=")) {
+                        options.since = parseDate(arg.substring("--since=".length()));
+                    } else if (arg.startsWith("--until=")) {
+                        options.until = parseDate(arg.substring("--until=".length()));
+                    } else if (arg.startsWith("--author=")) {
+                        options.author = Pattern.compile(arg.substring("--author=".length()));
+                    } else if (arg.equals("--oneline")) {
+                        options.format = "%h %s";
+                    } else if (arg.startsWith("--format=")) {
+                        options.format = arg.substring("--format=".length());
+                    } else {
+                        return null;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                return null; // Includes NumberFormatException and PatternSyntaxException
+            }
+            return options;
+        }
+
+        // A commit count, which cannot be negative
+        private static int parseCount(String value) {
+            int count = Integer.parseInt(value);
+            if (count < 0) {
+                throw new IllegalArgumentException("negative count");
+            }
+            return count;
+        }
+
+        /**
+         * Parses a date for `--since` and `--until`: `yyyy-MM-dd`, `yyyy-MM-dd HH:mm:ss`
+         * (local time, like commit dates) or `<n> <unit>(s) ago` with a unit from seconds
+         * to weeks, where `.` may replace the spaces.
+         *
+         * @param value The date.
+         * @return The time in seconds since the epoch.
+         * @throws IllegalArgumentException If the date is not in one of these forms.
+         */
+        static long parseDate(String value) {
+            String[] relative = value.trim().split("[ .]+");
+            if (relative.length == 3 && relative[2].equals("ago")) {
+                long amount = Long.parseLong(relative[0]);
+                String unit = relative[1].endsWith("s") ? relative[1].substring(0, relative[1].length() - 1) : relative[1];
+                long seconds;
+                switch (unit) {
+                    case "second":
+                        seconds = amount;
+                        break;
+                    case "minute":
+                        seconds = TimeUnit.MINUTES.toSeconds(amount);
+                        break;
+                    case "hour":
+                        seconds = TimeUnit.HOURS.toSeconds(amount);
+                        break;
+                    case "day":
+                        seconds = TimeUnit.DAYS.toSeconds(amount);
+                        break;
+                    case "week":
+                        seconds = TimeUnit.DAYS.toSeconds(7 * amount);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown unit " + unit);
+                }
+                return System.currentTimeMillis() / 1000 - seconds;
+            }
+            try {
+                if (value.length() == "yyyy-MM-dd".length()) {
+                    return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+                }
+                return LocalDateTime.parse(value.replace(' ', 'T')).atZone(ZoneId.systemDefault()).toEpochSecond();
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("bad date " + value);
+            }
+        }
+    }
+
+    /**
+     * Prints the history of the current commit.
+     *
+     * @param options The filters and format.
+     */
+    public static void showLog(Options options) {
+        try {
+            walk(options, Output.writer());
+        } catch (IOException e) {
+            Output.error("Error displaying commit history: " + e.getMessage());
+        }
+    }
+
+    // Follow the first parent, printing the commits that pass the filters
+    private static void walk(Options options, PrintWriter out) throws IOException {
+        String path = options.path != null ? StagingArea.indexName(Paths.get(options.path)) : null;
+        BloomFilter.Key key = path != null ? new BloomFilter.Key(path) : null;
+        CommitGraph graph = CommitGraph.get();
+
+        int shown = 0;
+        ObjectId commitHash = GitUtils.getCurrentCommitHash();
+        while (commitHash != null && shown != options.maxCount) {
+            // Commits in the graph are only parsed if a filter or the output needs them
+            int position = graph != null ? graph.findPosition(commitHash) : -1;
+            CommitObject commit = position >= 0 ? null : ObjectDatabase.readCommit(commitHash);
+            if (position < 0 && commit == null) {
+                Output.error("Error: Commit object not found for hash: " + commitHash);
+                return;
+            }
+
+            long time = commit != null ? commit.getTime() : graph.getCommitTime(position);
+            if (time != 0 && time < options.since) {
+                break; // Older commits follow, since the first-parent chain goes back in time
+            }
+
+            List<ObjectId> parents = position >= 0 ? graph.getParents(position) : commit.getParents();
+            ObjectId parentHash = parents.isEmpty() ? null : parents.get(0);
+
+            boolean matches = time <= options.until
+                    && (path == null || touchesPath(graph, position, commitHash, parentHash, path, key));
+            if (matches && options.author != null) {
+                if (commit == null) {
+                    commit = ObjectDatabase.readCommit(commitHash);
+                }
+                matches = options.author.matcher(commit.getAuthor()).find();
+            }
+            if (matches) {
+                if (commit == null) {
+                    commit = ObjectDatabase.readCommit(commitHash);
+                }
+                print(out, commitHash, commit, options.format);
+                shown++;
+            }
+            commitHash = parentHash;
+        }
+    }
+
+    /**
+     * Checks whether a commit changed a path compared to its first parent. The commit's
+     * changed-path filter is asked first; only when it cannot rule the path out are the
+     * two trees looked up.
+     *
+     * @param graph      The commit graph, or null if there is none.
+     * @param position   The commit's position in the graph, or -1.
+     * @param commitHash The commit.
+     * @param parentHash Its first parent, or null for a root commit.
+     * @param path       The path, relative to the repository root.
+     * @param key        The path's filter key.
+     * @return {@code true} if the path points to different objects in the two commits.
+     * @throws IOException If a tree cannot be read.
+     */
+    private static boolean touchesPath(CommitGraph graph, int position, ObjectId commitHash, ObjectId parentHash,
+                                       String path, BloomFilter.Key key) throws IOException {
+        if (position >= 0 && !graph.mayHaveChanged(position, key)) {
+            return false;
+        }
+        ObjectId current = GitUtils.lookupPath(ObjectDatabase.readCommitTree(commitHash), path);
+        ObjectId previous = parentHash != null
+                ? GitUtils.lookupPath(ObjectDatabase.readCommitTree(parentHash), path) : null;
+        return !Objects.equals(current, previous);
+    }
+
+    // Print one commit as a record, in the default format or in a --format one
+    private static void print(PrintWriter out, ObjectId id, CommitObject commit, String format) {
+        if (Output.isPorcelain()) {
+            List<String> parents = new ArrayList<>();
+            for (ObjectId parent : commit.getParents()) {
+                parents.add(parent.name());
+            }
+            Output.record("commit", null, "id", id.name(),
+                    "tree", commit.getTree() != null ? commit.getTree().name() : null, "parents", parents,
+                    "author", commit.getAuthor(), "date", commit.getDate(), "time", commit.getTime(),
+                    "message", commit.getMessage());
+        } else if (format == null) {
+            out.println("Commit: " + id);
+            out.println(commit.getText());
+            out.println(SEPARATOR);
+        } else {
+            out.println(expand(format, id, commit));
+        }
+    }
+
+    /**
+     * Expands the placeholders of a `--format` string: `%H`/`%h` (commit), `%T`/`%t`
+     * (tree), `%P`/`%p` (parents), `%an` (author), `%ad` (date), `%at` (seconds since the
+     * epoch), `%s` (subject), `%b` (body), `%n` (newline) and `%%`. Anything else is
+     * copied as is.
+     *
+     * @param format The format.
+     * @param id     The commit id.
+     * @param commit The parsed commit.
+     * @return The formatted commit.
+     */
+    static String expand(String format, ObjectId id, CommitObject commit) {
+        String message = commit.getMessage();
+        int newline = message.indexOf('\n');
+        String subject = newline < 0 ? message : message.substring(0, newline);
+        String body = newline < 0 ? "" : message.substring(newline + 1).trim();
+
+        StringBuilder result = new StringBuilder(format.length() + 64);
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c != '%' || i + 1 >= format.length()) {
+                result.append(c);
+                continue;
+            }
+            char next = format.charAt(i + 1);
+            String two = i + 2 < format.length() ? format.substring(i + 1, i + 3) : "";
+            if (two.equals("an")) {
+                result.append(commit.getAuthor());
+                i += 2;
+            } else if (two.equals("ad")) {
+                result.append(commit.getDate());
+                i += 2;
+            } else if (two.equals("at")) {
+                result.append(commit.getTime());
+                i += 2;
+            } else {
+                String value;
+                switch (next) {
+                    case 'H':
+                        value = id.name();
+                        break;
+                    case 'h':
+                        value = id.abbreviate(ABBREVIATED_LENGTH);
+                        break;
+                    case 'T':
+                        value = commit.getTree() != null ? commit.getTree().name() : "";
+                        break;
+                    case 't':
+                        value = commit.getTree() != null ? commit.getTree().abbreviate(ABBREVIATED_LENGTH) : "";
+                        break;
+                    case 'P':
+                        value = joinIds(commit.getParents(), ObjectId.HEX_LENGTH);
+                        break;
+                    case 'p':
+                        value = joinIds(commit.getParents(), ABBREVIATED_LENGTH);
+                        break;
+                    case 's':
+                        value = subject;
+                        break;
+                    case 'b':
+                        value = body;
+                        break;
+                    case 'n':
+                        value = "\n";
+                        break;
+                    case '%':
+                        value = "%";
+                        break;
+                    default:
+                        value = null;
+                        break;
+                }
+                if (value == null) {
+                    result.append(c);
+                } else {
+                    result.append(value);
+                    i++;
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    // Space-separated ids, abbreviated to a length
+    private static String joinIds(List<ObjectId> ids, int length) {
+        StringJoiner joined = new StringJoiner(" ");
+        for (ObjectId id : ids) {
+            joined.add(id.abbreviate(length));
+        }
+        return joined.toString();
+    }
+}
@@ -10,11 +10,10 @@ import java.util.*;
 
 public class Merge {
 
-        // Constants representing file paths for refs, objects, and the HEAD file
+        // Constants representing file paths for refs and the HEAD file
 
     private static final String REFS_DIR = ".mygit/refs/heads";
     private static final String HEAD_FILE = ".mygit/HEAD";
-    private static final String OBJECTS_DIR = ".mygit/objects";
 
     /**
      * Merges the specified branch into the current branch.
@@ -27,12 +26,12 @@ public class Merge {
             // Get the current branch name
             String currentBranch = getCurrentBranchName();
             if (currentBranch == null) {
-                System.out.println("Error: No current branch found.");
+                Output.error("Error: No current branch found.");
                 return;
             }
 
             if (currentBranch.equals(sourceBranch)) {
-                System.out.println("Already on branch '" + sourceBranch + "'. Nothing to merge.");
+                Output.println("Already on branch '" + sourceBranch + "'. Nothing to merge.");
                 return;
             }
 
@@ -41,112 +40,45 @@ public class Merge {
             Path currentBranchPath = Paths.get(REFS_DIR, currentBranch);
 
             if (!Files.exists(sourceBranchPath)) {
-                System.out.println("Error: Branch '" + sourceBranch + "' does not exist.");
+                Output.error("Error: Branch '" + sourceBranch + "' does not exist.");
                 return;
             }
 
-            String sourceCommitHash = new String(Files.readAllBytes(sourceBranchPath)).trim();
-            String currentCommitHash = new String(Files.readAllBytes(currentBranchPath)).trim();
+            ObjectId sourceCommitHash = GitUtils.readRef(sourceBranchPath);
+            ObjectId currentCommitHash = GitUtils.readRef(currentBranchPath);
 
-            if (currentCommitHash.isEmpty() || sourceCommitHash.isEmpty()) {
-                System.out.println("Error: One of the branches has no commits to merge.");
+            if (currentCommitHash == null || sourceCommitHash == null) {
+                Output.error("Error: One of the branches has no commits to merge.");
                 return;
             }
 
-            // Find the common ancestor
-            String commonAncestorHash = findCommonAncestor(currentCommitHash, sourceCommitHash);
-            if (commonAncestorHash == null) {
-                System.out.println("Error: No common ancestor found.");
+            // Find the best common ancestor; criss-cross histories can have several
+            List<ObjectId> mergeBases = MergeBase.findAll(currentCommitHash, sourceCommitHash);
+            if (mergeBases.isEmpty()) {
+                Output.error("Error: No common ancestor found.");
                 return;
             }
+            ObjectId commonAncestorHash = mergeBases.get(0);
+            if (mergeBases.size() > 1) {
+                Output.println("Found " + mergeBases.size() + " merge bases; using " + commonAncestorHash);
+            }
 
             // Perform the three-way merge
             boolean conflicts = performThreeWayMerge(commonAncestorHash, currentCommitHash, sourceCommitHash);
 
             if (conflicts) {
-                System.out.println("Merge completed with conflicts. Please resolve them manually.");
+                Output.println("Merge completed with conflicts. Please resolve them manually.");
             } else {
                 // Create a merge commit
                 createMergeCommit(currentCommitHash, sourceCommitHash, "Merge branch '" + sourceBranch + "'");
-                System.out.println("Merge completed successfully.");
+                Output.println("Merge completed successfully.");
             }
 
         } catch (IOException e) {
-            System.out.println("Error during merge: " + e.getMessage());
-        }
-    }
-
-    
-   /**
-     * Finds the common ancestor of two commits using Breadth-First Search (BFS).
-     *
-     * @param commit1 The first commit hash.
-     * @param commit2 The second commit hash.
-     * @return The hash of the common ancestor commit, or null if no common ancestor is found.
-     * @throws IOException If an I/O error occurs while reading commit data.
-     */     
-    private static String findCommonAncestor(String commit1, String commit2) throws IOException {
-        // Queue for BFS traversal
-        Queue<String> queue1 = new LinkedList<>();
-        Queue<String> queue2 = new LinkedList<>();
-        
-        // Sets to track visited commits
-        Set<String> visited1 = new HashSet<>();
-        Set<String> visited2 = new HashSet<>();
-
-        queue1.add(commit1);
-        queue2.add(commit2);
-
-        while (!queue1.isEmpty() || !queue2.isEmpty()) {
-            if (!queue1.isEmpty()) {
-                String current1 = queue1.poll();
-                if (visited2.contains(current1)) {
-                    return current1; // Found common ancestor
-                }
-                visited1.add(current1);
-                queue1.addAll(getParentCommits(current1));
-            }
-
-            if (!queue2.isEmpty()) {
-                String current2 = queue2.poll();
-                if (visited1.contains(current2)) {
-                    return current2; // Found common ancestor
-                }
-                visited2.add(current2);
-                queue2.addAll(getParentCommits(current2));
-            }
-        }
-
-        return null; // No common ancestor found
-    }
-
-  
-   /**
-     * Retrieves the parent commits of a given commit.
-     *
-     * @param commitHash The commit hash.
-     * @return A list of parent commit hashes.
-     * @throws IOException If an I/O error occurs while reading commit data.
-     */   
-
-    private static List<String> getParentCommits(String commitHash) throws IOException {
-        List<String> parents = new ArrayList<>();
-        Path commitPath = Paths.get(OBJECTS_DIR, commitHash);
-        if (!Files.exists(commitPath)) {
-            return parents;
-        }
-
-        List<String> lines = Files.readAllLines(commitPath);
-        for (String line : lines) {
-            if (line.startsWith("parent ")) {
-                parents.add(line.substring(7).trim());
-            }
+            Output.error("Error during merge: " + e.getMessage());
         }
-
-        return parents;
     }
 
-    
     /**
      * Performs a three-way merge and detects conflicts.
      *
@@ -157,7 +89,7 @@ public class Merge {
      * @throws IOException If an I/O error occurs while reading commit data.
      */
     
-    private static boolean performThreeWayMerge(String baseHash, String currentHash, String sourceHash) throws IOException {
+    private static boolean performThreeWayMerge(ObjectId baseHash, ObjectId currentHash, ObjectId sourceHash) throws IOException {
         // For simplicity, let's assume each commit represents a single file change.
         String baseContent = getCommitContent(baseHash);
         String currentContent = getCommitContent(currentHash);
@@ -195,16 +127,15 @@ public class Merge {
      * @throws IOException If an I/O error occurs while creating the commit.
      */
 
-    private static void createMergeCommit(String parent1, String parent2, String message) throws IOException {
+    private static void createMergeCommit(ObjectId parent1, ObjectId parent2, String message) throws IOException {
         String commitContent = "parent " + parent1 + "\n" +
                                "parent " + parent2 + "\n" +
                                "message " + message + "\n";
 
-        String commitHash = UUID.randomUUID().toString();
-        Files.write(Paths.get(OBJECTS_DIR, commitHash), commitContent.getBytes());
+        ObjectId commitHash = ObjectStore.writeObject(GitObject.COMMIT, commitContent.getBytes());
 
         String currentBranch = getCurrentBranchName();
-        Files.write(Paths.get(REFS_DIR, currentBranch), commitHash.getBytes());
+        Files.write(Paths.get(REFS_DIR, currentBranch), commitHash.name().getBytes());
     }
 
     
@@ -216,12 +147,12 @@ public class Merge {
      * @throws IOException If an I/O error occurs while reading the commit file.
      */
 
-    private static String getCommitContent(String commitHash) throws IOException {
-        Path commitPath = Paths.get(OBJECTS_DIR, commitHash);
-        if (!Files.exists(commitPath)) {
+    private static String getCommitContent(ObjectId commitHash) throws IOException {
+        CommitObject commitObject = ObjectDatabase.readCommit(commitHash);
+        if (commitObject == null) {
             return "";
         }
-        return new String(Files.readAllBytes(commitPath)).trim();
+        return commitObject.getText().trim();
     }
 
    
@@ -0,0 +1,257 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * The `MergeBase` class finds the best common ancestors of two commits, as used by
+ * `merge` and the `merge-base` command.
+ *
+ * It paints the history downwards from both commits: every commit reached is marked
+ * with the side(s) it is reachable from, and commits are visited newest first, by
+ * generation number from the {@link CommitGraph} and then by commit time. The first
+ * time a commit turns out to be reachable from both sides it is a candidate, and
+ * everything below it is marked stale. The walk stops as soon as only stale commits
+ * are left to visit, because nothing below them can be a better candidate.
+ *
+ * A candidate that is an ancestor of another one is then dropped, so several merge
+ * bases are only returned when none of them is better than the others (criss-cross
+ * merges).
+ *
+ * Commits that are not in the commit graph get an infinite generation, so they are
+ * visited before every commit in the graph, which is correct because their ancestors
+ * may be in the graph but not the other way round. Without a graph the walk is ordered
+ * by commit time alone.
+ */
+public class MergeBase {
+
+    /** Generation of commits that are not in the commit graph. */
+    static final int GENERATION_INFINITY = Integer.MAX_VALUE;
+
+    // Paint flags
+    private static final int PARENT1 = 1;
+    private static final int PARENT2 = 2;
+    private static final int STALE = 4;
+    private static final int RESULT = 8;
+
+    // Newest first: highest generation, then latest commit time
+    private static final Comparator<Node> NEWEST_FIRST = (a, b) -> {
+        int byGeneration = Integer.compare(b.generation, a.generation);
+        return byGeneration != 0 ? byGeneration : Long.compare(b.time, a.time);
+    };
+
+    private final CommitGraph graph = CommitGraph.get();
+    private final Map<ObjectId, Node> nodes = new HashMap<>();
+
+    /**
+     * A commit taking part in the walk.
+     */
+    private static class Node {
+        final ObjectId id;
+        final int generation;
+        final long time;
+        final List<ObjectId> parents;
+        int flags;
+        boolean queued;
+
+        Node(ObjectId id, int generation, long time, List<ObjectId> parents) {
+            this.id = id;
+            this.generation = generation;
+            this.time = time;
+            this.parents = parents;
+        }
+    }
+
+    private MergeBase() {
+    }
+
+    /**
+     * Finds all best common ancestors of two commits.
+     *
+     * @param one The first commit.
+     * @param two The second commit.
+     * @return The merge bases, newest first; empty if the commits have unrelated histories.
+     * @throws IOException If a commit cannot be read.
+     */
+    public static List<ObjectId> findAll(ObjectId one, ObjectId two) throws IOException {
+        return new MergeBase().mergeBases(one, two);
+    }
+
+    /**
+     * Finds the best common ancestor of two commits.
+     *
+     * @param one The first commit.
+     * @param two The second commit.
+     * @return The newest merge base, or null if the commits have unrelated histories.
+     * @throws IOException If a commit cannot be read.
+     */
+    public static ObjectId findBest(ObjectId one, ObjectId two) throws IOException {
+        List<ObjectId> bases = findAll(one, two);
+        return bases.isEmpty() ? null : bases.get(0);
+    }
+
+    /**
+     * Prints the merge base of two commits, or all of them, for the `merge-base` command.
+     *
+     * @param first  A branch name or commit id.
+     * @param second A branch name or commit id.
+     * @param all    Whether to print every merge base rather than the best one.
+     */
+    public static void showMergeBase(String first, String second, boolean all) {
+        try {
+            ObjectId one = GitUtils.resolveCommit(first);
+            ObjectId two = GitUtils.resolveCommit(second);
+            if (one == null || two == null) {
+                Output.error("Error: Not a valid commit: " + (one == null ? first : second));
+                return;
+            }
+
+            List<ObjectId> bases = findAll(one, two);
+            if (bases.isEmpty()) {
+                Output.println("No common ancestor found.");
+                return;
+            }
+            for (ObjectId base : all ? bases : bases.subList(0, 1)) {
+                Output.record("commit", base.name(), "id", base.name());
+            }
+        } catch (IOException e) {
+            Output.error("Error finding merge base: " + e.getMessage());
+        }
+    }
+
+    // Paint down from both commits, then drop candidates that are ancestors of other candidates
+    private List<ObjectId> mergeBases(ObjectId one, ObjectId two) throws IOException {
+        if (one.equals(two)) {
+            return Collections.singletonList(one);
+        }
+
+        List<Node> candidates = paintDown(node(one), Collections.singletonList(node(two)));
+        // A candidate painted stale later on was reached from a better candidate
+        candidates.removeIf(candidate -> (candidate.flags & STALE) != 0);
+        candidates.sort(NEWEST_FIRST);
+        List<Node> bases = candidates.size() > 1 ? removeRedundant(candidates) : candidates;
+
+        List<ObjectId> ids = new ArrayList<>(bases.size());
+        for (Node base : bases) {
+            ids.add(base.id);
+        }
+        return ids;
+    }
+
+    // Mark commits with the sides they are reachable from until only stale commits are queued;
+    // commits reachable from both are returned in the order they were found
+    private List<Node> paintDown(Node one, List<Node> twos) throws IOException {
+        PriorityQueue<Node> queue = new PriorityQueue<>(NEWEST_FIRST);
+        one.flags |= PARENT1;
+        one.queued = true;
+        queue.add(one);
+        for (Node two : twos) {
+            two.flags |= PARENT2;
+            if (!two.queued) {
+                two.queued = true;
+                queue.add(two);
+            }
+        }
+        int nonStale = queue.size();
+
+        List<Node> results = new ArrayList<>();
+        while (nonStale > 0) {
+            Node node = queue.poll();
+            node.queued = false;
+            int flags = node.flags & (PARENT1 | PARENT2 | STALE);
+            if ((flags & STALE) == 0) {
+                nonStale--;
+            }
+            if (flags == (PARENT1 | PARENT2)) {
+                if ((node.flags & RESULT) == 0) {
+                    node.flags |= RESULT;
+                    results.add(node);
+                }
+                // Everything below a common ancestor is a worse candidate
+                flags |= STALE;
+            }
+
+            for (ObjectId parentId : node.parents) {
+                Node parent = node(parentId);
+                if ((parent.flags & flags) == flags) {
+                    continue;
+                }
+                boolean wasStale = (parent.flags & STALE) != 0;
+                parent.flags |= flags;
+                boolean isStale = (parent.flags & STALE) != 0;
+                if (!parent.queued) {
+                    parent.queued = true;
+                    queue.add(parent);
+                    if (!isStale) {
+                        nonStale++;
+                    }
+                } else if (!wasStale && isStale) {
+                    nonStale--;
+                }
+            }
+        }
+        return results;
+    }
+
+    // Keep only the candidates that are not reachable from another candidate: painting down
+    // from one candidate against the others marks whichever side reaches the other
+    private List<Node> removeRedundant(List<Node> candidates) throws IOException {
+        boolean[] redundant = new boolean[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            if (redundant[i]) {
+                continue;
+            }
+            List<Node> others = new ArrayList<>();
+            for (int j = 0; j < candidates.size(); j++) {
+                if (j != i && !redundant[j]) {
+                    others.add(candidates.get(j));
+                }
+            }
+            clearFlags();
+            paintDown(candidates.get(i), others);
+            if ((candidates.get(i).flags & PARENT2) != 0) {
+                redundant[i] = true;
+            }
+            for (int j = 0; j < candidates.size(); j++) {
+                if (j != i && (candidates.get(j).flags & PARENT1) != 0) {
+                    redundant[j] = true;
+                }
+            }
+        }
+
+        List<Node> bases = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (!redundant[i]) {
+                bases.add(candidates.get(i));
+            }
+        }
+        return bases;
+    }
+
+    // Forget the marks of an earlier walk
+    private void clearFlags() {
+        for (Node node : nodes.values()) {
+            node.flags = 0;
+            node.queued = false;
+        }
+    }
+
+    // Load a commit once, from the commit graph if it has it
+    private Node node(ObjectId id) throws IOException {
+        Node node = nodes.get(id);
+        if (node != null) {
+            return node;
+        }
+
+        int position = graph != null ? graph.findPosition(id) : -1;
+        if (position >= 0) {
+            node = new Node(id, graph.getGeneration(position), graph.getCommitTime(position), graph.getParents(position));
+        } else {
+            CommitObject commit = ObjectDatabase.readCommit(id);
+            if (commit == null) {
+                throw new IOException("Missing commit " + id);
+            }
+            node = new Node(id, GENERATION_INFINITY, commit.getTime(), commit.getParents());
+        }
+        nodes.put(id, node);
+        return node;
+    }
+}
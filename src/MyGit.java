@@ -1,4 +1,5 @@
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * The `MyGit` class acts as the entry point for the MyGit version control system.
@@ -9,10 +10,50 @@ public class MyGit {
     /**
      * The main method processes user input and performs the corresponding Git-like commands.
      *
-     * @param args Command-line arguments, where the first argument is the command and
-     *             subsequent arguments are parameters for the command.
+     * @param args Command-line arguments: optionally `--porcelain` and `-z` to select the
+     *             output format (see {@link Output}), then the command and its parameters.
      */
     public static void main(String[] args) {
+        try {
+            execute(args);
+        } finally {
+            // Everything a command prints is buffered and written out once here
+            Output.flush();
+        }
+    }
+
+    /**
+     * Runs one command line without flushing its output, for {@link #main} and the
+     * {@link Daemon}.
+     *
+     * @param args The output format options, the command and its parameters.
+     */
+    static void execute(String[] args) {
+
+        // Leading --porcelain and -z select the output format of whichever command follows
+        int first = 0;
+        boolean porcelain = false;
+        boolean nulTerminated = false;
+        for (; first < args.length && (args[first].equals("--porcelain") || args[first].equals("-z")); first++) {
+            porcelain |= args[first].equals("--porcelain");
+            nulTerminated |= args[first].equals("-z");
+        }
+        Output.configure(porcelain, nulTerminated);
+
+        runCommand(Arrays.copyOfRange(args, first, args.length));
+
+        // Report object cache effectiveness when run with -Dmygit.stats=true
+        if (Boolean.getBoolean("mygit.stats")) {
+            ObjectDatabase.printStatistics();
+        }
+    }
+
+    /**
+     * Runs one command.
+     *
+     * @param args The command and its parameters.
+     */
+    static void runCommand(String[] args) {
 
         // Display a welcome message and help when no arguments are provided
         if (args.length < 1) {
@@ -36,13 +77,19 @@ public class MyGit {
                 } else if (args.length >= 2) {
                     StagingArea.stageFile(args[1]);
                 } else {
-                    System.out.println("Usage: java MyGit add <filename> or java MyGit add .");
+                    Output.error("Usage: java MyGit add <filename> or java MyGit add .");
                 }
                 break;
 
-            case "status":
-                StagingArea.showStagedFiles();
+            case "status": {
+                List<String> options = Arrays.asList(args).subList(1, args.length);
+                if (options.stream().allMatch(o -> o.equals("--porcelain") || o.equals("-z") || o.equals("-uno"))) {
+                    Status.showStatus(options.contains("--porcelain"), options.contains("-z"), !options.contains("-uno"));
+                } else {
+                    Output.error("Usage: java MyGit status [--porcelain] [-z] [-uno]");
+                }
                 break;
+            }
 
             case "unstage":
                 if (args.length == 2 && args[1].equals("--all")) {
@@ -50,21 +97,38 @@ public class MyGit {
                 } else if (args.length >= 2) {
                     StagingArea.unstageFiles(Arrays.asList(Arrays.copyOfRange(args, 1, args.length)));
                 } else {
-                    System.out.println("Usage: java MyGit unstage <filename>... or java MyGit unstage --all");
+                    Output.error("Usage: java MyGit unstage <filename>... or java MyGit unstage --all");
                 }
                 break;
 
+            case "rm": {
+                boolean cached = args.length >= 2 && args[1].equals("--cached");
+                int first = cached ? 2 : 1;
+                if (args.length > first) {
+                    StagingArea.removeFiles(Arrays.asList(Arrays.copyOfRange(args, first, args.length)), cached);
+                } else {
+                    Output.error("Usage: java MyGit rm [--cached] <filename>...");
+                }
+                break;
+            }
+
             case "commit":
                 if (args.length >= 2) {
                     String message = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
                     Commit.createCommit(message);
                 } else {
-                    System.out.println("Usage: java MyGit commit <message>");
+                    Output.error("Usage: java MyGit commit <message>");
                 }
                 break;
 
             case "log":
-                Commit.showCommitHistory();
+                Log.Options logOptions = Log.Options.parse(Arrays.asList(args).subList(1, args.length));
+                if (logOptions != null) {
+                    Log.showLog(logOptions);
+                } else {
+                    Output.error("Usage: java MyGit log [-n <count>] [--since=<date>] [--until=<date>] [--author=<regex>]"
+                            + " [--oneline | --format=<format>] [-- <path>]");
+                }
                 break;
 
             case "branch":
@@ -79,7 +143,7 @@ public class MyGit {
                 if (args.length == 2) {
                     Branch.switchBranch(args[1]);
                 } else {
-                    System.out.println("Usage: java MyGit checkout <branch_name>");
+                    Output.error("Usage: java MyGit checkout <branch_name>");
                 }
                 break;
 
@@ -87,7 +151,17 @@ public class MyGit {
                 if (args.length == 2) {
                     Merge.mergeBranch(args[1]);
                 } else {
-                    System.out.println("Usage: java MyGit merge <branch_name>");
+                    Output.error("Usage: java MyGit merge <branch_name>");
+                }
+                break;
+
+            case "merge-base":
+                if (args.length == 3) {
+                    MergeBase.showMergeBase(args[1], args[2], false);
+                } else if (args.length == 4 && args[1].equals("--all")) {
+                    MergeBase.showMergeBase(args[2], args[3], true);
+                } else {
+                    Output.error("Usage: java MyGit merge-base [--all] <commit> <commit>");
                 }
                 break;
 
@@ -99,7 +173,7 @@ public class MyGit {
                 if (args.length == 3) {
                     RepositoryCloner.cloneRepository(args[1], args[2]);
                 } else {
-                    System.out.println("Usage: java MyGit clone <source_path> <destination_path>");
+                    Output.error("Usage: java MyGit clone <source_path> <destination_path>");
                 }
                 break;
 
@@ -109,7 +183,65 @@ public class MyGit {
                 } else if (args.length == 2) {
                     Diff.showWorkingDirectoryDiff(args[1]);
                 } else {
-                    System.out.println("Usage: java MyGit diff <filename> or java MyGit diff <branch1> <branch2>");
+                    Output.error("Usage: java MyGit diff <filename> or java MyGit diff <branch1> <branch2>");
+                }
+                break;
+
+            case "gc":
+                if (args.length == 1) {
+                    GarbageCollector.gc();
+                } else if (args.length == 2 && GarbageCollector.parsePruneOption(args[1]) >= 0) {
+                    GarbageCollector.gc(GarbageCollector.parsePruneOption(args[1]));
+                } else {
+                    Output.error("Usage: java MyGit gc [--prune=<days>|--prune=now]");
+                }
+                break;
+
+            case "count-objects":
+                GarbageCollector.countObjects(Arrays.asList(args).subList(1, args.length));
+                break;
+
+            case "repack":
+                GarbageCollector.repack();
+                break;
+
+            case "migrate-objects":
+                ObjectStore.migrateFlatLayout();
+                break;
+
+            case "commit-graph":
+                if (args.length == 2 && args[1].equals("write")) {
+                    CommitGraph.writeGraph();
+                } else {
+                    Output.error("Usage: java MyGit commit-graph write");
+                }
+                break;
+
+            case "fsmonitor":
+                if (args.length == 2 && args[1].equals("start")) {
+                    FileSystemMonitor.start();
+                } else if (args.length == 2 && args[1].equals("stop")) {
+                    FileSystemMonitor.stop();
+                } else if (args.length == 2 && args[1].equals("status")) {
+                    FileSystemMonitor.showStatus();
+                } else if (args.length == 2 && args[1].equals("run")) {
+                    FileSystemMonitor.run();
+                } else {
+                    Output.error("Usage: java MyGit fsmonitor start|stop|status");
+                }
+                break;
+
+            case "daemon":
+                if (args.length == 2 && args[1].equals("start")) {
+                    Daemon.start();
+                } else if (args.length == 2 && args[1].equals("stop")) {
+                    Daemon.stop();
+                } else if (args.length == 2 && args[1].equals("status")) {
+                    Daemon.showStatus();
+                } else if (args.length == 2 && args[1].equals("run")) {
+                    Daemon.run();
+                } else {
+                    Output.error("Usage: java MyGit daemon start|stop|status");
                 }
                 break;
 
@@ -118,7 +250,7 @@ public class MyGit {
                 break;
 
             default:
-                System.out.println("Unknown command: " + command);
+                Output.error("Unknown command: " + command);
                 Help.showHelp();
         }
     }
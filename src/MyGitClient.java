@@ -0,0 +1,50 @@
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * The `MyGitClient` class is the thin client of the {@link Daemon}. It takes the same
+ * arguments as {@link MyGit}, forwards them to the daemon of the repository in the
+ * current directory and copies the output back as it arrives:
+ * <pre>
+ *   java MyGitClient status
+ * </pre>
+ * It only loads the few classes needed to talk to the socket. When no daemon is
+ * running, or the command runs until stopped, it runs the command in its own process,
+ * so it can always stand in for `MyGit`.
+ */
+public class MyGitClient {
+
+    /**
+     * Runs a command through the daemon, or directly if there is none.
+     *
+     * @param args The command line, as for {@link MyGit#main}.
+     */
+    public static void main(String[] args) {
+        if (Daemon.isLongRunning(Arrays.asList(args))) {
+            MyGit.main(args); // The daemon refuses commands that would keep it busy
+            return;
+        }
+
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(Daemon.SOCKET_FILE));
+        } catch (IOException e) {
+            MyGit.main(args);
+            return;
+        }
+
+        try (channel) {
+            Daemon.sendRequest(channel, Arrays.asList(args));
+            Channels.newInputStream(channel).transferTo(System.out);
+        } catch (IOException e) {
+            // Kept out of the command's output, which may be porcelain records
+            System.out.flush();
+            System.err.println("Error talking to the daemon: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.flush();
+    }
+}
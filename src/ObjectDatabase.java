@@ -0,0 +1,204 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * The `ObjectDatabase` class is the single read path for objects.
+ * Parsed commits and trees are kept in a least-recently-used cache bounded by their
+ * approximate size, so history walks and tree comparisons that visit the same objects
+ * repeatedly within one command only read and parse each of them once.
+ * Blobs go straight to the {@link ObjectStore} and are never cached, since they can be large.
+ *
+ * History walks that only need the parents or root tree of commits ask for those
+ * alone; they are answered from the {@link CommitGraph} when it contains the commit,
+ * without opening the commit object at all.
+ */
+public class ObjectDatabase {
+
+    // Upper bound on the approximate memory held by cached commits and trees
+    private static final long CACHE_LIMIT_BYTES = 16L * 1024 * 1024;
+
+    // Fixed cost charged per cached object on top of its content size
+    private static final int ENTRY_OVERHEAD = 96;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private static final LinkedHashMap<ObjectId, CachedObject> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private static long cachedBytes;
+    private static long hits;
+    private static long misses;
+
+    /**
+     * Reads and parses a commit.
+     *
+     * @param id The commit id.
+     * @return The commit, or null if it does not exist.
+     * @throws IOException If the object cannot be read or is not a valid commit.
+     */
+    public static CommitObject readCommit(ObjectId id) throws IOException {
+        CachedObject cached = lookup(id);
+        if (cached != null && cached.commit != null) {
+            return cached.commit;
+        }
+
+        GitObject object = ObjectStore.readObject(id);
+        if (object == null) {
+            return null;
+        }
+        CommitObject commit;
+        try {
+            commit = CommitObject.parse(id, object.getData());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt commit " + id + ": " + e.getMessage());
+        }
+        store(id, new CachedObject(commit, null, object.getData().length));
+        return commit;
+    }
+
+    /**
+     * Reads and parses a tree.
+     *
+     * @param id The tree id.
+     * @return The tree, or null if it does not exist.
+     * @throws IOException If the object cannot be read or is not a valid tree.
+     */
+    public static TreeObject readTree(ObjectId id) throws IOException {
+        CachedObject cached = lookup(id);
+        if (cached != null && cached.tree != null) {
+            return cached.tree;
+        }
+
+        GitObject object = ObjectStore.readObject(id);
+        if (object == null) {
+            return null;
+        }
+        TreeObject tree;
+        try {
+            tree = TreeObject.parse(id, object);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt tree " + id + ": " + e.getMessage());
+        }
+        store(id, new CachedObject(null, tree, object.getData().length));
+        return tree;
+    }
+
+    /**
+     * Reads the parents of a commit, from the commit graph if possible.
+     *
+     * @param id The commit id.
+     * @return The parent ids in order, or an empty list if the commit does not exist.
+     * @throws IOException If the commit has to be read and cannot be.
+     */
+    public static List<ObjectId> readParents(ObjectId id) throws IOException {
+        CommitGraph graph = CommitGraph.get();
+        int position = graph != null ? graph.findPosition(id) : -1;
+        if (position >= 0) {
+            return graph.getParents(position);
+        }
+        CommitObject commit = readCommit(id);
+        return commit != null ? commit.getParents() : Collections.emptyList();
+    }
+
+    /**
+     * Reads the root tree of a commit, from the commit graph if possible.
+     *
+     * @param id The commit id.
+     * @return The tree id, or null if the commit does not exist or has no tree.
+     * @throws IOException If the commit has to be read and cannot be.
+     */
+    public static ObjectId readCommitTree(ObjectId id) throws IOException {
+        CommitGraph graph = CommitGraph.get();
+        int position = graph != null ? graph.findPosition(id) : -1;
+        if (position >= 0) {
+            return graph.getTree(position);
+        }
+        CommitObject commit = readCommit(id);
+        return commit != null ? commit.getTree() : null;
+    }
+
+    /**
+     * Reads an object without parsing or caching it, typically a blob.
+     *
+     * @param id The object id.
+     * @return The object, or null if it does not exist.
+     * @throws IOException If the object cannot be read.
+     */
+    public static GitObject readObject(ObjectId id) throws IOException {
+        return ObjectStore.readObject(id);
+    }
+
+    /**
+     * @return The number of commit and tree reads served from the cache.
+     */
+    public static synchronized long getCacheHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of commit and tree reads that had to go to the object store.
+     */
+    public static synchronized long getCacheMisses() {
+        return misses;
+    }
+
+    /**
+     * Drops every cached object and resets the counters.
+     */
+    public static synchronized void clearCache() {
+        cache.clear();
+        cachedBytes = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Prints the cache counters, for `-Dmygit.stats=true`.
+     */
+    public static synchronized void printStatistics() {
+        Output.println("Object cache: " + hits + " hit(s), " + misses + " miss(es), "
+                + cache.size() + " object(s) / " + cachedBytes + " bytes cached.");
+    }
+
+    // Look up a cached object, counting the hit or miss
+    private static synchronized CachedObject lookup(ObjectId id) {
+        CachedObject cached = cache.get(id);
+        if (cached != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return cached;
+    }
+
+    // Add an object to the cache, evicting the least recently used ones to stay within the limit
+    private static synchronized void store(ObjectId id, CachedObject object) {
+        CachedObject previous = cache.put(id, object);
+        if (previous != null) {
+            cachedBytes -= previous.weight;
+        }
+        cachedBytes += object.weight;
+
+        Iterator<CachedObject> eldest = cache.values().iterator();
+        while (cachedBytes > CACHE_LIMIT_BYTES && eldest.hasNext()) {
+            CachedObject evicted = eldest.next();
+            if (evicted == object) {
+                break; // Never evict the object just added, however large
+            }
+            cachedBytes -= evicted.weight;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * A cached commit or tree with the memory it is charged for.
+     */
+    private static class CachedObject {
+        final CommitObject commit;
+        final TreeObject tree;
+        final long weight;
+
+        CachedObject(CommitObject commit, TreeObject tree, long contentSize) {
+            this.commit = commit;
+            this.tree = tree;
+            this.weight = contentSize + ENTRY_OVERHEAD;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The `ObjectExistenceIndex` class answers "is this object already stored?" from memory.
+ * It is built once by listing the 256 fan-out directories, which costs a few hundred
+ * directory reads instead of one `stat` per object, and keeps the loose ids in a sorted
+ * table searched by binary search. Packed objects are checked against the memory-mapped
+ * pack indexes that were present when it was built, and objects written afterwards by
+ * this process are added as they are installed.
+ *
+ * It is only worth building for bulk operations such as `add .`; a snapshot can miss
+ * objects written concurrently by another process, which at worst means writing an
+ * identical object a second time.
+ */
+public class ObjectExistenceIndex {
+
+    private final ObjectId[] looseIds;
+    private final List<PackFile> packs;
+    private final Set<ObjectId> added = ConcurrentHashMap.newKeySet();
+
+    private ObjectExistenceIndex(ObjectId[] looseIds, List<PackFile> packs) {
+        this.looseIds = looseIds;
+        this.packs = packs;
+    }
+
+    /**
+     * Builds an index of every loose and packed object currently in the repository.
+     *
+     * @return The index.
+     * @throws IOException If the objects directory cannot be listed.
+     */
+    public static ObjectExistenceIndex load() throws IOException {
+        List<ObjectId> ids = new ArrayList<>();
+        Path objectsDir = Paths.get(Constants.OBJECTS_DIR);
+        if (Files.isDirectory(objectsDir)) {
+            try (DirectoryStream<Path> fanOutDirs = Files.newDirectoryStream(objectsDir)) {
+                for (Path fanOutDir : fanOutDirs) {
+                    String prefix = fanOutDir.getFileName().toString();
+                    if (prefix.length() != 2 || !Files.isDirectory(fanOutDir)) {
+                        continue; // Skip the pack directory and temporary files
+                    }
+                    try (DirectoryStream<Path> objects = Files.newDirectoryStream(fanOutDir)) {
+                        for (Path object : objects) {
+                            String name = prefix + object.getFileName().toString();
+                            if (ObjectId.isId(name)) {
+                                ids.add(ObjectId.fromString(name));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        ObjectId[] sorted = ids.toArray(new ObjectId[0]);
+        Arrays.sort(sorted);
+        return new ObjectExistenceIndex(sorted, ObjectStore.getPacks());
+    }
+
+    /**
+     * @param id The object id.
+     * @return {@code true} if the object was stored when the index was built or has been added since.
+     */
+    public boolean contains(ObjectId id) {
+        if (Arrays.binarySearch(looseIds, id) >= 0 || added.contains(id)) {
+            return true;
+        }
+        for (PackFile pack : packs) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records an object that has just been stored.
+     *
+     * @param id The object id.
+     */
+    public void add(ObjectId id) {
+        added.add(id);
+    }
+}
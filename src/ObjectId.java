@@ -0,0 +1,306 @@
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The `ObjectId` class is the 20-byte SHA-1 name of an object.
+ * It is held as five ints rather than a 40-character string, which makes ids
+ * cheap to hash, compare and store in maps and sets, and lets them be written
+ * to binary files without any hex conversion.
+ */
+public final class ObjectId implements Comparable<ObjectId> {
+
+    /** Length of an id in raw bytes. */
+    public static final int RAW_LENGTH = 20;
+
+    /** Length of an id as a hex string. */
+    public static final int HEX_LENGTH = 40;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Value of each ASCII character as a hex digit, or -1
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private final int w1;
+    private final int w2;
+    private final int w3;
+    private final int w4;
+    private final int w5;
+
+    private ObjectId(int w1, int w2, int w3, int w4, int w5) {
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+        this.w4 = w4;
+        this.w5 = w5;
+    }
+
+    /**
+     * Creates an id from raw bytes.
+     *
+     * @param raw    The buffer holding the id.
+     * @param offset The position of the first byte of the id.
+     * @return The id.
+     */
+    public static ObjectId fromRaw(byte[] raw, int offset) {
+        return new ObjectId(
+                readInt(raw, offset),
+                readInt(raw, offset + 4),
+                readInt(raw, offset + 8),
+                readInt(raw, offset + 12),
+                readInt(raw, offset + 16));
+    }
+
+    /**
+     * Creates an id from a 20-byte array.
+     *
+     * @param raw The raw id.
+     * @return The id.
+     */
+    public static ObjectId fromRaw(byte[] raw) {
+        return fromRaw(raw, 0);
+    }
+
+    /**
+     * Creates an id from raw bytes in a buffer, without changing the buffer's position.
+     *
+     * @param buffer The buffer holding the id.
+     * @param offset The absolute position of the first byte of the id.
+     * @return The id.
+     */
+    public static ObjectId fromRaw(ByteBuffer buffer, int offset) {
+        return new ObjectId(
+                buffer.getInt(offset),
+                buffer.getInt(offset + 4),
+                buffer.getInt(offset + 8),
+                buffer.getInt(offset + 12),
+                buffer.getInt(offset + 16));
+    }
+
+    /**
+     * Parses a 40-character hex id.
+     *
+     * @param hex The hex string (either case).
+     * @return The id.
+     * @throws IllegalArgumentException If the string is not a valid id.
+     */
+    public static ObjectId fromString(String hex) {
+        if (hex == null || hex.length() != HEX_LENGTH) {
+            throw new IllegalArgumentException("Invalid object id: " + hex);
+        }
+        return new ObjectId(
+                parseWord(hex, 0),
+                parseWord(hex, 8),
+                parseWord(hex, 16),
+                parseWord(hex, 24),
+                parseWord(hex, 32));
+    }
+
+    /**
+     * Checks whether a string is a valid 40-character hex id.
+     *
+     * @param hex The string to check.
+     * @return {@code true} if {@link #fromString} would accept it.
+     */
+    public static boolean isId(String hex) {
+        if (hex == null || hex.length() != HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HEX_LENGTH; i++) {
+            char c = hex.charAt(i);
+            if (c >= 128 || HEX_VALUES[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes content with SHA-1.
+     *
+     * @param digest A SHA-1 digest that has been fed the content; it is reset.
+     * @return The id of the content.
+     */
+    public static ObjectId fromDigest(MessageDigest digest) {
+        return fromRaw(digest.digest());
+    }
+
+    /**
+     * Creates a SHA-1 digest. Every Java platform is required to provide SHA-1.
+     *
+     * @return A new digest.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * @return The first byte of the id, as an unsigned value (used for fan-out tables).
+     */
+    public int getFirstByte() {
+        return w1 >>> 24;
+    }
+
+    /**
+     * Writes the raw 20 bytes of the id into a buffer.
+     *
+     * @param dst    The destination buffer.
+     * @param offset The position to write the first byte at.
+     */
+    public void copyRawTo(byte[] dst, int offset) {
+        writeInt(dst, offset, w1);
+        writeInt(dst, offset + 4, w2);
+        writeInt(dst, offset + 8, w3);
+        writeInt(dst, offset + 12, w4);
+        writeInt(dst, offset + 16, w5);
+    }
+
+    /**
+     * @return The raw 20 bytes of the id.
+     */
+    public byte[] toByteArray() {
+        byte[] raw = new byte[RAW_LENGTH];
+        copyRawTo(raw, 0);
+        return raw;
+    }
+
+    /**
+     * Compares this id with one stored in a buffer, as unsigned bytes.
+     *
+     * @param buffer The buffer holding the other id.
+     * @param offset The absolute position of its first byte.
+     * @return A negative, zero or positive value as this id sorts before, equal to or after it.
+     */
+    public int compareTo(ByteBuffer buffer, int offset) {
+        int cmp = Integer.compareUnsigned(w1, buffer.getInt(offset));
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(w2, buffer.getInt(offset + 4));
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(w3, buffer.getInt(offset + 8));
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(w4, buffer.getInt(offset + 12));
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(w5, buffer.getInt(offset + 16));
+        }
+        return cmp;
+    }
+
+    /**
+     * @return The id as a 40-character lowercase hex string.
+     */
+    public String name() {
+        char[] hex = new char[HEX_LENGTH];
+        formatWord(hex, 0, w1);
+        formatWord(hex, 8, w2);
+        formatWord(hex, 16, w3);
+        formatWord(hex, 24, w4);
+        formatWord(hex, 32, w5);
+        return new String(hex);
+    }
+
+    /**
+     * @param length The number of hex characters to keep.
+     * @return An abbreviated hex form of the id.
+     */
+    public String abbreviate(int length) {
+        return name().substring(0, Math.min(length, HEX_LENGTH));
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Integer.compareUnsigned(w1, other.w1);
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(w2, other.w2);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(w3, other.w3);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(w4, other.w4);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(w5, other.w5);
+        }
+        return cmp;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return w1 == other.w1 && w2 == other.w2 && w3 == other.w3 && w4 == other.w4 && w5 == other.w5;
+    }
+
+    @Override
+    public int hashCode() {
+        // SHA-1 output is uniformly distributed, so any word is already a good hash
+        return w2;
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+    // Parse eight hex characters into one big-endian word
+    private static int parseWord(String hex, int offset) {
+        int value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            char c = hex.charAt(i);
+            int digit = c < 128 ? HEX_VALUES[c] : -1;
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid object id: " + hex);
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    // Format one word as eight hex characters
+    private static void formatWord(char[] dst, int offset, int word) {
+        for (int i = 7; i >= 0; i--) {
+            dst[offset + i] = HEX_DIGITS[word & 0x0f];
+            word >>>= 4;
+        }
+    }
+
+    // Read a big-endian int from a byte array
+    private static int readInt(byte[] raw, int offset) {
+        return ((raw[offset] & 0xff) << 24)
+                | ((raw[offset + 1] & 0xff) << 16)
+                | ((raw[offset + 2] & 0xff) << 8)
+                | (raw[offset + 3] & 0xff);
+    }
+
+    // Write a big-endian int into a byte array
+    private static void writeInt(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value >>> 24);
+        dst[offset + 1] = (byte) (value >>> 16);
+        dst[offset + 2] = (byte) (value >>> 8);
+        dst[offset + 3] = (byte) value;
+    }
+}
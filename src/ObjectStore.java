@@ -0,0 +1,492 @@
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.*;
+
+/**
+ * The `ObjectStore` class is the single place that decides where objects live
+ * inside `.mygit/objects`.
+ * Objects are fanned out into up to 256 subdirectories named after the first two
+ * hex characters of their id (`objects/ab/cdef...`), so no directory ever grows
+ * to millions of entries.
+ * Each object is stored as a `<type> <size>\0` header followed by its content,
+ * Deflate-compressed as a whole; the object id is the SHA-1 of that uncompressed
+ * byte sequence.
+ * Objects that have been consolidated into packs (`objects/pack`) are found through
+ * the pack indexes whenever no loose copy exists.
+ */
+public class ObjectStore {
+
+    /** Number of leading hex characters used as the fan-out directory name. */
+    private static final int FAN_OUT_LENGTH = 2;
+
+    /** Name prefix of objects that are still being written. */
+    static final String TEMP_PREFIX = "tmp_obj_";
+
+    // Size of the buffer used to stream file content into the store
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    // Open packs, reloaded whenever the pack directory changes
+    private static List<PackFile> packs = Collections.emptyList();
+    private static FileTime packDirModified;
+
+    // Lookups a bulk operation answers from the filesystem before building an existence index;
+    // listing every fan-out directory only pays off once many objects are looked up
+    private static final int EXISTENCE_INDEX_THRESHOLD = 256;
+
+    // In-memory answer to "is this object stored?" while a bulk operation runs, or null
+    private static volatile ObjectExistenceIndex existenceIndex;
+    private static volatile boolean bulkWrite;
+    private static final AtomicInteger bulkLookups = new AtomicInteger();
+
+    /**
+     * Resolves the loose object path for the given id.
+     *
+     * @param id The object id.
+     * @return The path `objects/<first two chars>/<remaining chars>`.
+     */
+    public static Path objectPath(ObjectId id) {
+        String name = id.name();
+        return Paths.get(Constants.OBJECTS_DIR,
+                name.substring(0, FAN_OUT_LENGTH),
+                name.substring(FAN_OUT_LENGTH));
+    }
+
+    /**
+     * Checks whether an object exists, either loose or in a pack.
+     *
+     * @param id The object id.
+     * @return {@code true} if the object is stored, otherwise {@code false}.
+     * @throws IOException If the pack directory cannot be read.
+     */
+    public static boolean exists(ObjectId id) throws IOException {
+        ObjectExistenceIndex index = existenceIndex;
+        if (index == null && bulkWrite && bulkLookups.incrementAndGet() > EXISTENCE_INDEX_THRESHOLD) {
+            index = loadExistenceIndex();
+        }
+        if (index != null) {
+            return index.contains(id);
+        }
+        return Files.exists(objectPath(id)) || findPack(id) != null;
+    }
+
+    /**
+     * Starts a bulk operation. Once it has looked up more than a few hundred objects, an
+     * {@link ObjectExistenceIndex} is built and answers {@link #exists} until
+     * {@link #endBulkWrite} is called, so storing many objects does not probe the
+     * filesystem once per object while storing a few does not list the whole store.
+     */
+    public static void beginBulkWrite() {
+        bulkLookups.set(0);
+        bulkWrite = true;
+    }
+
+    /**
+     * Drops the index built during a bulk operation; {@link #exists} checks the disk again.
+     */
+    public static void endBulkWrite() {
+        bulkWrite = false;
+        existenceIndex = null;
+    }
+
+    // Build the existence index of the running bulk operation, once
+    private static synchronized ObjectExistenceIndex loadExistenceIndex() throws IOException {
+        if (existenceIndex == null && bulkWrite) {
+            existenceIndex = ObjectExistenceIndex.load();
+        }
+        return existenceIndex;
+    }
+
+    /**
+     * Stores an object and returns its id. Objects that are already present are
+     * not written again.
+     *
+     * @param type    The object type (`blob`, `tree` or `commit`).
+     * @param content The uncompressed object content.
+     * @return The id of the object.
+     * @throws IOException If an I/O error occurs while writing the object.
+     */
+    public static ObjectId writeObject(String type, byte[] content) throws IOException {
+        byte[] header = GitObject.header(type, content.length);
+
+        MessageDigest digest = ObjectId.newDigest();
+        digest.update(header);
+        digest.update(content);
+        ObjectId id = ObjectId.fromDigest(digest);
+
+        if (!exists(id)) {
+            writeLoose(id, header, content);
+        }
+        return id;
+    }
+
+    /**
+     * Writes an object as a loose object even if a pack holds it, unless it is already
+     * stored loose. gc uses this to keep unreachable objects that are still in their
+     * grace period when it deletes the packs they were in.
+     *
+     * @param id       The object id.
+     * @param type     The object type.
+     * @param content  The uncompressed object content.
+     * @param modified The modification time to give the object, so its age is kept.
+     * @return The size of the written file, or 0 if the object was already loose.
+     * @throws IOException If the object cannot be written.
+     */
+    static long writeLooseObject(ObjectId id, String type, byte[] content, FileTime modified) throws IOException {
+        Path objectPath = objectPath(id);
+        if (Files.exists(objectPath)) {
+            return 0;
+        }
+        writeLoose(id, GitObject.header(type, content.length), content);
+        Files.setLastModifiedTime(objectPath, modified);
+        return Files.size(objectPath);
+    }
+
+    // Compress a header and content into a temporary object and install it under the id
+    private static void writeLoose(ObjectId id, byte[] header, byte[] content) throws IOException {
+        Path tempPath = createTempObject();
+        try {
+            try (OutputStream out = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                out.write(header);
+                out.write(content);
+            }
+            installObject(tempPath, id);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Stores a file's content as a blob in a single pass: the file is streamed through
+     * a fixed-size buffer into both the SHA-1 digest and a compressed temporary object,
+     * which is then renamed into place. Memory use does not depend on the file size,
+     * and the bytes are stored exactly as they are on disk. Files that fit in one buffer
+     * are hashed before anything is written, so re-adding an unchanged small file
+     * creates no temporary object at all.
+     *
+     * @param file The file to store.
+     * @return The id of the blob.
+     * @throws IOException If the file cannot be read, changes size while being read,
+     *                     or the object cannot be written.
+     */
+    public static ObjectId writeBlob(Path file) throws IOException {
+        long size = Files.size(file);
+        if (size <= STREAM_BUFFER_SIZE) {
+            byte[] content = Files.readAllBytes(file);
+            if (content.length != size) {
+                throw new IOException(file + " changed while it was being stored");
+            }
+            return writeObject(GitObject.BLOB, content);
+        }
+
+        byte[] header = GitObject.header(GitObject.BLOB, size);
+        MessageDigest digest = ObjectId.newDigest();
+        digest.update(header);
+
+        Path tempPath = createTempObject();
+        try {
+            long copied = 0;
+            try (InputStream in = Files.newInputStream(file);
+                 OutputStream out = new DeflaterOutputStream(
+                         new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                out.write(header);
+                byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    copied += read;
+                }
+            }
+            if (copied != size) {
+                throw new IOException(file + " changed while it was being stored");
+            }
+
+            ObjectId id = ObjectId.fromDigest(digest);
+            if (!exists(id)) {
+                installObject(tempPath, id);
+            }
+            return id;
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Computes the id a file would have as a blob, without storing it.
+     *
+     * @param file The file to hash.
+     * @return The id of the blob.
+     * @throws IOException If the file cannot be read or changes size while being read.
+     */
+    public static ObjectId hashBlob(Path file) throws IOException {
+        long size = Files.size(file);
+        MessageDigest digest = ObjectId.newDigest();
+        digest.update(GitObject.header(GitObject.BLOB, size));
+
+        long hashed = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+                hashed += read;
+            }
+        }
+        if (hashed != size) {
+            throw new IOException(file + " changed while it was being hashed");
+        }
+        return ObjectId.fromDigest(digest);
+    }
+
+    // Create an empty temporary file in the objects directory for an object being written
+    private static Path createTempObject() throws IOException {
+        Path objectsDir = Paths.get(Constants.OBJECTS_DIR);
+        Files.createDirectories(objectsDir);
+        return GitUtils.createTempFile(objectsDir, TEMP_PREFIX, "");
+    }
+
+    // Atomically rename a completed temporary object to its final fan-out location
+    private static void installObject(Path tempPath, ObjectId id) throws IOException {
+        Path objectPath = objectPath(id);
+        Files.createDirectories(objectPath.getParent());
+        try {
+            Files.move(tempPath, objectPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Another writer stored the same object first; its content is identical
+        }
+
+        ObjectExistenceIndex index = existenceIndex;
+        if (index != null) {
+            index.add(id);
+        }
+    }
+
+    /**
+     * Opens an object for streaming. Only the header is read up front; content is
+     * inflated as the caller reads it. Objects written before typed storage existed
+     * are returned as-is with a null type.
+     *
+     * @param id The object id.
+     * @return A stream over the object content, or null if the object does not exist.
+     * @throws IOException If an I/O error occurs or the header is malformed.
+     */
+    public static ObjectStream openObject(ObjectId id) throws IOException {
+        Path objectPath = objectPath(id);
+        if (!Files.exists(objectPath)) {
+            PackFile pack = findPack(id);
+            return pack != null ? pack.openObject(id) : null;
+        }
+
+        ObjectStream typed = openTyped(objectPath);
+        if (typed != null) {
+            return typed;
+        }
+        // Legacy object: raw, uncompressed content without a header
+        return new ObjectStream(new BufferedInputStream(Files.newInputStream(objectPath)), null, Files.size(objectPath));
+    }
+
+    // Open a loose object in the typed, compressed format, or return null if it is a legacy
+    // object. Raw content can begin with bytes that pass the zlib header check, so an object
+    // only counts as typed once its header inflates to a known type and a size
+    private static ObjectStream openTyped(Path objectPath) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(objectPath));
+        try {
+            in.mark(2);
+            int first = in.read();
+            int second = in.read();
+            in.reset();
+
+            if (isZlibHeader(first, second)) {
+                InputStream inflated = new InflaterInputStream(in);
+                String type = readHeaderField(inflated, ' ');
+                long size = Long.parseLong(readHeaderField(inflated, '\0'));
+                if (isType(type) && size >= 0) {
+                    return new ObjectStream(inflated, type, size);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not a deflate stream after all; read the object raw
+        }
+        in.close();
+        return null;
+    }
+
+    /**
+     * Reads an object fully into memory.
+     *
+     * @param id The object id.
+     * @return The loaded object, or null if the object does not exist.
+     * @throws IOException If an I/O error occurs while reading the object.
+     */
+    public static GitObject readObject(ObjectId id) throws IOException {
+        ObjectStream stream = openObject(id);
+        if (stream == null) {
+            return null;
+        }
+        try (stream) {
+            return stream.load();
+        }
+    }
+
+    /**
+     * Returns the packs currently in the repository, reopening them if the pack
+     * directory has changed since they were last loaded.
+     *
+     * @return The open packs.
+     * @throws IOException If the pack directory cannot be read.
+     */
+    public static synchronized List<PackFile> getPacks() throws IOException {
+        Path packDir = Paths.get(PackWriter.PACK_DIR);
+        FileTime modified = Files.isDirectory(packDir) ? Files.getLastModifiedTime(packDir) : null;
+        if (Objects.equals(modified, packDirModified)) {
+            return packs;
+        }
+
+        for (PackFile pack : packs) {
+            pack.close();
+        }
+        List<PackFile> opened = new ArrayList<>();
+        if (modified != null) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(packDir, "pack-*.pack")) {
+                for (Path packPath : entries) {
+                    if (Files.exists(PackFile.indexPathFor(packPath))) {
+                        opened.add(PackFile.open(packPath));
+                    }
+                }
+            }
+        }
+        packs = opened;
+        packDirModified = modified;
+        return packs;
+    }
+
+    // Find the pack that contains the given object, if any
+    private static PackFile findPack(ObjectId id) throws IOException {
+        for (PackFile pack : getPacks()) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    // Check whether two bytes form a valid zlib stream header as Deflater writes it:
+    // CM = deflate, CINFO <= 7 (window of at most 32 KiB), no preset dictionary, FCHECK correct
+    private static boolean isZlibHeader(int first, int second) {
+        return first >= 0 && second >= 0
+                && (first & 0x0f) == 8
+                && (first >> 4) <= 7
+                && (second & 0x20) == 0
+                && ((first << 8) | second) % 31 == 0;
+    }
+
+    // Check whether a header names one of the object types
+    private static boolean isType(String type) {
+        return type.equals(GitObject.BLOB) || type.equals(GitObject.TREE) || type.equals(GitObject.COMMIT);
+    }
+
+    // Read one header field up to the given terminator
+    private static String readHeaderField(InputStream in, char terminator) throws IOException {
+        StringBuilder field = new StringBuilder();
+        int b;
+        while ((b = in.read()) != terminator) {
+            if (b < 0 || field.length() > 32) {
+                throw new IOException("malformed object header");
+            }
+            field.append((char) b);
+        }
+        return field.toString();
+    }
+
+    /**
+     * Moves every object stored directly in `.mygit/objects` (the old flat layout)
+     * into its fan-out subdirectory, then rewrites raw legacy objects in the typed,
+     * compressed format (see {@link #rewriteLegacyObjects()}). Running it on an already
+     * migrated repository is a no-op.
+     */
+    public static void migrateFlatLayout() {
+        Path objectsDir = Paths.get(Constants.OBJECTS_DIR);
+        if (!Files.isDirectory(objectsDir)) {
+            Output.error("Error: Not a MyGit repository (or objects directory missing).");
+            return;
+        }
+
+        int moved = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(objectsDir)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (!Files.isRegularFile(entry)) {
+                    continue; // Fan-out and pack directories stay where they are
+                }
+
+                if (!ObjectId.isId(name)) {
+                    continue; // Not an object id (e.g. a temporary file); leave it alone
+                }
+                Path target = objectPath(ObjectId.fromString(name));
+                Files.createDirectories(target.getParent());
+                if (Files.exists(target)) {
+                    Files.delete(entry); // Same hash, same content: keep the fanned-out copy
+                } else {
+                    Files.move(entry, target, StandardCopyOption.ATOMIC_MOVE);
+                }
+                moved++;
+            }
+            Output.println("Migrated " + moved + " object(s) to the fan-out layout.");
+
+            int[] rewritten = rewriteLegacyObjects();
+            Output.println("Rewrote " + rewritten[0] + " legacy object(s) in the typed, compressed format"
+                    + (rewritten[1] > 0 ? "; " + rewritten[1] + " unreachable legacy object(s) left as they are." : "."));
+        } catch (IOException e) {
+            Output.error("Error migrating objects: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the loose objects that were stored raw, without a header, in the typed,
+     * compressed format. A raw object does not record its type, so the type is taken
+     * from the reachability walk (a commit's tree, a tree's entries); objects that no
+     * branch, HEAD or the index reaches are left raw, and go when gc prunes them. The
+     * rewritten object keeps its id, which is the hash of its raw content.
+     *
+     * @return The number of objects rewritten and the number left raw.
+     * @throws IOException If the reachable objects cannot be found or an object cannot be written.
+     */
+    static int[] rewriteLegacyObjects() throws IOException {
+        Map<ObjectId, GarbageCollector.ReachableObject> reachable = GarbageCollector.collectReachable();
+        int rewritten = 0;
+        int left = 0;
+        for (ObjectId id : GarbageCollector.listLooseObjects()) {
+            Path objectPath = objectPath(id);
+            ObjectStream typed = openTyped(objectPath);
+            if (typed != null) {
+                typed.close();
+                continue;
+            }
+
+            GarbageCollector.ReachableObject object = reachable.get(id);
+            if (object == null || object.type == null) {
+                left++;
+                continue;
+            }
+            byte[] content = Files.readAllBytes(objectPath);
+            Path tempPath = createTempObject();
+            try {
+                try (OutputStream out = new DeflaterOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                    out.write(GitObject.header(object.type, content.length));
+                    out.write(content);
+                }
+                Files.move(tempPath, objectPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+            rewritten++;
+        }
+        return new int[] {rewritten, left};
+    }
+}
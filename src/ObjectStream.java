@@ -0,0 +1,56 @@
+import java.io.*;
+
+/**
+ * The `ObjectStream` class streams the content of a stored object without loading
+ * it into memory. The object header has already been consumed, so reads start at
+ * the first content byte and inflate only as much data as the caller asks for.
+ */
+public class ObjectStream extends FilterInputStream {
+
+    private final String type;
+    private final long size;
+
+    /**
+     * Wraps a stream positioned at the start of the object content.
+     *
+     * @param in   The (already inflating) content stream.
+     * @param type The object type, or null for untyped legacy objects.
+     * @param size The content size in bytes.
+     */
+    public ObjectStream(InputStream in, String type, long size) {
+        super(in);
+        this.type = type;
+        this.size = size;
+    }
+
+    /**
+     * @return The object type, or null for untyped legacy objects.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return The content size in bytes, as recorded in the object header.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Reads the remaining content fully into memory.
+     *
+     * @return The loaded object.
+     * @throws IOException If an I/O error occurs or the object is truncated.
+     */
+    public GitObject load() throws IOException {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Object too large to load into memory: " + size + " bytes");
+        }
+        byte[] data = readNBytes((int) size);
+        if (data.length != size) {
+            throw new IOException("Object is truncated: expected " + size + " bytes, got " + data.length);
+        }
+        return new GitObject(type, data);
+    }
+}
@@ -0,0 +1,222 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The `Output` class is the sink every command writes its output to. Writes go to one
+ * 64 KiB buffer that {@link MyGit#main} flushes once when the command is done, instead
+ * of one system call per line.
+ *
+ * By default the output is the usual text. With `--porcelain` before the command every
+ * line becomes a JSON object on a line of its own (JSON lines), so scripts do not have
+ * to parse the text:
+ * <ul>
+ *   <li>Results that have a structure (branches, commits, status entries, changed files,
+ *       object counts) are printed with {@link #record}, whose fields become the
+ *       object's members next to its `type`.</li>
+ *   <li>Errors become `{"type":"error","message":...}`, other text
+ *       `{"type":"message","text":...}`; blank lines are left out.</li>
+ * </ul>
+ * With `-z` the records end with NUL instead of a newline, which implies `--porcelain`.
+ *
+ * Error messages in text form go to standard error, after the output buffered so far
+ * has been written out so the two stay in order on a terminal. A {@link Daemon}
+ * client has only its connection, which then receives both.
+ */
+public class Output {
+
+    // Size of the buffer in front of standard output
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static PrintWriter writer = open(new FileOutputStream(FileDescriptor.out));
+    private static PrintWriter errors = standardError();
+    private static boolean porcelain = false;
+    private static char terminator = '\n';
+
+    private Output() {
+    }
+
+    /**
+     * Selects the output format of the current command.
+     *
+     * @param machineReadable Whether to print JSON lines instead of text.
+     * @param nulTerminated   Whether records end with NUL; implies JSON lines.
+     */
+    static void configure(boolean machineReadable, boolean nulTerminated) {
+        porcelain = machineReadable || nulTerminated;
+        terminator = nulTerminated ? '\0' : '\n';
+    }
+
+    /**
+     * Sends the output to another stream, such as a {@link Daemon} client's connection,
+     * after writing out what is buffered for the previous one.
+     *
+     * @param stream The stream to write to.
+     */
+    static void setStream(OutputStream stream) {
+        writer.flush();
+        writer = open(stream);
+        errors = writer;
+    }
+
+    /**
+     * Sends the output back to standard output, and errors to standard error.
+     */
+    static void resetStream() {
+        setStream(new FileOutputStream(FileDescriptor.out));
+        errors = standardError();
+    }
+
+    /**
+     * @return {@code true} if the output is JSON lines.
+     */
+    public static boolean isPorcelain() {
+        return porcelain;
+    }
+
+    /**
+     * Returns the buffered writer itself, for commands that print large amounts of text.
+     * It must only be used for text output, never when {@link #isPorcelain()} is true.
+     *
+     * @return The writer.
+     */
+    public static PrintWriter writer() {
+        return writer;
+    }
+
+    /**
+     * Prints a line of text.
+     *
+     * @param text The text; it may span several lines.
+     */
+    public static void println(String text) {
+        if (porcelain) {
+            record("message", null, "text", text);
+        } else {
+            writer.println(text);
+        }
+    }
+
+    /**
+     * Prints an empty line. It has no porcelain form.
+     */
+    public static void println() {
+        if (!porcelain) {
+            writer.println();
+        }
+    }
+
+    /**
+     * Prints an error message, to standard error unless the output is JSON lines.
+     *
+     * @param message The message.
+     */
+    public static void error(String message) {
+        if (porcelain) {
+            record("error", null, "message", message);
+        } else if (errors == writer) {
+            writer.println(message);
+        } else {
+            writer.flush();
+            errors.println(message);
+            errors.flush();
+        }
+    }
+
+    /**
+     * Prints a result: its text normally, or a JSON object made of its type and fields.
+     *
+     * @param type   The kind of result, such as `branch` or `commit`.
+     * @param text   The text printed normally, or null to print nothing.
+     * @param fields Alternating field names and values. Values are strings, numbers,
+     *               booleans, collections (printed as arrays) or null; anything else is
+     *               printed as its string form.
+     */
+    public static void record(String type, String text, Object... fields) {
+        if (!porcelain) {
+            if (text != null) {
+                writer.println(text);
+            }
+            return;
+        }
+        StringBuilder json = new StringBuilder(64);
+        json.append("{\"type\":");
+        appendValue(json, type);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            json.append(',');
+            appendValue(json, fields[i].toString());
+            json.append(':');
+            appendValue(json, fields[i + 1]);
+        }
+        json.append('}');
+        writer.print(json);
+        writer.print(terminator);
+    }
+
+    /**
+     * Writes out everything buffered so far.
+     */
+    public static void flush() {
+        writer.flush();
+    }
+
+    // An unbuffered UTF-8 writer in front of standard error; errors are few
+    private static PrintWriter standardError() {
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.err), StandardCharsets.UTF_8));
+    }
+
+    // A buffered UTF-8 writer in front of a stream
+    private static PrintWriter open(OutputStream stream) {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+
+    // Append a value in JSON syntax
+    private static void appendValue(StringBuilder json, Object value) {
+        if (value == null || value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else if (value instanceof Collection) {
+            json.append('[');
+            String separator = "";
+            for (Object element : (Collection<?>) value) {
+                json.append(separator);
+                appendValue(json, element);
+                separator = ",";
+            }
+            json.append(']');
+        } else {
+            appendString(json, value.toString());
+        }
+    }
+
+    // Append a string in double quotes, escaping quotes, backslashes and control characters
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
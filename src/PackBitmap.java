@@ -0,0 +1,449 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * The `PackBitmap` class reads and writes the `.bitmap` file that can accompany a pack.
+ * For selected commits it stores the set of objects reachable from the commit as an
+ * {@link EwahBitmap}, bit i standing for the object at position i of the pack index.
+ * The objects reachable from a set of commits are then the OR of their bitmaps, and
+ * only commits made since the pack was written need to be walked.
+ *
+ * Layout (all integers big-endian):
+ * <pre>
+ *   magic "BITM" | version (1) | bitmap count N | checksum of the pack (20 bytes)
+ *   type bitmaps: commits, trees, blobs
+ *   N x (commit position in the pack index | XOR offset (byte) | bitmap)
+ *   object count x int name hash of the path each object was packed under
+ *   20-byte SHA-1 of everything above
+ * </pre>
+ * Bits follow the order of the ids, which is random, so a bitmap compresses poorly on
+ * its own but differs in few bits from the bitmap of a commit close to it in history.
+ * Bitmaps are stored oldest first, and one with a non-zero XOR offset k is stored
+ * XORed with the bitmap k entries before it, as in git.
+ *
+ * The name hashes let objects found through bitmaps be repacked with the same delta
+ * grouping as objects found by walking trees.
+ *
+ * Bitmaps are written for the tips and for every {@value #COMMIT_INTERVAL}th commit
+ * of the history, oldest first, so that each bitmap is built from the nearest older
+ * ones by walking at most a few commits and the trees they changed.
+ */
+public class PackBitmap {
+
+    private static final byte[] SIGNATURE = {'B', 'I', 'T', 'M'};
+    private static final int VERSION = 1;
+
+    // Every this many commits in the history get a bitmap, besides the tips
+    private static final int COMMIT_INTERVAL = 100;
+
+    // How many preceding bitmaps are tried as the base of an XOR
+    private static final int XOR_WINDOW = 10;
+
+    private final PackIndex index;
+    private final EwahBitmap commits;
+    private final EwahBitmap trees;
+    private final EwahBitmap blobs;
+    private final Map<Integer, Integer> entries;
+    private final int[] xorOffsets;
+    private final EwahBitmap[] stored;
+    private final EwahBitmap[] resolved;
+    private final int[] nameHashes;
+
+    private PackBitmap(PackIndex index, EwahBitmap commits, EwahBitmap trees, EwahBitmap blobs,
+                       Map<Integer, Integer> entries, int[] xorOffsets, EwahBitmap[] stored, int[] nameHashes) {
+        this.index = index;
+        this.commits = commits;
+        this.trees = trees;
+        this.blobs = blobs;
+        this.entries = entries;
+        this.xorOffsets = xorOffsets;
+        this.stored = stored;
+        this.resolved = new EwahBitmap[stored.length];
+        this.nameHashes = nameHashes;
+    }
+
+    /**
+     * @param packPath The path of a `.pack` file.
+     * @return The path of its `.bitmap` companion.
+     */
+    public static Path pathFor(Path packPath) {
+        String name = packPath.getFileName().toString();
+        return packPath.resolveSibling(name.substring(0, name.length() - ".pack".length()) + ".bitmap");
+    }
+
+    /**
+     * Reads the bitmaps of a pack.
+     *
+     * @param pack The pack.
+     * @return The bitmaps, or null if the pack has none.
+     * @throws IOException If the file is malformed or belongs to another pack.
+     */
+    public static PackBitmap open(PackFile pack) throws IOException {
+        Path bitmapPath = pathFor(pack.getPackPath());
+        if (!Files.exists(bitmapPath)) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(bitmapPath, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        PackIndex index = pack.getIndex();
+        try {
+            byte[] signature = new byte[SIGNATURE.length];
+            buffer.get(signature);
+            if (!Arrays.equals(signature, SIGNATURE) || buffer.getInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " bitmap file");
+            }
+            int count = buffer.getInt();
+            byte[] checksum = new byte[ObjectId.RAW_LENGTH];
+            buffer.get(checksum);
+            if (!Arrays.equals(checksum, index.getPackChecksum())) {
+                throw new IOException("Bitmap file does not match its pack");
+            }
+
+            EwahBitmap commits = EwahBitmap.read(buffer);
+            EwahBitmap trees = EwahBitmap.read(buffer);
+            EwahBitmap blobs = EwahBitmap.read(buffer);
+            Map<Integer, Integer> entries = new HashMap<>();
+            int[] xorOffsets = new int[count];
+            EwahBitmap[] stored = new EwahBitmap[count];
+            for (int i = 0; i < count; i++) {
+                entries.put(buffer.getInt(), i);
+                xorOffsets[i] = buffer.get() & 0xff;
+                if (xorOffsets[i] > i) {
+                    throw new IOException("Bitmap " + i + " is XORed with a bitmap before the first one");
+                }
+                stored[i] = EwahBitmap.read(buffer);
+            }
+            int[] nameHashes = new int[index.getObjectCount()];
+            for (int i = 0; i < nameHashes.length; i++) {
+                nameHashes[i] = buffer.getInt();
+            }
+            if (buffer.remaining() != ObjectId.RAW_LENGTH) {
+                throw new IOException("Bitmap file has trailing data");
+            }
+            return new PackBitmap(index, commits, trees, blobs, entries, xorOffsets, stored, nameHashes);
+        } catch (RuntimeException e) {
+            throw new IOException("Bitmap file is truncated");
+        }
+    }
+
+    /**
+     * @return The index of the pack the bitmaps describe.
+     */
+    public PackIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The number of commits that have a bitmap.
+     */
+    public int getBitmapCount() {
+        return stored.length;
+    }
+
+    /**
+     * @param commit A commit id.
+     * @return The objects reachable from the commit, or null if it has no bitmap.
+     */
+    public EwahBitmap getBitmap(ObjectId commit) {
+        int position = index.findPosition(commit);
+        return position >= 0 ? getBitmap(position) : null;
+    }
+
+    // The bitmap of the commit at a position of the pack index, undoing the XOR chain
+    private synchronized EwahBitmap getBitmap(int position) {
+        Integer entry = entries.get(position);
+        if (entry == null) {
+            return null;
+        }
+        // Find the nearest entry of the chain that is resolved or stored as is, then resolve forwards
+        Deque<Integer> chain = new ArrayDeque<>();
+        int i = entry;
+        while (resolved[i] == null && xorOffsets[i] != 0) {
+            chain.push(i);
+            i -= xorOffsets[i];
+        }
+        if (resolved[i] == null) {
+            resolved[i] = stored[i];
+        }
+        while (!chain.isEmpty()) {
+            int next = chain.pop();
+            resolved[next] = stored[next].xor(resolved[next - xorOffsets[next]]);
+        }
+        return resolved[entry];
+    }
+
+    /**
+     * @param type {@link GitObject#COMMIT}, {@link GitObject#TREE} or {@link GitObject#BLOB}.
+     * @return The objects of the pack that have that type.
+     */
+    public EwahBitmap getTypeBitmap(String type) {
+        if (GitObject.COMMIT.equals(type)) {
+            return commits;
+        }
+        return GitObject.TREE.equals(type) ? trees : blobs;
+    }
+
+    /**
+     * @param position A position in the pack index.
+     * @return The name hash the object was packed with.
+     */
+    public int getNameHash(int position) {
+        return nameHashes[position];
+    }
+
+    /**
+     * Finds the objects reachable from some commits. Commits with a bitmap contribute
+     * it as a whole; the others are walked until the walk reaches a commit with a
+     * bitmap or an object already found.
+     *
+     * @param tips    The commits to start from.
+     * @param outside Receives the reachable objects that are not in the pack, such as
+     *                loose objects written since it was made.
+     * @return The reachable objects that are in the pack.
+     * @throws IOException If an object that has to be walked cannot be read.
+     */
+    public EwahBitmap findReachable(Collection<ObjectId> tips, Map<ObjectId, GarbageCollector.ReachableObject> outside)
+            throws IOException {
+        EwahBitmap result = EwahBitmap.EMPTY;
+        List<ObjectId> unmapped = new ArrayList<>();
+        for (ObjectId tip : tips) {
+            EwahBitmap bitmap = getBitmap(tip);
+            if (bitmap != null) {
+                result = result.or(bitmap);
+            } else {
+                unmapped.add(tip);
+            }
+        }
+        if (unmapped.isEmpty()) {
+            return result;
+        }
+
+        BitSet seen = result.toBitSet();
+        Walk walk = new Walk(index, seen, outside);
+        Deque<ObjectId> pending = new ArrayDeque<>(unmapped);
+        while (!pending.isEmpty()) {
+            ObjectId commit = pending.poll();
+            int position = index.findPosition(commit);
+            if (position >= 0 && seen.get(position)) {
+                continue;
+            }
+            EwahBitmap bitmap = position >= 0 ? getBitmap(position) : null;
+            if (bitmap != null) {
+                seen.or(bitmap.toBitSet());
+                continue;
+            }
+            walk.markCommit(commit, position);
+            pending.addAll(ObjectDatabase.readParents(commit));
+        }
+        return result.or(EwahBitmap.fromBitSet(seen));
+    }
+
+    /**
+     * Writes bitmaps for a freshly written pack.
+     *
+     * @param pack   The pack.
+     * @param tips   The branch tips and HEAD; each gets a bitmap.
+     * @param writer The writer that produced the pack, for object types and name hashes.
+     * @return The number of bitmaps written, 0 if no commit could be covered.
+     * @throws IOException If a commit cannot be read or the file cannot be written.
+     */
+    public static int write(PackFile pack, Collection<ObjectId> tips, PackWriter writer) throws IOException {
+        PackIndex index = pack.getIndex();
+        int objectCount = index.getObjectCount();
+
+        // Post-order walk: every commit comes after its parents
+        List<ObjectId> order = new ArrayList<>();
+        Set<ObjectId> visited = new HashSet<>();
+        Deque<ObjectId> stack = new ArrayDeque<>();
+        for (ObjectId tip : tips) {
+            if (visited.add(tip)) {
+                stack.push(tip);
+            }
+            while (!stack.isEmpty()) {
+                ObjectId commit = stack.peek();
+                ObjectId next = null;
+                for (ObjectId parent : ObjectDatabase.readParents(commit)) {
+                    if (visited.add(parent)) {
+                        next = parent;
+                        break;
+                    }
+                }
+                if (next != null) {
+                    stack.push(next);
+                } else {
+                    order.add(stack.pop());
+                }
+            }
+        }
+
+        Set<ObjectId> selected = new HashSet<>(tips);
+        for (int i = COMMIT_INTERVAL - 1; i < order.size(); i += COMMIT_INTERVAL) {
+            selected.add(order.get(i));
+        }
+
+        // Build oldest first, so each walk stops at the bitmaps of older selected commits
+        Map<Integer, EwahBitmap> bitmaps = new LinkedHashMap<>();
+        Set<ObjectId> incomplete = new HashSet<>();
+        for (ObjectId commit : order) {
+            int position = index.findPosition(commit);
+            if (!selected.contains(commit) || position < 0) {
+                continue;
+            }
+            Map<ObjectId, GarbageCollector.ReachableObject> outside = new HashMap<>();
+            BitSet seen = new BitSet(objectCount);
+            Walk walk = new Walk(index, seen, outside);
+            Deque<ObjectId> pending = new ArrayDeque<>();
+            pending.add(commit);
+            boolean complete = true;
+            while (!pending.isEmpty() && complete) {
+                ObjectId current = pending.poll();
+                int currentPosition = index.findPosition(current);
+                if (currentPosition >= 0 && seen.get(currentPosition)) {
+                    continue;
+                }
+                EwahBitmap base = current.equals(commit) ? null : bitmaps.get(currentPosition);
+                if (base != null) {
+                    seen.or(base.toBitSet());
+                    continue;
+                }
+                if (incomplete.contains(current)) {
+                    complete = false;
+                    break;
+                }
+                walk.markCommit(current, currentPosition);
+                pending.addAll(ObjectDatabase.readParents(current));
+            }
+
+            // A bitmap can only describe objects that are in the pack
+            if (complete && outside.isEmpty()) {
+                bitmaps.put(position, EwahBitmap.fromBitSet(seen));
+            } else {
+                incomplete.add(commit);
+            }
+        }
+        if (bitmaps.isEmpty()) {
+            Files.deleteIfExists(pathFor(pack.getPackPath()));
+            return 0;
+        }
+
+        BitSet commitBits = new BitSet(objectCount);
+        BitSet treeBits = new BitSet(objectCount);
+        BitSet blobBits = new BitSet(objectCount);
+        for (int i = 0; i < objectCount; i++) {
+            String type = writer.getType(index.getId(i));
+            (GitObject.COMMIT.equals(type) ? commitBits : GitObject.TREE.equals(type) ? treeBits : blobBits).set(i);
+        }
+
+        Path bitmapPath = pathFor(pack.getPackPath());
+        Path tempPath = GitUtils.createTempFile(bitmapPath.getParent(), "tmp_bitmap_", ".bitmap");
+        try {
+            MessageDigest digest = ObjectId.newDigest();
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+                DataOutputStream out = new DataOutputStream(new DigestOutputStream(file, digest));
+                out.write(SIGNATURE);
+                out.writeInt(VERSION);
+                out.writeInt(bitmaps.size());
+                out.write(index.getPackChecksum());
+                EwahBitmap.fromBitSet(commitBits).write(out);
+                EwahBitmap.fromBitSet(treeBits).write(out);
+                EwahBitmap.fromBitSet(blobBits).write(out);
+                List<EwahBitmap> written = new ArrayList<>();
+                for (Map.Entry<Integer, EwahBitmap> entry : bitmaps.entrySet()) {
+                    EwahBitmap bitmap = entry.getValue();
+                    EwahBitmap best = bitmap;
+                    int xorOffset = 0;
+                    for (int k = 1; k <= Math.min(XOR_WINDOW, written.size()); k++) {
+                        EwahBitmap candidate = bitmap.xor(written.get(written.size() - k));
+                        if (candidate.getWordCount() < best.getWordCount()) {
+                            best = candidate;
+                            xorOffset = k;
+                        }
+                    }
+                    out.writeInt(entry.getKey());
+                    out.writeByte(xorOffset);
+                    best.write(out);
+                    written.add(bitmap);
+                }
+                for (int i = 0; i < objectCount; i++) {
+                    out.writeInt(writer.getNameHash(index.getId(i)));
+                }
+                out.flush();
+                file.write(digest.digest());
+            }
+            Files.move(tempPath, bitmapPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        return bitmaps.size();
+    }
+
+    /**
+     * Marks the objects of walked commits: a bit for objects in the pack, an entry in
+     * `outside` for the others. A tree already marked is not read again.
+     */
+    private static class Walk {
+        private final PackIndex index;
+        private final BitSet seen;
+        private final Map<ObjectId, GarbageCollector.ReachableObject> outside;
+
+        Walk(PackIndex index, BitSet seen, Map<ObjectId, GarbageCollector.ReachableObject> outside) {
+            this.index = index;
+            this.seen = seen;
+            this.outside = outside;
+        }
+
+        // Mark a commit and its tree, if it has one; a missing object fails the walk, whose result would be incomplete
+        void markCommit(ObjectId commit, int position) throws IOException {
+            ObjectId tree = ObjectDatabase.readCommitTree(commit);
+            if (tree == null && !ObjectStore.exists(commit)) {
+                throw new IOException("Missing commit " + commit);
+            }
+            if (position >= 0) {
+                seen.set(position);
+            } else {
+                outside.put(commit, new GarbageCollector.ReachableObject(commit, GitObject.COMMIT, ""));
+            }
+            if (tree != null) {
+                markTree(tree, "");
+            }
+        }
+
+        private void markTree(ObjectId treeId, String prefix) throws IOException {
+            if (!mark(treeId, GitObject.TREE, prefix)) {
+                return;
+            }
+            TreeObject tree = ObjectDatabase.readTree(treeId);
+            if (tree == null) {
+                throw new IOException("Missing tree " + treeId);
+            }
+            for (TreeObject.Entry entry : tree.getEntryList()) {
+                if (entry.isTree()) {
+                    markTree(entry.getId(), prefix + entry.getName() + "/");
+                } else {
+                    mark(entry.getId(), GitObject.BLOB, prefix + entry.getName());
+                }
+            }
+        }
+
+        // Mark one object; returns false if it was already marked
+        private boolean mark(ObjectId id, String type, String path) {
+            int position = index.findPosition(id);
+            if (position >= 0) {
+                if (seen.get(position)) {
+                    return false;
+                }
+                seen.set(position);
+                return true;
+            }
+            return outside.putIfAbsent(id, new GarbageCollector.ReachableObject(id, type, path)) == null;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The `PackFile` class reads objects out of a `.pack` file using its `.idx` companion.
+ *
+ * Pack layout: `PACK` | version (2) | object count, then one entry per object, then
+ * the 20-byte SHA-1 of everything before it. Each entry is a variable-length header
+ * (bits 4-6 of the first byte hold the type, the remaining bits the inflated size,
+ * seven more size bits per continuation byte) followed by the Deflate-compressed content.
+ * Entries of type {@code OFS_DELTA} instead hold a {@link Delta} against an earlier
+ * entry of the same pack, whose distance back is encoded right after the header.
+ *
+ * Recently used delta bases are kept inflated in a least-recently-used cache keyed by
+ * their offset, bounded by their size, so reading many objects that share a delta chain
+ * (the revisions of one file or directory, as history walks do) applies each link of
+ * the chain once instead of once per object.
+ */
+public class PackFile {
+
+    // Pack entry type codes
+    static final int TYPE_COMMIT = 1;
+    static final int TYPE_TREE = 2;
+    static final int TYPE_BLOB = 3;
+    static final int TYPE_OFS_DELTA = 6;
+
+    static final byte[] SIGNATURE = {'P', 'A', 'C', 'K'};
+    static final int VERSION = 2;
+
+    // Upper bound on the inflated delta bases cached per pack
+    private static final long BASE_CACHE_LIMIT_BYTES = 16L * 1024 * 1024;
+
+    private final Path packPath;
+    private final PackIndex index;
+    private final FileChannel channel;
+    private PackBitmap bitmap;
+    private boolean bitmapLoaded;
+
+    // Delta bases by pack offset; access-ordered, so iteration starts at the least recently used
+    private final LinkedHashMap<Long, GitObject> baseCache = new LinkedHashMap<>(64, 0.75f, true);
+    private long baseCacheBytes;
+
+    private PackFile(Path packPath, PackIndex index, FileChannel channel) {
+        this.packPath = packPath;
+        this.index = index;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a pack and memory-maps its index.
+     *
+     * @param packPath The path of the `.pack` file; the `.idx` file must sit next to it.
+     * @return The opened pack.
+     * @throws IOException If either file cannot be opened or is malformed.
+     */
+    public static PackFile open(Path packPath) throws IOException {
+        PackIndex index = PackIndex.open(indexPathFor(packPath));
+        FileChannel channel = FileChannel.open(packPath, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            readFully(channel, header, 0);
+            byte[] signature = new byte[4];
+            header.get(0, signature);
+            if (!Arrays.equals(signature, SIGNATURE) || header.getInt(4) != VERSION) {
+                throw new IOException("Not a version " + VERSION + " pack: " + packPath);
+            }
+            if (header.getInt(8) != index.getObjectCount()) {
+                throw new IOException("Pack and index disagree on object count: " + packPath);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new PackFile(packPath, index, channel);
+    }
+
+    /**
+     * @param packPath The path of a `.pack` file.
+     * @return The path of its `.idx` companion.
+     */
+    public static Path indexPathFor(Path packPath) {
+        String name = packPath.getFileName().toString();
+        return packPath.resolveSibling(name.substring(0, name.length() - ".pack".length()) + ".idx");
+    }
+
+    /**
+     * @return The path of the `.pack` file.
+     */
+    public Path getPackPath() {
+        return packPath;
+    }
+
+    /**
+     * @return The memory-mapped index of this pack.
+     */
+    public PackIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The reachability bitmaps of this pack, or null if it has none or they
+     *         cannot be read. They are loaded on first use.
+     */
+    public synchronized PackBitmap getBitmap() {
+        if (!bitmapLoaded) {
+            bitmapLoaded = true;
+            try {
+                bitmap = PackBitmap.open(this);
+            } catch (IOException e) {
+                // Bitmaps only save a walk; without them everything is found by walking
+                Output.error("Warning: ignoring bitmaps of " + packPath.getFileName() + ": " + e.getMessage());
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * @param id The object id.
+     * @return {@code true} if this pack contains the object.
+     */
+    public boolean contains(ObjectId id) {
+        return index.findPosition(id) >= 0;
+    }
+
+    /**
+     * Opens an object stored in this pack. The entry header is read with a single
+     * positional read; the content is inflated lazily as the caller reads.
+     *
+     * @param id The object id.
+     * @return A stream over the object content, or null if the pack does not contain it.
+     * @throws IOException If an I/O error occurs or the entry is malformed.
+     */
+    public ObjectStream openObject(ObjectId id) throws IOException {
+        int position = index.findPosition(id);
+        if (position < 0) {
+            return null;
+        }
+        return openAt(index.getOffset(position));
+    }
+
+    /**
+     * Opens the entry that starts at the given pack offset.
+     *
+     * @param offset The byte offset of the entry header.
+     * @return A stream over the entry content.
+     * @throws IOException If an I/O error occurs or the entry is malformed.
+     */
+    ObjectStream openAt(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(32);
+        channel.read(header, offset);
+
+        int b = header.get(0) & 0xff;
+        int typeCode = (b >> 4) & 0x07;
+        long size = b & 0x0f;
+        int shift = 4;
+        int pos = 1;
+        while ((b & 0x80) != 0) {
+            if (pos >= header.position()) {
+                throw new IOException("Malformed pack entry header at offset " + offset);
+            }
+            b = header.get(pos++) & 0xff;
+            size |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        }
+
+        if (typeCode == TYPE_OFS_DELTA) {
+            // Distance back to the base entry, big-endian base-128 with an offset per byte
+            if (pos >= header.position()) {
+                throw new IOException("Malformed delta base offset at offset " + offset);
+            }
+            b = header.get(pos++) & 0xff;
+            long distance = b & 0x7f;
+            while ((b & 0x80) != 0) {
+                if (pos >= header.position()) {
+                    throw new IOException("Malformed delta base offset at offset " + offset);
+                }
+                b = header.get(pos++) & 0xff;
+                distance = ((distance + 1) << 7) | (b & 0x7f);
+            }
+
+            byte[] delta;
+            try (InputStream in = new InflaterInputStream(new ChannelInputStream(channel, offset + pos))) {
+                delta = in.readNBytes((int) size);
+            }
+            if (distance <= 0 || distance > offset) {
+                throw new IOException("Delta base out of range at offset " + offset);
+            }
+            GitObject base = loadBase(offset - distance);
+            byte[] data = Delta.apply(base.getData(), delta);
+            return new ObjectStream(new ByteArrayInputStream(data), base.getType(), data.length);
+        }
+
+        InputStream content = new InflaterInputStream(new ChannelInputStream(channel, offset + pos));
+        return new ObjectStream(content, typeName(typeCode), size);
+    }
+
+    // Load a delta base, from the cache if it was used recently
+    private GitObject loadBase(long offset) throws IOException {
+        synchronized (baseCache) {
+            GitObject cached = baseCache.get(offset);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        GitObject base;
+        try (ObjectStream baseStream = openAt(offset)) {
+            base = baseStream.load();
+        }
+        long size = base.getData().length;
+        if (size <= BASE_CACHE_LIMIT_BYTES / 4) { // A single huge base would evict everything else
+            synchronized (baseCache) {
+                GitObject previous = baseCache.put(offset, base);
+                baseCacheBytes += size - (previous != null ? previous.getData().length : 0);
+                Iterator<GitObject> eldest = baseCache.values().iterator();
+                while (baseCacheBytes > BASE_CACHE_LIMIT_BYTES && eldest.hasNext()) {
+                    baseCacheBytes -= eldest.next().getData().length;
+                    eldest.remove();
+                }
+            }
+        }
+        return base;
+    }
+
+    /**
+     * Closes the pack file channel.
+     *
+     * @throws IOException If an I/O error occurs while closing.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Map a pack type code to an object type name
+    static String typeName(int typeCode) throws IOException {
+        switch (typeCode) {
+            case TYPE_COMMIT:
+                return GitObject.COMMIT;
+            case TYPE_TREE:
+                return GitObject.TREE;
+            case TYPE_BLOB:
+                return GitObject.BLOB;
+            default:
+                throw new IOException("Unknown pack entry type: " + typeCode);
+        }
+    }
+
+    // Map an object type name to a pack type code
+    static int typeCode(String type) throws IOException {
+        if (GitObject.COMMIT.equals(type)) {
+            return TYPE_COMMIT;
+        } else if (GitObject.TREE.equals(type)) {
+            return TYPE_TREE;
+        } else if (GitObject.BLOB.equals(type)) {
+            return TYPE_BLOB;
+        }
+        throw new IOException("Cannot pack object of type: " + type);
+    }
+
+    // Fill the buffer from the given position or fail if the file is too short
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of pack");
+            }
+        }
+    }
+
+    /**
+     * An input stream over a region of a file channel that uses positional reads,
+     * so any number of readers can share one channel.
+     */
+    private static class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        private long position;
+
+        ChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+            buffer.limit(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        // Refill the buffer when it is drained; returns false at end of file
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            buffer.flip();
+            if (read <= 0) {
+                return false;
+            }
+            position += read;
+            return true;
+        }
+    }
+}
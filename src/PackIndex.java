@@ -0,0 +1,206 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * The `PackIndex` class reads and writes the `.idx` file that accompanies every pack.
+ *
+ * Layout (all integers big-endian):
+ * <pre>
+ *   magic (0xff744f63) | version (2)
+ *   fan-out table: 256 x int, entry i = number of ids whose first byte is &lt;= i
+ *   N x 20-byte object ids, sorted
+ *   N x int CRC32 of each packed entry
+ *   N x int pack offsets (high bit set = index into the 64-bit offset table)
+ *   M x long large pack offsets
+ *   20-byte pack checksum | 20-byte SHA-1 of everything above
+ * </pre>
+ * The file is memory-mapped, so a lookup is one fan-out read plus a binary search
+ * over the slice of ids that share the first byte.
+ */
+public class PackIndex {
+
+    private static final int MAGIC = 0xff744f63;
+    private static final int VERSION = 2;
+    private static final int ID_LENGTH = ObjectId.RAW_LENGTH;
+    private static final int FAN_OUT_OFFSET = 8;
+    private static final int IDS_OFFSET = FAN_OUT_OFFSET + 256 * 4;
+
+    private final MappedByteBuffer buffer;
+    private final int objectCount;
+    private final int crcOffset;
+    private final int offsetsOffset;
+    private final int largeOffsetsOffset;
+
+    private PackIndex(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < IDS_OFFSET || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported pack index format");
+        }
+        this.objectCount = buffer.getInt(FAN_OUT_OFFSET + 255 * 4);
+        this.crcOffset = IDS_OFFSET + objectCount * ID_LENGTH;
+        this.offsetsOffset = crcOffset + objectCount * 4;
+        this.largeOffsetsOffset = offsetsOffset + objectCount * 4;
+        if (buffer.capacity() < largeOffsetsOffset + 2 * ID_LENGTH) {
+            throw new IOException("Pack index is truncated");
+        }
+    }
+
+    /**
+     * Memory-maps an index file.
+     *
+     * @param idxPath The path of the `.idx` file.
+     * @return The opened index.
+     * @throws IOException If the file cannot be read or is not a valid index.
+     */
+    public static PackIndex open(Path idxPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(idxPath, StandardOpenOption.READ)) {
+            return new PackIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return The number of objects in the pack.
+     */
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * Looks up an object id.
+     *
+     * @param id The object id.
+     * @return The position of the id in sorted order, or -1 if the pack does not contain it.
+     */
+    public int findPosition(ObjectId id) {
+        int first = id.getFirstByte();
+        int low = first == 0 ? 0 : buffer.getInt(FAN_OUT_OFFSET + (first - 1) * 4);
+        int high = buffer.getInt(FAN_OUT_OFFSET + first * 4) - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = -id.compareTo(buffer, IDS_OFFSET + mid * ID_LENGTH);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param position The position of an object in sorted order.
+     * @return The object id at that position.
+     */
+    public ObjectId getId(int position) {
+        return ObjectId.fromRaw(buffer, IDS_OFFSET + position * ID_LENGTH);
+    }
+
+    /**
+     * @param position The position of an object in sorted order.
+     * @return The CRC32 of the packed entry at that position.
+     */
+    public int getCrc32(int position) {
+        return buffer.getInt(crcOffset + position * 4);
+    }
+
+    /**
+     * @param position The position of an object in sorted order.
+     * @return The byte offset of the object's entry inside the pack.
+     */
+    public long getOffset(int position) {
+        int offset = buffer.getInt(offsetsOffset + position * 4);
+        if (offset < 0) {
+            return buffer.getLong(largeOffsetsOffset + (offset & 0x7fffffff) * 8);
+        }
+        return offset;
+    }
+
+    /**
+     * @return The trailing checksum of the pack this index describes.
+     */
+    public byte[] getPackChecksum() {
+        byte[] checksum = new byte[ID_LENGTH];
+        buffer.get(buffer.capacity() - 2 * ID_LENGTH, checksum);
+        return checksum;
+    }
+
+    /**
+     * One object's location, as recorded while a pack is written.
+     */
+    public static class Entry {
+        final ObjectId id;
+        final long offset;
+        final int crc32;
+
+        public Entry(ObjectId id, long offset, int crc32) {
+            this.id = id;
+            this.offset = offset;
+            this.crc32 = crc32;
+        }
+    }
+
+    /**
+     * Writes an index for a pack.
+     *
+     * @param idxPath      The path of the `.idx` file to create.
+     * @param entries      The pack entries, in any order.
+     * @param packChecksum The trailing checksum of the pack the index describes.
+     * @throws IOException If an I/O error occurs while writing.
+     */
+    public static void write(Path idxPath, List<Entry> entries, byte[] packChecksum) throws IOException {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(entry -> entry.id));
+
+        MessageDigest digest = ObjectId.newDigest();
+
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(idxPath)), digest))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            int[] fanOut = new int[256];
+            for (Entry entry : sorted) {
+                fanOut[entry.id.getFirstByte()]++;
+            }
+            int total = 0;
+            for (int i = 0; i < 256; i++) {
+                total += fanOut[i];
+                out.writeInt(total);
+            }
+
+            byte[] raw = new byte[ID_LENGTH];
+            for (Entry entry : sorted) {
+                entry.id.copyRawTo(raw, 0);
+                out.write(raw);
+            }
+            for (Entry entry : sorted) {
+                out.writeInt(entry.crc32);
+            }
+
+            List<Long> largeOffsets = new ArrayList<>();
+            for (Entry entry : sorted) {
+                if (entry.offset > Integer.MAX_VALUE) {
+                    out.writeInt(0x80000000 | largeOffsets.size());
+                    largeOffsets.add(entry.offset);
+                } else {
+                    out.writeInt((int) entry.offset);
+                }
+            }
+            for (long offset : largeOffsets) {
+                out.writeLong(offset);
+            }
+
+            out.write(packChecksum);
+            out.flush();
+            out.write(digest.digest());
+        }
+    }
+}
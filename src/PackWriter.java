@@ -0,0 +1,321 @@
+import java.io.*;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * The `PackWriter` class consolidates objects from the object store into a single
+ * `.pack` file under `.mygit/objects/pack`, together with its `.idx` index.
+ * Similar objects are stored as deltas against each other (see {@link Delta}).
+ * Both files are written under temporary names and only renamed into place once
+ * complete, so readers never see a half-written pack.
+ */
+public class PackWriter {
+
+    /** Directory holding packs and their indexes. */
+    public static final String PACK_DIR = Constants.OBJECTS_DIR + "/pack";
+
+    // Number of preceding objects each object is compared against when looking for a delta base
+    private static final int DELTA_WINDOW = 10;
+
+    // Longest chain of deltas a reader may have to resolve to rebuild one object
+    private static final int MAX_DELTA_DEPTH = 50;
+
+    // Objects smaller than this are never worth a delta
+    private static final int MIN_DELTA_SIZE = 50;
+
+    // Objects to pack, keyed by id
+    private final Map<ObjectId, PackedObject> objects = new LinkedHashMap<>();
+
+    /**
+     * Queues an object for packing. Adding the same id twice has no effect.
+     *
+     * @param id       The object id.
+     * @param typeHint The type to record if the stored object predates typed storage.
+     */
+    public void addObject(ObjectId id, String typeHint) {
+        addObject(id, typeHint, "");
+    }
+
+    /**
+     * Queues an object for packing, remembering the path it was found at so that
+     * successive versions of the same file end up next to each other in the delta window.
+     *
+     * @param id       The object id.
+     * @param typeHint The type to record if the stored object predates typed storage.
+     * @param path     The path the object was reached through, or an empty string.
+     */
+    public void addObject(ObjectId id, String typeHint, String path) {
+        addObject(id, typeHint, nameHash(path));
+    }
+
+    /**
+     * Queues an object for packing with a name hash computed earlier, such as one
+     * recorded in a {@link PackBitmap}.
+     *
+     * @param id       The object id.
+     * @param typeHint The type to record if the stored object predates typed storage.
+     * @param nameHash The hash of the path the object was reached through.
+     */
+    public void addObject(ObjectId id, String typeHint, int nameHash) {
+        objects.putIfAbsent(id, new PackedObject(id, typeHint, nameHash));
+    }
+
+    /**
+     * @return The number of objects queued for packing.
+     */
+    public int getObjectCount() {
+        return objects.size();
+    }
+
+    /**
+     * @param id An object that was packed by {@link #write()}.
+     * @return The type it was packed as.
+     * @throws IOException If the object was not packed by this writer.
+     */
+    String getType(ObjectId id) throws IOException {
+        PackedObject object = objects.get(id);
+        if (object == null) {
+            throw new IOException("Object was not packed: " + id);
+        }
+        return PackFile.typeName(object.typeCode);
+    }
+
+    /**
+     * @param id An object queued for packing.
+     * @return The hash of the path it was queued with, or 0 if it was not queued.
+     */
+    int getNameHash(ObjectId id) {
+        PackedObject object = objects.get(id);
+        return object != null ? object.nameHash : 0;
+    }
+
+    /**
+     * Writes all queued objects into a new pack and index. Objects are sorted by type,
+     * path and decreasing size; each one is then delta-compressed against the best of
+     * the previous {@value #DELTA_WINDOW} objects of the same type, as long as the
+     * resulting delta chain stays within {@value #MAX_DELTA_DEPTH} links.
+     *
+     * @return The path of the new `.pack` file.
+     * @throws IOException If an object is missing or an I/O error occurs while writing.
+     */
+    public Path write() throws IOException {
+        List<PackedObject> sorted = sortForDeltas();
+
+        Path packDir = Paths.get(PACK_DIR);
+        Files.createDirectories(packDir);
+
+        Path tempPack = GitUtils.createTempFile(packDir, "tmp_pack_", ".pack");
+        Path tempIdx = GitUtils.createTempFile(packDir, "tmp_idx_", ".idx");
+        try {
+            MessageDigest digest = ObjectId.newDigest();
+            List<PackIndex.Entry> entries = new ArrayList<>(sorted.size());
+            Deque<PackedObject> window = new ArrayDeque<>(DELTA_WINDOW);
+            Deflater deflater = new Deflater();
+
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(tempPack))) {
+                DataOutputStream out = new DataOutputStream(new DigestOutputStream(file, digest));
+                out.write(PackFile.SIGNATURE);
+                out.writeInt(PackFile.VERSION);
+                out.writeInt(sorted.size());
+                long offset = 12;
+
+                for (PackedObject object : sorted) {
+                    GitObject loaded = ObjectStore.readObject(object.id);
+                    if (loaded == null) {
+                        throw new IOException("Object not found: " + object.id);
+                    }
+                    object.data = loaded.getData();
+                    object.offset = offset;
+
+                    byte[] entry = encodeBestEntry(object, window, deflater);
+                    CRC32 crc = new CRC32();
+                    crc.update(entry);
+
+                    out.write(entry);
+                    entries.add(new PackIndex.Entry(object.id, offset, (int) crc.getValue()));
+                    offset += entry.length;
+
+                    // Slide the window, dropping the oldest object's content
+                    if (window.size() == DELTA_WINDOW) {
+                        window.removeFirst().data = null;
+                    }
+                    window.addLast(object);
+                }
+                out.flush();
+
+                // The trailer is the checksum of everything before it, so it bypasses the digest
+                byte[] checksum = digest.digest();
+                file.write(checksum);
+                file.flush();
+
+                PackIndex.write(tempIdx, entries, checksum);
+
+                String name = "pack-" + ObjectId.fromRaw(checksum).name();
+                Path packPath = packDir.resolve(name + ".pack");
+                Files.move(tempPack, packPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(tempIdx, packDir.resolve(name + ".idx"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return packPath;
+            } finally {
+                deflater.end();
+            }
+        } finally {
+            Files.deleteIfExists(tempPack);
+            Files.deleteIfExists(tempIdx);
+        }
+    }
+
+    /**
+     * Reads every queued object's type and size from its header and sorts the objects
+     * so that likely delta pairs (same type, same path, similar size) are adjacent.
+     * Larger objects come first, because deleting data produces smaller deltas than
+     * adding it.
+     *
+     * @return The objects in pack order.
+     * @throws IOException If an object is missing or unreadable.
+     */
+    private List<PackedObject> sortForDeltas() throws IOException {
+        List<PackedObject> sorted = new ArrayList<>(objects.values());
+        for (PackedObject object : sorted) {
+            try (ObjectStream stream = ObjectStore.openObject(object.id)) {
+                if (stream == null) {
+                    throw new IOException("Object not found: " + object.id);
+                }
+                object.typeCode = PackFile.typeCode(stream.getType() != null ? stream.getType() : object.typeHint);
+                object.size = stream.getSize();
+            }
+        }
+        sorted.sort(Comparator.comparingInt((PackedObject o) -> o.typeCode)
+                .thenComparingInt(o -> o.nameHash)
+                .thenComparing(Comparator.comparingLong((PackedObject o) -> o.size).reversed()));
+        return sorted;
+    }
+
+    /**
+     * Encodes an object either as a delta against the window member that gives the
+     * smallest result, or as a full entry when no delta is small enough.
+     *
+     * @param object   The object to encode; its data must be loaded.
+     * @param window   The most recently written objects.
+     * @param deflater A deflater to reuse between entries.
+     * @return The encoded entry.
+     * @throws IOException If compression fails.
+     */
+    private static byte[] encodeBestEntry(PackedObject object, Deque<PackedObject> window, Deflater deflater)
+            throws IOException {
+        object.depth = 0;
+        byte[] bestDelta = null;
+        PackedObject bestBase = null;
+
+        if (object.data.length >= MIN_DELTA_SIZE) {
+            for (PackedObject base : window) {
+                if (base.typeCode != object.typeCode || base.depth >= MAX_DELTA_DEPTH) {
+                    continue;
+                }
+                // A delta is only worth it if it is well under half the object
+                int maxSize = (bestDelta != null ? bestDelta.length : object.data.length / 2) - 1;
+                if (maxSize <= 0 || Math.abs(base.data.length - object.data.length) >= maxSize) {
+                    continue;
+                }
+                byte[] delta = Delta.create(base.data, object.data, maxSize);
+                if (delta != null) {
+                    bestDelta = delta;
+                    bestBase = base;
+                }
+            }
+        }
+
+        if (bestDelta == null) {
+            return encodeEntry(object.typeCode, object.data, deflater);
+        }
+
+        object.depth = bestBase.depth + 1;
+        ByteArrayOutputStream entry = new ByteArrayOutputStream(bestDelta.length + 32);
+        writeEntryHeader(entry, PackFile.TYPE_OFS_DELTA, bestDelta.length);
+
+        // Distance back to the base, big-endian base-128 with an offset per byte
+        long distance = object.offset - bestBase.offset;
+        byte[] encoded = new byte[10];
+        int pos = encoded.length - 1;
+        encoded[pos] = (byte) (distance & 0x7f);
+        while ((distance >>>= 7) != 0) {
+            distance--;
+            encoded[--pos] = (byte) (0x80 | (distance & 0x7f));
+        }
+        entry.write(encoded, pos, encoded.length - pos);
+
+        deflater.reset();
+        try (DeflaterOutputStream compressed = new DeflaterOutputStream(entry, deflater)) {
+            compressed.write(bestDelta);
+        }
+        return entry.toByteArray();
+    }
+
+    /**
+     * Encodes one pack entry: the type/size header followed by the compressed data.
+     *
+     * @param typeCode The pack type code.
+     * @param data     The uncompressed entry data.
+     * @param deflater A deflater to reuse between entries.
+     * @return The encoded entry.
+     * @throws IOException If compression fails.
+     */
+    static byte[] encodeEntry(int typeCode, byte[] data, Deflater deflater) throws IOException {
+        ByteArrayOutputStream entry = new ByteArrayOutputStream(data.length / 2 + 16);
+        writeEntryHeader(entry, typeCode, data.length);
+
+        deflater.reset();
+        try (DeflaterOutputStream compressed = new DeflaterOutputStream(entry, deflater)) {
+            compressed.write(data);
+        }
+        return entry.toByteArray();
+    }
+
+    // Write the type/size header of a pack entry
+    private static void writeEntryHeader(ByteArrayOutputStream entry, int typeCode, long size) {
+        int b = (typeCode << 4) | (int) (size & 0x0f);
+        size >>>= 4;
+        while (size != 0) {
+            entry.write(b | 0x80);
+            b = (int) (size & 0x7f);
+            size >>>= 7;
+        }
+        entry.write(b);
+    }
+
+    // Hash a path so that files with the same name sort together, weighting the last characters most
+    static int nameHash(String path) {
+        int hash = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                hash = (hash >>> 2) + (c << 24);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Bookkeeping for one object while a pack is being written.
+     */
+    private static class PackedObject {
+        final ObjectId id;
+        final String typeHint;
+        final int nameHash;
+        int typeCode;
+        long size;
+        byte[] data;
+        long offset;
+        int depth;
+
+        PackedObject(ObjectId id, String typeHint, int nameHash) {
+            this.id = id;
+            this.typeHint = typeHint;
+            this.nameHash = nameHash;
+        }
+    }
+}
@@ -22,7 +22,7 @@ public class RepositoryCloner {
 
         // Validate source repository
         if (!Files.exists(sourceDir.resolve(".mygit"))) {
-            System.out.println("Error: The source path is not a valid repository.");
+            Output.error("Error: The source path is not a valid repository.");
             return;
         }
 
@@ -30,9 +30,9 @@ public class RepositoryCloner {
             // Copy the entire source directory to the destination
             copyDirectory(sourceDir, destinationDir);
 
-            System.out.println("Repository cloned successfully to: " + destinationDir.toAbsolutePath());
+            Output.println("Repository cloned successfully to: " + destinationDir.toAbsolutePath());
         } catch (IOException e) {
-            System.out.println("Error cloning repository: " + e.getMessage());
+            Output.error("Error cloning repository: " + e.getMessage());
         }
     }
 
@@ -35,17 +35,17 @@ public class RepositoryInitializer {
         // Check if the repository already exists
 
         if (myGitDir.exists()) {
-            System.out.println("Repository already initialized in this directory.");
+            Output.println("Repository already initialized in this directory.");
             return;
         }
 
         // Create the .mygit directory
 
         if (myGitDir.mkdirs()) {
-            System.out.println("Initialized empty MyGit repository in " + myGitDir.getAbsolutePath());
+            Output.println("Initialized empty MyGit repository in " + myGitDir.getAbsolutePath());
             createInitialStructure(myGitDir);
         } else {
-            System.out.println("Failed to initialize repository.");
+            Output.println("Failed to initialize repository.");
         }
     }
 
@@ -72,10 +72,10 @@ public class RepositoryInitializer {
             // Set HEAD to point to the 'main' branch
             Files.write(Paths.get(myGitDir.getPath(), "HEAD"), "ref: refs/heads/main".getBytes());
 
-            System.out.println("Created default branch 'main' and set HEAD to 'main'.");
-            System.out.println("Created initial repository structure.");
+            Output.println("Created default branch 'main' and set HEAD to 'main'.");
+            Output.println("Created initial repository structure.");
         } catch (IOException e) {
-            System.out.println("Error creating initial repository structure: " + e.getMessage());
+            Output.error("Error creating initial repository structure: " + e.getMessage());
         }
     }
 
@@ -1,9 +1,9 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
 
 
 /**
@@ -14,272 +14,488 @@ public class StagingArea {
 
     // Constants for paths
 
-    private static final String OBJECTS_DIR = ".mygit/objects";
     private static final String INDEX_FILE = ".mygit/index";
-    private static final String IGNORE_FILE = ".mygitignore";
-
-    // Store ignore patterns in a Set
-    private static Set<String> ignorePatterns = new HashSet<>();
 
  /**
-     * Loads ignore patterns from the `.mygitignore` file into the `ignorePatterns` set.
-     * Lines that are empty or start with `#` (comments) are ignored.
+     * Stages a single file by storing its contents as a blob in the objects directory
+     * and updating the index file with the file's hash and name. The file is staged
+     * under its path relative to the working tree root, however it was spelled.
+     *
+     * @param filename The name of the file to stage.
      */
-    
-        private static void loadIgnorePatterns() {
-        ignorePatterns.clear();
-        Path ignoreFilePath = Paths.get(IGNORE_FILE);
-        if (Files.exists(ignoreFilePath)) {
-            try {
-                ignorePatterns = Files.lines(ignoreFilePath)
-                        .map(String::trim)
-                        .filter(line -> !line.isEmpty() && !line.startsWith("#")) // Ignore empty lines and comments
-                        .collect(Collectors.toSet());
-            } catch (IOException e) {
-                System.out.println("Error reading .mygitignore: " + e.getMessage());
+    public static void stageFile(String filename) {
+        File file = new File(filename);
+        String name;
+
+        try {
+            // Check the file and its parent directories against the ignore files
+            IgnoreMatcher ignores = new IgnoreMatcher(Paths.get("."));
+            name = ignores.relativize(file.toPath());
+            if (ignores.isPathIgnored(name, file.isDirectory())) {
+                Output.println("Ignored: " + filename);
+                return;
             }
+        } catch (IOException e) {
+            Output.error("Error reading ignore files: " + e.getMessage());
+            return;
+        }
+
+        // A file that is gone stages its deletion
+        if (!file.exists()) {
+            stageDeletion(filename, name);
+            return;
+        }
+
+        try (Index index = Index.lock()) {
+            // Store the file content as a blob unless its stat data shows it is already staged
+            IndexEntry entry = stageEntry(index, name, file.toPath());
+
+            // Update the index with the filename, hash and stat data
+            index.put(entry);
+            index.write();
+
+            Output.println("Staged " + filename);
+        } catch (IOException e) {
+            Output.error("Error staging file: " + e.getMessage());
         }
     }
 
-/**
-     * Checks if a file should be ignored based on the patterns in the `.mygitignore` file.
-     *
-     * @param filename The name of the file to check.
-     * @return {@code true} if the file matches any ignore pattern, otherwise {@code false}.
+ /**
+     * Stages all files in the current directory and its subdirectories,
+     * excluding files that match ignore patterns or are within the `.mygit` directory.
+     * Blobs are hashed and stored in parallel on all available cores, and the index
+     * is rewritten once at the end instead of being appended to for every file.
+     * When a filesystem monitor is running and the index records the point it was last
+     * synchronised at, only the paths changed since then are examined.
      */
     
-        private static boolean isIgnored(String filename) {
-        for (String pattern : ignorePatterns) {
-            if (filenameMatchesPattern(filename, pattern)) {
-                return true;
+        public static void addAllFiles() {
+        try {
+            IgnoreMatcher ignores = new IgnoreMatcher(Paths.get("."));
+
+            List<IndexEntry> staged;
+            List<String> removed;
+            try (Index index = Index.lock()) {
+                // Ask for the changes before walking, so nothing changed during the walk is missed next time
+                FileSystemMonitor.Changes changes = FileSystemMonitor.query(monitorToken(index));
+                List<Path> paths = changes.getPaths() != null
+                        ? listChangedFiles(ignores, changes.getPaths())
+                        : listWorkingTreeFiles(ignores);
+
+                // Past a few hundred new blobs, decide which already exist from memory instead of one probe per file
+                ObjectStore.beginBulkWrite();
+                staged = stageEntries(index, paths);
+
+                for (IndexEntry entry : staged) {
+                    if (entry != null) {
+                        index.put(entry);
+                    }
+                }
+                removed = removeMissingEntries(index, paths, changes.getPaths());
+
+                // Only a complete pass makes the index match the working tree as of the token
+                if (changes.getToken() != null && !staged.contains(null)) {
+                    index.setExtension(FileSystemMonitor.INDEX_EXTENSION,
+                            changes.getToken().getBytes(StandardCharsets.UTF_8));
+                } else {
+                    index.removeExtension(FileSystemMonitor.INDEX_EXTENSION);
+                }
+                index.write();
             }
+
+            for (IndexEntry entry : staged) {
+                if (entry != null) {
+                    Output.println("Staged " + entry.getName());
+                }
+            }
+            for (String name : removed) {
+                Output.println("Removed " + name);
+            }
+        } catch (IOException e) {
+            Output.error("Error staging all files: " + e.getMessage());
+        } finally {
+            ObjectStore.endBulkWrite();
         }
-        return false;
     }
 
- /**
-     * Performs simple pattern matching with basic wildcard support.
+    /**
+     * Lists the files of the working tree that are not ignored. Ignored directories,
+     * and the `.mygit` directory, are skipped without being entered.
      *
-     * @param filename The filename to check.
-     * @param pattern  The pattern to match against.
-     * @return {@code true} if the filename matches the pattern, otherwise {@code false}.
+     * @param ignores The ignore rules of the working tree.
+     * @return The files, as paths starting with `./`, in walk order.
+     * @throws IOException If a directory or an ignore file cannot be read.
      */
-    
-        private static boolean filenameMatchesPattern(String filename, String pattern) {
-        String regex = pattern.replace(".", "\\.").replace("*", ".*").replace("?", ".");
-        return filename.matches(regex);
+    static List<Path> listWorkingTreeFiles(IgnoreMatcher ignores) throws IOException {
+        List<Path> files = new ArrayList<>();
+        walkWorkingTree(Paths.get("."), ignores, files);
+        return files;
     }
 
-
-
- /**
-     * Stages a single file by storing its contents as a blob in the objects directory
-     * and updating the index file with the file's hash and name.
+    /**
+     * Lists the files among a filesystem monitor's changed paths that still exist and
+     * are not ignored; changed directories are walked. Falls back to the whole working
+     * tree when an ignore file changed, since that can un-ignore files that never changed.
      *
-     * @param filename The name of the file to stage.
+     * @param ignores The ignore rules of the working tree.
+     * @param changed The changed paths, relative to the working tree root.
+     * @return The files, as paths starting with `./`.
+     * @throws IOException If a directory or an ignore file cannot be read.
      */
-    public static void stageFile(String filename) {
-        loadIgnorePatterns(); // Load ignore patterns before staging
-
-        if (isIgnored(filename)) {
-            System.out.println("Ignored: " + filename);
-            return;
+    static List<Path> listChangedFiles(IgnoreMatcher ignores, Set<String> changed) throws IOException {
+        for (String relative : changed) {
+            if (relative.equals(Constants.IGNORE_FILE) || relative.endsWith("/" + Constants.IGNORE_FILE)) {
+                return listWorkingTreeFiles(ignores);
+            }
         }
 
-        File file = new File(filename);
-
-        // Check if the file exists
-        if (!file.exists()) {
-            System.out.println("Error: " + filename + " does not exist.");
-            return;
+        Path start = Paths.get(".");
+        Set<Path> files = new LinkedHashSet<>();
+        for (String relative : changed) {
+            Path path = start.resolve(relative);
+            if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+                if (!ignores.isPathIgnored(relative, false)) {
+                    files.add(path);
+                }
+            } else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) && !ignores.isPathIgnored(relative, true)) {
+                List<Path> below = new ArrayList<>();
+                walkWorkingTree(path, ignores, below);
+                files.addAll(below);
+            }
         }
+        return new ArrayList<>(files);
+    }
 
-        try {
-            // Read file content
-            String content = new String(Files.readAllBytes(file.toPath()));
+    // Collect the files below a directory that is itself not ignored, skipping ignored subtrees
+    private static void walkWorkingTree(Path start, IgnoreMatcher ignores, List<Path> files) throws IOException {
+        Path myGitPath = Paths.get(Constants.GIT_DIR).toAbsolutePath().normalize();
 
-            // Compute the SHA-1 hash of the content
-            String hash = computeSHA1(content);
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(start)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (dir.toAbsolutePath().normalize().equals(myGitPath)
+                        || ignores.isIgnored(ignores.relativize(dir), true)) {
+                    return FileVisitResult.SKIP_SUBTREE; // Never enumerate ignored subtrees
+                }
+                return FileVisitResult.CONTINUE;
+            }
 
-            // Store the file content as a blob in the objects directory
-            storeBlob(hash, content);
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile() && !ignores.isIgnored(ignores.relativize(file), false)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
 
-            // Update the index file with the filename and hash
-            updateIndex(filename, hash);
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (start.equals(file)) {
+                    return FileVisitResult.CONTINUE; // A changed directory removed since it was reported
+                }
+                throw e;
+            }
+        });
+    }
 
-            System.out.println("Staged " + filename);
-        } catch (IOException | NoSuchAlgorithmException e) {
-            System.out.println("Error staging file: " + e.getMessage());
-        }
+    /**
+     * @param index The index.
+     * @return The filesystem monitor token the index was last synchronised at, or null.
+     */
+    static String monitorToken(Index index) {
+        byte[] token = index.getExtension(FileSystemMonitor.INDEX_EXTENSION);
+        return token != null ? new String(token, StandardCharsets.UTF_8) : null;
     }
 
- /**
-     * Stages all files in the current directory and its subdirectories,
-     * excluding files that match ignore patterns or are within the `.mygit` directory.
+    /**
+     * Stages many files using one worker thread per available core.
+     * A file that cannot be stored is reported and skipped; the others still succeed.
+     *
+     * @param index The current index, used to skip files whose stat data is unchanged.
+     * @param paths The files to stage.
+     * @return The new entry of each file, in the same order, or null for files that failed.
      */
-    
-        public static void addAllFiles() {
-        loadIgnorePatterns(); // Load ignore patterns before staging all files
+    private static List<IndexEntry> stageEntries(Index index, List<Path> paths) {
+        List<IndexEntry> entries = new ArrayList<>(Collections.nCopies(paths.size(), null));
+        if (paths.isEmpty()) {
+            return entries;
+        }
 
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), paths.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
         try {
-            Path myGitPath = Paths.get(".mygit").toAbsolutePath().normalize();
+            List<Future<IndexEntry>> results = new ArrayList<>(paths.size());
+            for (Path path : paths) {
+                results.add(executor.submit(() -> stageEntry(index, indexName(path), path)));
+            }
 
-            Files.walk(Paths.get("."))
-                .filter(Files::isRegularFile)
-                .filter(path -> !path.toAbsolutePath().normalize().startsWith(myGitPath)) // Exclude .mygit directory
-                .filter(path -> !isIgnored(path.toString())) // Exclude ignored files
-                .forEach(path -> stageFile(path.toString()));
-        } catch (IOException e) {
-            System.out.println("Error staging all files: " + e.getMessage());
+            for (int i = 0; i < paths.size(); i++) {
+                try {
+                    entries.set(i, results.get(i).get());
+                } catch (ExecutionException e) {
+                    Output.error("Error staging " + paths.get(i) + ": " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    Output.println("Staging interrupted.");
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
         }
+        return entries;
     }
 
- /**
-     * Displays all files currently staged in the index.
+    /**
+     * Removes the entries of files that no longer exist, so that `add .` stages their
+     * deletion. When a filesystem monitor supplied the changed paths, only entries at or
+     * below one of them are examined; otherwise every entry the walk did not find is.
+     *
+     * @param index   The locked index.
+     * @param found   The files that were staged.
+     * @param changed The monitor's changed paths, or null if the whole working tree was walked.
+     * @return The names of the removed entries.
+     * @throws IOException If the index cannot be decoded.
      */
-    
-        public static void showStagedFiles() {
-        File indexFile = new File(INDEX_FILE);
+    private static List<String> removeMissingEntries(Index index, List<Path> found, Set<String> changed)
+            throws IOException {
+        Set<String> foundNames = new HashSet<>(found.size() * 2);
+        for (Path path : found) {
+            foundNames.add(indexName(path));
+        }
 
-        if (!indexFile.exists()) {
-            System.out.println("No files are staged.");
-            return;
+        List<String> missing = new ArrayList<>();
+        for (IndexEntry entry : index.getEntries()) {
+            String name = entry.getName();
+            if (!foundNames.contains(name) && (changed == null || isAtOrBelow(name, changed))
+                    && !Files.exists(Paths.get(name), LinkOption.NOFOLLOW_LINKS)) {
+                missing.add(name);
+            }
         }
+        for (String name : missing) {
+            index.remove(name);
+        }
+        return missing;
+    }
 
-        try {
-            List<String> lines = Files.readAllLines(indexFile.toPath());
+    // Whether a path or one of its parent directories is in a set of paths
+    private static boolean isAtOrBelow(String name, Set<String> paths) {
+        for (String path = name; ; path = path.substring(0, path.lastIndexOf('/'))) {
+            if (paths.contains(path)) {
+                return true;
+            }
+            if (path.indexOf('/') < 0) {
+                return false;
+            }
+        }
+    }
 
-            if (lines.isEmpty()) {
-                System.out.println("No files are staged.");
-            } else {
-                System.out.println("Staged files:");
-                lines.forEach(System.out::println);
+    // Stage the deletion of a file, or of every file below a directory, that no longer exists
+    private static void stageDeletion(String filename, String name) {
+        try (Index index = Index.lock()) {
+            List<IndexEntry> removed = removeEntries(index, name);
+            if (removed.isEmpty()) {
+                Output.error("Error: " + filename + " does not exist.");
+                return;
+            }
+            index.write();
+            for (IndexEntry entry : removed) {
+                Output.println("Removed " + entry.getName());
+            }
+        } catch (IOException e) {
+            Output.error("Error staging file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes files from the staging area, so that the next commit deletes them, and
+     * from the working tree unless `cached` is set. A directory removes every file below
+     * it. Nothing is removed if a file has changes that are not staged, since deleting it
+     * would lose them; `cached` keeps the file and is always allowed.
+     *
+     * @param filenames The files or directories to remove.
+     * @param cached    Whether to leave the working tree alone.
+     */
+    public static void removeFiles(List<String> filenames, boolean cached) {
+        try (Index index = Index.lock()) {
+            IgnoreMatcher ignores = new IgnoreMatcher(Paths.get("."));
+            List<IndexEntry> removed = new ArrayList<>();
+            for (String filename : new LinkedHashSet<>(filenames)) {
+                List<IndexEntry> entries = removeEntries(index, ignores.relativize(Paths.get(filename)));
+                if (entries.isEmpty()) {
+                    Output.error("Error: " + filename + " is not tracked.");
+                    return;
+                }
+                removed.addAll(entries);
+            }
+
+            if (!cached) {
+                for (IndexEntry entry : removed) {
+                    Path path = Paths.get(entry.getName());
+                    if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)
+                            && !ObjectStore.hashBlob(path).equals(entry.getId())) {
+                        Output.error("Error: " + entry.getName() + " has changes that are not staged; "
+                                + "stage them first or use rm --cached to keep the file.");
+                        return;
+                    }
+                }
+            }
+
+            // Files kept on disk are now untracked, which the monitor's token does not cover
+            index.removeExtension(FileSystemMonitor.INDEX_EXTENSION);
+            index.write();
+            for (IndexEntry entry : removed) {
+                if (!cached) {
+                    Files.deleteIfExists(Paths.get(entry.getName()));
+                }
+                Output.println("Removed " + entry.getName());
             }
         } catch (IOException e) {
-            System.out.println("Error reading staged files: " + e.getMessage());
+            Output.error("Error removing files: " + e.getMessage());
         }
     }
 
-    // Unstage a file by removing its entry from the index
+    // Remove the entry of a file, or the entries of every file below a directory
+    private static List<IndexEntry> removeEntries(Index index, String name) throws IOException {
+        List<IndexEntry> removed = new ArrayList<>();
+        String prefix = name.isEmpty() || name.equals(".") ? "" : name + "/";
+        for (IndexEntry entry : index.getEntries()) {
+            if (entry.getName().equals(name) || entry.getName().startsWith(prefix)) {
+                removed.add(entry);
+            }
+        }
+        for (IndexEntry entry : removed) {
+            index.remove(entry.getName());
+        }
+        return removed;
+    }
+
+    // Name a file of the working tree is staged under: its path relative to the root, without `./`
+    static String indexName(Path path) {
+        return path.normalize().toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Builds the index entry for a file. The file's stat data is read first; if it
+     * matches the existing entry the staged blob is reused without reading the file,
+     * otherwise the content is stored as a blob.
+     *
+     * @param index    The current index.
+     * @param filename The name to stage the file under.
+     * @param path     The file.
+     * @return The new entry.
+     * @throws IOException If the file cannot be read or stored.
+     */
+    private static IndexEntry stageEntry(Index index, String filename, Path path) throws IOException {
+        FileStat stat = FileStat.read(path);
+        IndexEntry existing = index.get(filename);
+        if (existing != null && index.isUnchanged(existing, stat)) {
+            return existing;
+        }
+        return new IndexEntry(filename, storeBlob(path), stat);
+    }
+
+    // Unstage a file by resetting its entry to the version in HEAD
     public static void unstageFile(String filename) {
         File indexFile = new File(INDEX_FILE);
 
         if (!indexFile.exists()) {
-            System.out.println("No files are staged.");
+            Output.println("No files are staged.");
             return;
         }
 
-        try {
-            List<String> lines = Files.readAllLines(indexFile.toPath());
-            List<String> updatedLines = new ArrayList<>();
-
-            boolean found = false;
-
-            for (String line : lines) {
-                if (!line.endsWith(" " + filename)) {
-                    updatedLines.add(line);
-                } else {
-                    found = true;
-                }
-            }
-
-            if (found) {
-                Files.write(indexFile.toPath(), updatedLines);
-                System.out.println("Unstaged " + filename);
+        try (Index index = Index.lock()) {
+            if (resetEntry(index, filename, GitUtils.readHeadTree())) {
+                // The file no longer matches the index although it did not change on disk
+                index.removeExtension(FileSystemMonitor.INDEX_EXTENSION);
+                index.write();
+                Output.println("Unstaged " + filename);
             } else {
-                System.out.println("File " + filename + " is not staged.");
+                Output.println("File " + filename + " is not staged.");
             }
         } catch (IOException e) {
-            System.out.println("Error unstaging file: " + e.getMessage());
+            Output.error("Error unstaging file: " + e.getMessage());
         }
     }
 
-    // Unstage multiple files by removing their entries from the index
+    // Unstage multiple files by resetting their entries to the versions in HEAD
     public static void unstageFiles(List<String> filenames) {
         File indexFile = new File(INDEX_FILE);
 
         if (!indexFile.exists()) {
-            System.out.println("No files are staged.");
+            Output.println("No files are staged.");
             return;
         }
 
-        try {
-            List<String> lines = Files.readAllLines(indexFile.toPath());
-            List<String> updatedLines = new ArrayList<>();
-
-            Set<String> filenamesToUnstage = new HashSet<>(filenames);
-
+        try (Index index = Index.lock()) {
+            Map<String, ObjectId> head = GitUtils.readHeadTree();
             boolean found = false;
 
-            for (String line : lines) {
-                String[] parts = line.split(" ", 2);
-                if (parts.length == 2 && filenamesToUnstage.contains(parts[1])) {
+            for (String filename : new LinkedHashSet<>(filenames)) {
+                if (resetEntry(index, filename, head)) {
                     found = true;
-                    System.out.println("Unstaged " + parts[1]);
-                } else {
-                    updatedLines.add(line);
+                    Output.println("Unstaged " + filename);
                 }
             }
 
             if (!found) {
-                System.out.println("No matching files found to unstage.");
+                Output.println("No matching files found to unstage.");
             }
-            Files.write(indexFile.toPath(), updatedLines);
+            index.removeExtension(FileSystemMonitor.INDEX_EXTENSION);
+            index.write();
         } catch (IOException e) {
-            System.out.println("Error unstaging files: " + e.getMessage());
+            Output.error("Error unstaging files: " + e.getMessage());
         }
     }
 
-    // Unstage all files by clearing the index file
+    // Unstage all files by resetting the index to the files in HEAD
     public static void unstageAll() {
         File indexFile = new File(INDEX_FILE);
 
         if (!indexFile.exists()) {
-            System.out.println("No files are staged.");
+            Output.println("No files are staged.");
             return;
         }
 
-        try {
-            new PrintWriter(indexFile).close();
-            System.out.println("All files have been unstaged.");
+        try (Index index = Index.lock()) {
+            // Keeps the committed file modes and fills the cache tree; no HEAD empties the index
+            index.reset(GitUtils.getHeadTreeId());
+            index.write();
+            Output.println("All files have been unstaged.");
         } catch (IOException e) {
-            System.out.println("Error clearing the staging area: " + e.getMessage());
-        }
-    }
-
-    // Compute the SHA-1 hash of the given content
-    private static String computeSHA1(String content) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-1");
-        byte[] hashBytes = digest.digest(content.getBytes());
-        StringBuilder sb = new StringBuilder();
-        for (byte b : hashBytes) {
-            sb.append(String.format("%02x", b));
+            Output.error("Error clearing the staging area: " + e.getMessage());
         }
-        return sb.toString();
     }
 
-    // Store the file content as a blob in the objects directory
-    private static void storeBlob(String hash, String content) throws IOException {
-        File objectsDir = new File(OBJECTS_DIR);
-        if (!objectsDir.exists()) {
-            objectsDir.mkdirs();
+    /**
+     * Undoes the staged change of one file: its entry is reset to the blob HEAD
+     * records, or removed if HEAD does not contain the file.
+     *
+     * @param index    The locked index.
+     * @param filename The staged name.
+     * @param head     The files of HEAD.
+     * @return {@code true} if the file had a staged change.
+     * @throws IOException If the index cannot be decoded.
+     */
+    private static boolean resetEntry(Index index, String filename, Map<String, ObjectId> head) throws IOException {
+        ObjectId headId = head.get(filename);
+        IndexEntry current = index.get(filename);
+        if (headId == null) {
+            return index.remove(filename);
         }
-
-        File blobFile = new File(objectsDir, hash);
-        if (!blobFile.exists()) {
-            Files.write(blobFile.toPath(), content.getBytes());
+        if (current != null && current.getId().equals(headId)) {
+            return false;
         }
+        // Without stat data the file is compared by content until it is staged again
+        index.put(new IndexEntry(filename, headId, null));
+        return true;
     }
 
-    // Update the index file with the filename and blob hash
-    private static void updateIndex(String filename, String hash) throws IOException {
-        File indexFile = new File(INDEX_FILE);
-
-        indexFile.getParentFile().mkdirs();
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile, true))) {
-            writer.write(hash + " " + filename);
-            writer.newLine();
-        }
+    // Store the file content as a blob in the objects directory and return its hash
+    private static ObjectId storeBlob(Path path) throws IOException {
+        return ObjectStore.writeBlob(path);
     }
 }
@@ -0,0 +1,359 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The `Status` class compares the three states of every file: the commit HEAD points to,
+ * the index and the working tree.
+ * <ul>
+ *   <li>HEAD against the index gives the changes to be committed; both sides are blob
+ *       ids, so this never touches the working tree. When the index's cached root tree
+ *       is valid and equals HEAD's, nothing is staged and HEAD's trees are not read.</li>
+ *   <li>The index against the working tree gives the changes not staged. A file whose
+ *       stat data matches its entry is not read; only the others are hashed. The files
+ *       are checked in parallel on all available cores, and files a running filesystem
+ *       monitor reports as unchanged are skipped entirely.</li>
+ *   <li>Files of the working tree that are neither staged nor ignored are untracked.</li>
+ * </ul>
+ * Files whose stat data changed but whose content did not have their stat data
+ * refreshed in the index, when it is not locked by another command, so that the next
+ * status does not hash them again.
+ *
+ * The porcelain format prints one `XY path` record per file, where X is the staged
+ * change and Y the unstaged change (`A` added, `M` modified, `D` deleted, space for
+ * none), and `??` marks untracked files. Records end with a newline, or with NUL
+ * under `-z`, in which case paths are never quoted or escaped. With the global
+ * `--porcelain` option of {@link Output} each file is a `status` record instead.
+ */
+public class Status {
+
+    // Files checked by one task; large enough to amortise the scheduling of a task
+    private static final int FILES_PER_TASK = 1024;
+
+    /**
+     * One file that differs between HEAD, the index and the working tree.
+     */
+    static class FileStatus {
+        final String path;
+        final char staged;
+        final char unstaged;
+
+        FileStatus(String path, char staged, char unstaged) {
+            this.path = path;
+            this.staged = staged;
+            this.unstaged = unstaged;
+        }
+
+        boolean isUntracked() {
+            return staged == '?';
+        }
+    }
+
+    /**
+     * Shows the status of the working tree.
+     *
+     * @param porcelain     Whether to print the stable `XY path` format instead of the long one.
+     * @param nulTerminated Whether porcelain records end with NUL instead of a newline.
+     * @param untracked     Whether to look for untracked files, which requires walking the tree.
+     */
+    public static void showStatus(boolean porcelain, boolean nulTerminated, boolean untracked) {
+        List<FileStatus> files;
+        String branch;
+        try {
+            files = computeStatus(untracked);
+            branch = GitUtils.getCurrentBranchName();
+        } catch (IOException e) {
+            Output.error("Error computing status: " + e.getMessage());
+            return;
+        }
+
+        if (Output.isPorcelain()) {
+            for (FileStatus file : files) {
+                Output.record("status", null, "staged", String.valueOf(file.staged),
+                        "unstaged", String.valueOf(file.unstaged), "path", file.path);
+            }
+        } else if (porcelain || nulTerminated) {
+            printPorcelain(Output.writer(), files, nulTerminated ? '\0' : '\n');
+        } else {
+            printLong(Output.writer(), files, branch);
+        }
+    }
+
+    /**
+     * Compares HEAD, the index and the working tree.
+     *
+     * @param untracked Whether to report untracked files.
+     * @return The files that differ anywhere, sorted by path, untracked files last.
+     * @throws IOException If HEAD, the index or the working tree cannot be read.
+     */
+    static List<FileStatus> computeStatus(boolean untracked) throws IOException {
+        Index index = Index.read();
+        List<IndexEntry> entries = new ArrayList<>(index.getEntries());
+        ObjectId headTree = GitUtils.getHeadTreeId();
+        CacheTree cache = index.getCacheTree();
+        boolean nothingStaged = headTree != null && cache.isValid() && headTree.equals(cache.getId());
+        Map<String, ObjectId> head = nothingStaged ? Collections.emptyMap() : GitUtils.readHeadTree();
+        FileSystemMonitor.Changes changes = FileSystemMonitor.query(StagingArea.monitorToken(index));
+
+        FileStat[] refreshed = new FileStat[entries.size()];
+        char[] unstaged = checkWorkingTree(index, entries, changes, refreshed);
+
+        // Staged changes: each entry against HEAD, then the files only HEAD has
+        SortedMap<String, FileStatus> result = new TreeMap<>(Index::comparePaths);
+        for (int i = 0; i < entries.size(); i++) {
+            IndexEntry entry = entries.get(i);
+            ObjectId headId = head.get(entry.getName());
+            char staged = nothingStaged ? ' ' : headId == null ? 'A' : headId.equals(entry.getId()) ? ' ' : 'M';
+            if (staged != ' ' || unstaged[i] != ' ') {
+                result.put(entry.getName(), new FileStatus(entry.getName(), staged, unstaged[i]));
+            }
+        }
+        for (String name : head.keySet()) {
+            if (index.get(name) == null) {
+                result.put(name, new FileStatus(name, 'D', ' '));
+            }
+        }
+
+        List<FileStatus> files = new ArrayList<>(result.values());
+        if (untracked) {
+            files.addAll(findUntracked(entries));
+        }
+
+        refreshStatData(entries, refreshed);
+        return files;
+    }
+
+    /**
+     * Checks each staged file against the working tree, in parallel.
+     *
+     * @param index     The index, for the racy-timestamp check.
+     * @param entries   The staged files.
+     * @param changes   The paths a filesystem monitor reports as changed.
+     * @param refreshed Receives the new stat data of files whose content turned out unchanged.
+     * @return For each entry, `M` if modified, `D` if deleted, or a space.
+     * @throws IOException If a file cannot be examined.
+     */
+    private static char[] checkWorkingTree(Index index, List<IndexEntry> entries,
+                                           FileSystemMonitor.Changes changes, FileStat[] refreshed) throws IOException {
+        char[] unstaged = new char[entries.size()];
+        int tasks = (entries.size() + FILES_PER_TASK - 1) / FILES_PER_TASK;
+        if (tasks <= 1) {
+            checkRange(index, entries, changes, 0, entries.size(), unstaged, refreshed);
+            return unstaged;
+        }
+
+        // Each task fills in its own slice of the arrays; Future.get() publishes the results
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), tasks);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<>(tasks);
+            for (int start = 0; start < entries.size(); start += FILES_PER_TASK) {
+                int from = start;
+                int to = Math.min(start + FILES_PER_TASK, entries.size());
+                results.add(executor.submit(() -> {
+                    checkRange(index, entries, changes, from, to, unstaged, refreshed);
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Status interrupted.");
+        } finally {
+            executor.shutdownNow();
+        }
+        return unstaged;
+    }
+
+    // Check the staged files from index `from` up to `to`
+    private static void checkRange(Index index, List<IndexEntry> entries, FileSystemMonitor.Changes changes,
+                                   int from, int to, char[] unstaged, FileStat[] refreshed) throws IOException {
+        for (int i = from; i < to; i++) {
+            IndexEntry entry = entries.get(i);
+            unstaged[i] = ' ';
+            if (!changes.mayHaveChanged(entry.getName())) {
+                continue;
+            }
+
+            Path path = Paths.get(entry.getName());
+            if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+                unstaged[i] = 'D';
+                continue;
+            }
+            FileStat stat = FileStat.read(path);
+            if (index.isUnchanged(entry, stat)) {
+                continue;
+            }
+            if (ObjectStore.hashBlob(path).equals(entry.getId())) {
+                if (!stat.equals(entry.getStat())) {
+                    refreshed[i] = stat; // Not for empty or racy files, whose stat data cannot help
+                }
+            } else {
+                unstaged[i] = 'M';
+            }
+        }
+    }
+
+    // Walk the working tree for files that are neither ignored nor staged
+    private static List<FileStatus> findUntracked(List<IndexEntry> entries) throws IOException {
+        Set<String> tracked = new HashSet<>(entries.size() * 2);
+        for (IndexEntry entry : entries) {
+            tracked.add(stripDotSlash(entry.getName()));
+        }
+
+        List<String> untracked = new ArrayList<>();
+        for (Path file : StagingArea.listWorkingTreeFiles(new IgnoreMatcher(Paths.get(".")))) {
+            String relative = StagingArea.indexName(file);
+            if (!tracked.contains(relative)) {
+                untracked.add(relative);
+            }
+        }
+        untracked.sort(Index::comparePaths);
+
+        List<FileStatus> files = new ArrayList<>(untracked.size());
+        for (String relative : untracked) {
+            files.add(new FileStatus(relative, '?', '?'));
+        }
+        return files;
+    }
+
+    // Record the new stat data of files whose content was unchanged, unless another command holds the index
+    private static void refreshStatData(List<IndexEntry> entries, FileStat[] refreshed) {
+        if (Arrays.stream(refreshed).allMatch(Objects::isNull) || Files.exists(Paths.get(Index.LOCK_FILE))) {
+            return;
+        }
+        try (Index index = Index.lock()) {
+            boolean updated = false;
+            for (int i = 0; i < entries.size(); i++) {
+                IndexEntry entry = entries.get(i);
+                IndexEntry current = refreshed[i] != null ? index.get(entry.getName()) : null;
+
+                // Only if nothing restaged the file since it was checked
+                if (current != null && current.getId().equals(entry.getId())
+                        && Objects.equals(current.getStat(), entry.getStat())) {
+                    index.put(new IndexEntry(entry.getName(), entry.getId(), refreshed[i]));
+                    updated = true;
+                }
+            }
+            if (updated) {
+                index.write();
+            }
+        } catch (IOException e) {
+            // The refresh is only an optimisation; the next status checks the files again
+        }
+    }
+
+    // Print the `XY path` records
+    private static void printPorcelain(PrintWriter out, List<FileStatus> files, char terminator) {
+        for (FileStatus file : files) {
+            out.print(file.staged);
+            out.print(file.unstaged);
+            out.print(' ');
+            out.print(terminator == '\0' ? file.path : quote(file.path));
+            out.print(terminator);
+        }
+    }
+
+    // Print the human-readable report, grouped like `git status`
+    private static void printLong(PrintWriter out, List<FileStatus> files, String branch) {
+        out.println(branch != null ? "On branch " + branch : "HEAD detached");
+
+        List<String> staged = new ArrayList<>();
+        List<String> unstaged = new ArrayList<>();
+        List<String> untracked = new ArrayList<>();
+        for (FileStatus file : files) {
+            if (file.isUntracked()) {
+                untracked.add(file.path);
+                continue;
+            }
+            if (file.staged != ' ') {
+                staged.add(describe(file.staged) + file.path);
+            }
+            if (file.unstaged != ' ') {
+                unstaged.add(describe(file.unstaged) + file.path);
+            }
+        }
+
+        printSection(out, "Changes to be committed:", staged);
+        printSection(out, "Changes not staged for commit:", unstaged);
+        printSection(out, "Untracked files:", untracked);
+        if (files.isEmpty()) {
+            out.println("Nothing to commit, working tree clean.");
+        } else if (staged.isEmpty()) {
+            out.println("No changes added to commit.");
+        }
+    }
+
+    // Print one titled group of paths, if it is not empty
+    private static void printSection(PrintWriter out, String title, List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        out.println(title);
+        for (String line : lines) {
+            out.println("  " + line);
+        }
+        out.println();
+    }
+
+    // Label of a change in the long format
+    private static String describe(char change) {
+        switch (change) {
+            case 'A':
+                return "new file:   ";
+            case 'D':
+                return "deleted:    ";
+            default:
+                return "modified:   ";
+        }
+    }
+
+    // Quote a path containing characters that would break a line-based record, as git does
+    private static String quote(String path) {
+        boolean plain = true;
+        for (int i = 0; i < path.length() && plain; i++) {
+            char c = path.charAt(i);
+            plain = c >= 0x20 && c != '"' && c != '\\' && c != 0x7f;
+        }
+        if (plain) {
+            return path;
+        }
+
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x7f) {
+                        quoted.append(String.format("\\%03o", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    // Entries staged by earlier versions of `add .` start with `./`
+    private static String stripDotSlash(String path) {
+        return path.startsWith("./") ? path.substring(2) : path;
+    }
+}
@@ -0,0 +1,196 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The `TreeObject` class is a parsed tree: the files and subdirectories of one directory
+ * and the object each one points to. Instances are immutable, so they can be shared
+ * through the {@link ObjectDatabase} cache.
+ *
+ * Trees are stored in git's binary format, one entry per name:
+ * <pre>
+ *   mode in octal ASCII | ' ' | name (UTF-8) | NUL | 20-byte id
+ * </pre>
+ * sorted by name, where subdirectory names compare as if they ended with `/`.
+ * A subdirectory (mode {@link #MODE_TREE}) points to another tree, so a directory
+ * that did not change between two commits is stored once and shared by both.
+ *
+ * Trees written by earlier versions are flat text, one `hash path` line per file for
+ * the whole repository; they are still read, as trees containing only files.
+ */
+public class TreeObject {
+
+    /** Mode of an entry that is a subdirectory. */
+    public static final int MODE_TREE = 040000;
+
+    private final ObjectId id;
+    private final Map<String, Entry> entries;
+    private final Map<String, ObjectId> ids;
+
+    /**
+     * One name in a tree.
+     */
+    public static class Entry {
+        private final String name;
+        private final int mode;
+        private final ObjectId id;
+
+        /**
+         * @param name The file or directory name, without any `/`.
+         * @param mode {@link #MODE_TREE}, {@link FileStat#MODE_FILE} or {@link FileStat#MODE_EXECUTABLE}.
+         * @param id   The tree or blob the name points to.
+         */
+        public Entry(String name, int mode, ObjectId id) {
+            this.name = name;
+            this.mode = mode;
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMode() {
+            return mode;
+        }
+
+        public ObjectId getId() {
+            return id;
+        }
+
+        /**
+         * @return {@code true} if the entry is a subdirectory.
+         */
+        public boolean isTree() {
+            return mode == MODE_TREE;
+        }
+    }
+
+    private TreeObject(ObjectId id, Map<String, Entry> entries) {
+        this.id = id;
+        this.entries = Collections.unmodifiableMap(entries);
+        Map<String, ObjectId> ids = new LinkedHashMap<>();
+        for (Entry entry : entries.values()) {
+            ids.put(entry.getName(), entry.getId());
+        }
+        this.ids = Collections.unmodifiableMap(ids);
+    }
+
+    /**
+     * Parses the content of a tree object, in the binary format or the legacy text one.
+     *
+     * @param id     The id of the tree.
+     * @param object The loaded tree object.
+     * @return The parsed tree.
+     * @throws IllegalArgumentException If the content is malformed.
+     */
+    public static TreeObject parse(ObjectId id, GitObject object) {
+        byte[] data = object.getData();
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        if (isLegacyText(data)) {
+            for (String line : object.getLines()) {
+                String[] parts = line.split(" ", 2);
+                if (parts.length == 2) {
+                    entries.put(parts[1], new Entry(parts[1], FileStat.MODE_FILE, ObjectId.fromString(parts[0])));
+                }
+            }
+            return new TreeObject(id, entries);
+        }
+
+        int pos = 0;
+        while (pos < data.length) {
+            int space = indexOf(data, (byte) ' ', pos);
+            int nul = indexOf(data, (byte) 0, space + 1);
+            if (space < 0 || nul < 0 || nul + 1 + ObjectId.RAW_LENGTH > data.length) {
+                throw new IllegalArgumentException("truncated entry at offset " + pos);
+            }
+            int mode = Integer.parseInt(new String(data, pos, space - pos, StandardCharsets.US_ASCII), 8);
+            String name = new String(data, space + 1, nul - space - 1, StandardCharsets.UTF_8);
+            entries.put(name, new Entry(name, mode, ObjectId.fromRaw(data, nul + 1)));
+            pos = nul + 1 + ObjectId.RAW_LENGTH;
+        }
+        return new TreeObject(id, entries);
+    }
+
+    /**
+     * Encodes the entries of one directory as the content of a tree object.
+     *
+     * @param entries The entries, in any order.
+     * @return The tree content, with the entries sorted.
+     */
+    public static byte[] format(Collection<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort((a, b) -> Index.comparePaths(sortKey(a), sortKey(b)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(sorted.size() * 48);
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        for (Entry entry : sorted) {
+            byte[] prefix = (Integer.toOctalString(entry.getMode()) + " " + entry.getName() + "\0")
+                    .getBytes(StandardCharsets.UTF_8);
+            out.write(prefix, 0, prefix.length);
+            entry.getId().copyRawTo(raw, 0);
+            out.write(raw, 0, raw.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return The id of the tree.
+     */
+    public ObjectId getId() {
+        return id;
+    }
+
+    /**
+     * @return The names in this tree and the objects they point to, in the order they are stored.
+     */
+    public Map<String, ObjectId> getEntries() {
+        return ids;
+    }
+
+    /**
+     * @return The entries of this tree, with their modes, in the order they are stored.
+     */
+    public Collection<Entry> getEntryList() {
+        return entries.values();
+    }
+
+    /**
+     * @param name A file or directory name.
+     * @return The object the name points to, or null if the tree does not contain it.
+     */
+    public ObjectId get(String name) {
+        return ids.get(name);
+    }
+
+    /**
+     * @param name A file or directory name.
+     * @return The entry for the name, or null if the tree does not contain it.
+     */
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    // A flat text tree starts with a hex id followed by a space; a binary one with a short octal mode
+    private static boolean isLegacyText(byte[] data) {
+        if (data.length <= ObjectId.HEX_LENGTH || data[ObjectId.HEX_LENGTH] != ' ') {
+            return false;
+        }
+        return ObjectId.isId(new String(data, 0, ObjectId.HEX_LENGTH, StandardCharsets.US_ASCII));
+    }
+
+    // Subdirectories sort as if their name ended with `/`, as in git
+    private static String sortKey(Entry entry) {
+        return entry.isTree() ? entry.getName() + "/" : entry.getName();
+    }
+
+    // Position of a byte at or after `from`, or -1
+    private static int indexOf(byte[] data, byte value, int from) {
+        for (int i = Math.max(from, 0); i < data.length; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
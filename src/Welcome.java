@@ -7,27 +7,41 @@ public class Welcome {
      * Displays a welcome message and a list of available commands with their descriptions.
      */
     public static void displayWelcomeMessage() {
-        System.out.println("Welcome to MyGit - A simple version control system!");
-        System.out.println("Here are the available commands you can execute:\n");
+        Output.println("Welcome to MyGit - A simple version control system!");
+        Output.println("Here are the available commands you can execute:\n");
 
-        System.out.println("  init               Initialize a new repository.");
-        System.out.println("  add <filename>     Stage a file for the next commit.");
-        System.out.println("  add .              Stage all files for the next commit.");
-        System.out.println("  status             Show the status of staged files.");
-        System.out.println("  unstage <filename> Unstage a file.");
-        System.out.println("  unstage --all      Unstage all files.");
-        System.out.println("  commit <message>   Create a new commit with the specified message.");
-        System.out.println("  log                Show the commit history.");
-        System.out.println("  branch             List all branches.");
-        System.out.println("  branch <name>      Create a new branch.");
-        System.out.println("  checkout <name>    Switch to the specified branch.");
-        System.out.println("  merge <name>       Merge the specified branch into the current branch.");
-        System.out.println("  current-branch     Display the current branch.");
-        System.out.println("  clone <src> <dst>  Clone a repository from source to destination.");
-        System.out.println("  diff <filename>    Show differences between the working directory and staging area.");
-        System.out.println("  diff <b1> <b2>     Show differences between two branches.");
-        System.out.println("  help               Display this help message.\n");
+        Output.println("  init               Initialize a new repository.");
+        Output.println("  add <filename>     Stage a file for the next commit.");
+        Output.println("  add .              Stage all files for the next commit.");
+        Output.println("  status             Show staged, unstaged and untracked changes.");
+        Output.println("  unstage <filename> Unstage a file.");
+        Output.println("  unstage --all      Unstage all files.");
+        Output.println("  rm <filename>      Remove a file from the staging area and the working tree.");
+        Output.println("  commit <message>   Create a new commit with the specified message.");
+        Output.println("  log                Show the commit history.");
+        Output.println("  log -- <path>      Show the commits that changed a file or directory.");
+        Output.println("  log -n <count>     Show the last <count> commits (also --since, --until, --author).");
+        Output.println("  log --oneline      Show one line per commit (or --format=<format>).");
+        Output.println("  branch             List all branches.");
+        Output.println("  branch <name>      Create a new branch.");
+        Output.println("  checkout <name>    Switch to the specified branch.");
+        Output.println("  merge <name>       Merge the specified branch into the current branch.");
+        Output.println("  merge-base <a> <b> Show the best common ancestor of two branches or commits.");
+        Output.println("  current-branch     Display the current branch.");
+        Output.println("  clone <src> <dst>  Clone a repository from source to destination.");
+        Output.println("  diff <filename>    Show differences between the working directory and staging area.");
+        Output.println("  diff <b1> <b2>     Show differences between two branches.");
+        Output.println("  gc                 Pack reachable objects and prune unreachable ones.");
+        Output.println("  count-objects      Count the objects reachable from the branches.");
+        Output.println("  repack             Pack all objects into a single pack without pruning.");
+        Output.println("  migrate-objects    Move old flat-layout objects into fan-out directories and compress raw ones.");
+        Output.println("  commit-graph write Record the history in a file that speeds up history walks.");
+        Output.println("  fsmonitor start    Watch the working tree so add . and status only examine changes.");
+        Output.println("  fsmonitor stop     Stop watching the working tree.");
+        Output.println("  daemon start       Keep caches warm in a background process for MyGitClient.");
+        Output.println("  daemon stop        Stop the daemon.");
+        Output.println("  help               Display this help message.\n");
 
-        System.out.println("Usage: java MyGit <command> [<arguments>...]");
+        Output.println("Usage: java MyGit [--porcelain] [-z] <command> [<arguments>...]");
     }
 }
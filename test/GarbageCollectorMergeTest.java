@@ -0,0 +1,55 @@
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * The `GarbageCollectorMergeTest` class checks that `gc` and `count-objects` accept a
+ * merge commit, which `merge` writes without a tree line, and keep every commit
+ * reachable through its parents.
+ *
+ * Paths are relative to the working directory, so it runs in an empty directory:
+ * <pre>
+ *   javac -d /tmp/mygit src/*.java test/GarbageCollectorMergeTest.java
+ *   mkdir /tmp/gcmerge &amp;&amp; cd /tmp/gcmerge &amp;&amp; java -cp /tmp/mygit GarbageCollectorMergeTest
+ * </pre>
+ */
+public class GarbageCollectorMergeTest {
+
+    public static void main(String[] args) throws Exception {
+        if (Files.exists(Paths.get(Constants.GIT_DIR))) {
+            throw new IllegalStateException("Run the test in an empty directory");
+        }
+        MyGit.execute(new String[] {"init"});
+        Files.write(Paths.get("a.txt"), "one\n".getBytes());
+        MyGit.execute(new String[] {"add", "a.txt"});
+        MyGit.execute(new String[] {"commit", "first"});
+        MyGit.execute(new String[] {"branch", "f2"});
+        MyGit.execute(new String[] {"checkout", "f2"});
+        Files.write(Paths.get("b.txt"), "two\n".getBytes());
+        MyGit.execute(new String[] {"add", "b.txt"});
+        MyGit.execute(new String[] {"commit", "second"});
+        ObjectId second = GitUtils.getCurrentCommitHash();
+        MyGit.execute(new String[] {"checkout", "main"});
+        MyGit.execute(new String[] {"merge", "f2"});
+
+        ObjectId merge = GitUtils.getCurrentCommitHash();
+        if (merge.equals(second) || ObjectDatabase.readCommit(merge).getParents().size() != 2) {
+            throw new AssertionError("merge did not create a merge commit");
+        }
+
+        MyGit.execute(new String[] {"gc", "--prune=now"});
+        if (ObjectStore.getPacks().isEmpty()) {
+            throw new AssertionError("gc did not run to completion");
+        }
+        for (ObjectId commit : Arrays.asList(merge, second)) {
+            if (ObjectDatabase.readCommit(commit) == null) {
+                throw new AssertionError("gc pruned reachable commit " + commit);
+            }
+        }
+        if (ObjectStore.readObject(ObjectDatabase.readCommitTree(second)) == null) {
+            throw new AssertionError("gc pruned the tree of the merged branch");
+        }
+        Output.flush();
+        Output.println("PASS");
+        Output.flush();
+    }
+}
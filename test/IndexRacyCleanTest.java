@@ -0,0 +1,58 @@
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The `IndexRacyCleanTest` class checks that a file edited within the same timestamp
+ * tick as the index was written is still seen as changed after a later command has
+ * rewritten the index.
+ *
+ * File systems with nanosecond timestamps almost never put an edit and the index
+ * write in one tick, so the test simulates it: the file's modification time is set
+ * slightly ahead of the clock, and the entry records the file's stat data with the
+ * id of other content, as if the file had been edited again after it was hashed.
+ *
+ * Paths are relative to the working directory, so it runs in an empty directory:
+ * <pre>
+ *   javac -d /tmp/mygit src/*.java test/IndexRacyCleanTest.java
+ *   mkdir /tmp/racy &amp;&amp; cd /tmp/racy &amp;&amp; java -cp /tmp/mygit IndexRacyCleanTest
+ * </pre>
+ */
+public class IndexRacyCleanTest {
+
+    // How far ahead of the clock the file is stamped, standing in for the rest of a tick
+    private static final long TICK_MILLIS = 500;
+
+    public static void main(String[] args) throws Exception {
+        if (Files.exists(Paths.get(Constants.GIT_DIR))) {
+            throw new IllegalStateException("Run the test in an empty directory");
+        }
+        RepositoryInitializer.initRepository();
+
+        Path file = Paths.get("racy.txt");
+        Files.write(file, "two\n".getBytes());
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + TICK_MILLIS));
+        ObjectId staged = ObjectStore.writeObject("blob", "one\n".getBytes());
+
+        try (Index index = Index.lock()) {
+            index.put(new IndexEntry("racy.txt", staged, FileStat.read(file)));
+            index.write();
+        }
+
+        // Once the tick is over, another command rewrites the index for an unrelated change
+        TimeUnit.MILLISECONDS.sleep(2 * TICK_MILLIS);
+        Files.write(Paths.get("other.txt"), "other\n".getBytes());
+        try (Index index = Index.lock()) {
+            index.put(new IndexEntry("other.txt", ObjectStore.writeObject("blob", "other\n".getBytes()),
+                    FileStat.read(Paths.get("other.txt"))));
+            index.write();
+        }
+
+        Index index = Index.read();
+        if (index.isUnchanged(index.get("racy.txt"), FileStat.read(file))) {
+            throw new AssertionError("racy.txt was edited within the tick of the index write, but looks unchanged");
+        }
+        Output.println("PASS");
+        Output.flush();
+    }
+}